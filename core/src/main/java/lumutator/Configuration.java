@@ -11,6 +11,7 @@ import java.io.IOException;
 
 /**
  * Small (singleton) class that serves as an interface for the configuration file.
+ * The accessors are synchronized, since the configuration is shared by all the tracing workers.
  */
 public final class Configuration {
 
@@ -42,7 +43,7 @@ public final class Configuration {
      * @param filename Filename of the configuration file.
      * @throws IOException When something went wrong with parsing the configuration file.
      */
-    public void initialize(String filename) throws IOException {
+    public synchronized void initialize(String filename) throws IOException {
         try {
             DocumentBuilder dBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
             this.doc = dBuilder.parse(new File(filename));
@@ -58,7 +59,7 @@ public final class Configuration {
      * @param key The key.
      * @return True if this configuration has this specific parameter and their value set.
      */
-    public boolean hasParameter(String key) {
+    public synchronized boolean hasParameter(String key) {
         NodeList nodes = this.doc.getElementsByTagName(key);
         return nodes.getLength() > 0 && !nodes.item(0).getTextContent().equals("");
     }
@@ -69,7 +70,7 @@ public final class Configuration {
      * @param key The key of the value.
      * @return The value of the key.
      */
-    public String get(String key) throws IllegalArgumentException {
+    public synchronized String get(String key) throws IllegalArgumentException {
         if (this.hasParameter(key)) {
             return this.doc.getElementsByTagName(key).item(0).getTextContent();
         } else {
@@ -83,7 +84,7 @@ public final class Configuration {
      * @param key   Name of the parameter.
      * @param value Value of the parameter.
      */
-    public void set(String key, String value) {
+    public synchronized void set(String key, String value) {
         NodeList nodes = this.doc.getElementsByTagName(key);
         if (nodes.getLength() > 0) {
             // update value
@@ -2,9 +2,11 @@ package lumutator;
 
 import lumutator.generator.AssertionGenerator;
 import lumutator.purity.PurityAnalyzer;
+import lumutator.tracer.OriginalTraceCache;
 import lumutator.tracer.Tracer;
+import lumutator.tracer.debugger.Coverage;
+import lumutator.tracer.debugger.Trace;
 import org.apache.commons.lang3.tuple.ImmutablePair;
-import org.json.JSONObject;
 import org.skyscreamer.jsonassert.JSONCompareResult;
 
 import java.io.File;
@@ -28,10 +30,33 @@ public class LuMutator {
      */
     public static void main(String configFile, List<Mutant> survivedMutants, boolean interactiveMode)
             throws IOException, InterruptedException {
+        main(configFile, survivedMutants, interactiveMode, false);
+    }
+
+    /**
+     * Generate assertions that kill survived mutants, optionally resuming an interrupted run:
+     * the mutants that were already traced in that run are not traced again (this needs a cache directory).
+     *
+     * @param configFile      Path to the configuration file for LuMutator.
+     * @param survivedMutants List of all the survived mutants.
+     * @param interactiveMode Ask the user to whether add the new assertions or not.
+     * @param resume          Resume an interrupted run.
+     * @throws IOException          If something went wrong with files.
+     * @throws InterruptedException If an interrupt was issued.
+     */
+    public static void main(String configFile, List<Mutant> survivedMutants, boolean interactiveMode, boolean resume)
+            throws IOException, InterruptedException {
 
         // Parse configuration file
         Configuration.getInstance().initialize(configFile);
         Configuration config = Configuration.getInstance();
+        if (resume && !config.hasParameter("cacheDir")) {
+            throw new IllegalArgumentException("Resuming a run needs a cache directory ('cacheDir') in the configuration");
+        }
+        config.set("resume", String.valueOf(resume));
+
+        // An interrupted run might have left a mutant in the class files
+        Tracer.restoreClassFiles();
 
         // Compile project (main and tests)
         Process process = Runtime.getRuntime().exec(config.get("testCommand"), null, new File(config.get("projectDir")));
@@ -40,16 +65,39 @@ public class LuMutator {
             throw new RuntimeException("The test command failed; make sure all your tests pass");
         }
 
-        // Purity Analysis
-        PurityAnalyzer purityAnalyzer = new PurityAnalyzer();
-        Set<String> inspectorMethods = purityAnalyzer.getInspectorMethods(true);
+        // Purity analysis and the trace of the original version, unless they're cached from a previous run on the same code
+        // (the coverage is only needed if the mutation testing tool doesn't know the covering tests of all the mutants)
+        final boolean needCoverage = !survivedMutants.stream().allMatch(mutant -> mutant.getCoveringTests() != null);
+        OriginalTraceCache cache = config.hasParameter("cacheDir") ? new OriginalTraceCache(configFile) : null;
+        Set<String> inspectorMethods;
+        Coverage coverage = null;
+        Trace originalTrace;
+        if (cache != null && cache.load(needCoverage)) {
+            inspectorMethods = cache.getInspectorMethods();
+            originalTrace = cache.getTrace();
+            coverage = cache.getCoverage();
+
+        } else {
+            // Purity Analysis
+            PurityAnalyzer purityAnalyzer = new PurityAnalyzer();
+            inspectorMethods = purityAnalyzer.getInspectorMethods(true);
 
-        // Trace the tests with original version
-        JSONObject originalTrace = Tracer.trace(config.get("testDir"), inspectorMethods);
+            // Trace the tests with original version, and record which tests reach which methods if needed
+            if (needCoverage) {
+                coverage = new Coverage(config.get("classFiles"));
+                originalTrace = Tracer.trace(config.get("testDir"), inspectorMethods, coverage);
+            } else {
+                originalTrace = Tracer.trace(config.get("testDir"), inspectorMethods);
+            }
+
+            if (cache != null) {
+                cache.store(inspectorMethods, originalTrace, coverage);
+            }
+        }
 
-        // Longest step: trace every mutant and compare consequently
+        // Longest step: trace every mutant (only on the tests that reach it) and compare consequently
         List<ImmutablePair<JSONCompareResult, Mutant>> failedComparisons =
-                Tracer.traceAndCompareMutants(survivedMutants, originalTrace, inspectorMethods);
+                Tracer.traceAndCompareMutants(survivedMutants, originalTrace, inspectorMethods, coverage);
 
         // Generate the assertions based on the failed trace comparisons
         AssertionGenerator.generateAssertions(failedComparisons, interactiveMode);
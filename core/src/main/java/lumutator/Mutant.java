@@ -6,7 +6,9 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 /**
  * Simple class that stores information related to a mutant.
@@ -58,6 +60,22 @@ public class Mutant {
      */
     private Boolean survived = true;
 
+    /**
+     * Did tracing the mutant take too long? (e.g. the mutant causes an infinite loop)
+     */
+    private boolean timedOut = false;
+
+    /**
+     * Was the mutant left out without tracing it, because it can't change the trace? (e.g. it doesn't infect the state)
+     */
+    private boolean skipped = false;
+
+    /**
+     * The tests that cover the mutant according to the mutation testing tool: the test classes with their test methods
+     * ({@code null} if the whole test class covers it); {@code null} if unknown.
+     */
+    private Map<String, Set<String>> coveringTests;
+
     /**
      * Create a mutant.
      *
@@ -172,6 +190,62 @@ public class Mutant {
         return survived;
     }
 
+    /**
+     * Set whether tracing the mutant took too long.
+     *
+     * @param timedOut True if it timed out, false otherwise.
+     */
+    public void setTimedOut(boolean timedOut) {
+        this.timedOut = timedOut;
+    }
+
+    /**
+     * Check if tracing the mutant took too long; its trace is incomplete.
+     *
+     * @return True if it timed out, false otherwise.
+     */
+    public boolean hasTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Set whether the mutant was left out without tracing it.
+     *
+     * @param skipped True if it wasn't traced, false otherwise.
+     */
+    public void setSkipped(boolean skipped) {
+        this.skipped = skipped;
+    }
+
+    /**
+     * Check if the mutant was left out without tracing it, because it can't change the trace.
+     *
+     * @return True if it wasn't traced, false otherwise.
+     */
+    public boolean isSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Set the tests that cover the mutant.
+     *
+     * @param coveringTests The test classes with their test methods ({@code null} if the whole test class covers it),
+     *                      {@code null} if unknown.
+     */
+    public void setCoveringTests(Map<String, Set<String>> coveringTests) {
+        this.coveringTests = coveringTests;
+    }
+
+    /**
+     * Get the tests that cover the mutant.
+     *
+     * @return The test classes with their test methods ({@code null} if the whole test class covers it),
+     * {@code null} if unknown.
+     */
+    public Map<String, Set<String>> getCoveringTests() {
+        return coveringTests;
+    }
+
     /**
      * Compare this mutant to another one.
      *
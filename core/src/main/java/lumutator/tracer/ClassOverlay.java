@@ -0,0 +1,80 @@
+package lumutator.tracer;
+
+import lumutator.Mutant;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Overlay directory that is put in front of the classpath of the VM, so the class files in it
+ * shadow the original class files without touching the original build output.
+ */
+class ClassOverlay {
+
+    /**
+     * The overlay directory.
+     */
+    private final Path directory;
+
+    /**
+     * The class file that is currently installed in the overlay directory, {@code null} if none.
+     */
+    private Path installedClassFile;
+
+    /**
+     * Create a new (empty) overlay directory.
+     *
+     * @throws IOException If the directory could not be created.
+     */
+    ClassOverlay() throws IOException {
+        directory = Files.createTempDirectory("lumutator-overlay");
+    }
+
+    /**
+     * Get the classpath with the overlay directory in front of it.
+     *
+     * @param classPath The original classpath.
+     * @return The new classpath.
+     */
+    String getClassPath(String classPath) {
+        return directory.toString() + File.pathSeparator + classPath;
+    }
+
+    /**
+     * Install the class file of a mutant in the overlay directory, replacing the previously installed one.
+     *
+     * @param mutant The mutant.
+     * @throws IOException If the class file could not be copied.
+     */
+    void install(Mutant mutant) throws IOException {
+        uninstall();
+        Path classFile = directory.resolve(mutant.getMutatedClass().replace(".", "/") + ".class");
+        Files.createDirectories(classFile.getParent());
+        Files.copy(mutant.getClassFile().toPath(), classFile, StandardCopyOption.REPLACE_EXISTING);
+        installedClassFile = classFile;
+    }
+
+    /**
+     * Remove the currently installed class file, so the original class file is used again.
+     *
+     * @throws IOException If the class file could not be removed.
+     */
+    void uninstall() throws IOException {
+        if (installedClassFile != null) {
+            Files.deleteIfExists(installedClassFile);
+            installedClassFile = null;
+        }
+    }
+
+    /**
+     * Remove the overlay directory.
+     */
+    void delete() {
+        FileUtils.deleteQuietly(directory.toFile());
+    }
+
+}
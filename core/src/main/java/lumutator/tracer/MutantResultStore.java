@@ -0,0 +1,330 @@
+package lumutator.tracer;
+
+import lumutator.Configuration;
+import lumutator.Mutant;
+import lumutator.tracer.agent.Truncated;
+import lumutator.tracer.debugger.Trace;
+import lumutator.util.Hash;
+import org.apache.commons.io.FileUtils;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.skyscreamer.jsonassert.FieldComparisonFailure;
+import org.skyscreamer.jsonassert.JSONCompareResult;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Store of the trace comparisons of the mutants of the previous run, so a next run only needs to trace the mutants
+ * that are new or changed.
+ * <p>
+ * The comparison of a mutant is reused if its key is the same: a hash of the class file of the mutant,
+ * the selected tests, the test files of these tests and their original trace, the inspector methods and the classpath.
+ * Only the comparisons of the current run are stored, so the store doesn't keep growing.
+ * <p>
+ * Each comparison is also appended to a journal as soon as the mutant is traced, so an interrupted run can be resumed
+ * (if "resume" is set in the configuration) without tracing the same mutants again.
+ */
+public class MutantResultStore {
+
+    /**
+     * Version of the store, increase when the comparisons change, so old results are not used anymore.
+     */
+    private static final int version = 3;
+
+    /**
+     * Name of the file in the cache directory that stores the comparisons.
+     */
+    private static final String cacheFile = "mutant-results.json";
+
+    /**
+     * Name of the file in the cache directory that stores the journal of the current run.
+     */
+    private static final String journalFile = "mutant-journal.jsonl";
+
+    /**
+     * The file that stores the comparisons.
+     */
+    private final File file;
+
+    /**
+     * The journal of the current run (one comparison per line).
+     */
+    private final File journal;
+
+    /**
+     * Writer of the journal, {@code null} if nothing has been written yet.
+     */
+    private Writer journalWriter;
+
+    /**
+     * The inventory of the test files.
+     */
+    private final TestInventory inventory;
+
+    /**
+     * The trace from the original version of the code.
+     */
+    private final Trace originalTrace;
+
+    /**
+     * The part of the key that is the same for all the mutants.
+     */
+    private final String baseKey;
+
+    /**
+     * The hash of each test file (the canonical path of the test file).
+     */
+    private final Map<String, String> testFileHashes = new HashMap<>();
+
+    /**
+     * The comparisons of the previous run (key => field failures, empty if the traces don't differ).
+     */
+    private final JSONObject previousResults;
+
+    /**
+     * The comparisons of the current run.
+     */
+    private final JSONObject results = new JSONObject();
+
+    /**
+     * Load the comparisons of the previous run, and of the interrupted run if it's resumed;
+     * the cache directory must be set in the configuration.
+     *
+     * @param inventory        The inventory of the test files.
+     * @param originalTrace    The trace from the original version of the code.
+     * @param inspectorMethods Set of all inspector methods in the source classes.
+     */
+    public MutantResultStore(TestInventory inventory, Trace originalTrace, Set<String> inspectorMethods) {
+        Configuration config = Configuration.getInstance();
+        this.file = new File(config.get("cacheDir"), cacheFile);
+        this.journal = new File(config.get("cacheDir"), journalFile);
+        this.inventory = inventory;
+        this.originalTrace = originalTrace;
+        this.baseKey = String.format(
+                "version=%d\ninspectorMethods=%s\nclassPath=%s\n",
+                version, new TreeSet<>(inspectorMethods), config.get("classPath")
+        );
+
+        JSONObject previous = new JSONObject();
+        if (file.exists()) {
+            try {
+                previous = new JSONObject(FileUtils.readFileToString(file, StandardCharsets.UTF_8));
+            } catch (IOException | JSONException e) {
+                // Invalid cache => just trace all the mutants again
+            }
+        }
+        this.previousResults = previous;
+
+        if (config.hasParameter("resume") && Boolean.parseBoolean(config.get("resume"))) {
+            resume();
+        } else {
+            FileUtils.deleteQuietly(journal);
+        }
+    }
+
+    /**
+     * Compute the key of a mutant.
+     *
+     * @param mutant    The mutant.
+     * @param selection The test classes to trace with their test methods, {@code null} to trace all the tests.
+     * @return The key.
+     */
+    public String key(Mutant mutant, Map<String, Set<String>> selection) {
+        try {
+            StringBuilder key = new StringBuilder(baseKey);
+            key.append("mutatedClass=").append(mutant.getMutatedClass()).append('\n');
+            key.append("classFile=").append(Hash.sha256(mutant.getClassFile())).append('\n');
+            for (TestInventory.TestFile testFile : inventory.getTestFiles()) {
+                if (selection == null || selection.containsKey(testFile.getClassName())) {
+                    Set<String> selectedTests = selection != null ? selection.get(testFile.getClassName()) : null;
+                    key.append("testFile=").append(testFile.getPath())
+                            .append(':').append(selectedTests == null ? "all" : new TreeSet<>(selectedTests))
+                            .append(':').append(hash(testFile))
+                            .append(':').append(originalTrace.hash(testFile.getPath()))
+                            .append('\n');
+                }
+            }
+            return Hash.sha256(key.toString().getBytes(StandardCharsets.UTF_8));
+
+        } catch (IOException e) {
+            throw new RuntimeException("Failed hashing the mutant: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Check if the comparison of a mutant is known from the previous run.
+     *
+     * @param key The key of the mutant.
+     * @return True if the comparison is known.
+     */
+    public synchronized boolean contains(String key) {
+        return previousResults.has(key);
+    }
+
+    /**
+     * Get the comparison of a mutant from the previous run, which is also kept for a next run.
+     *
+     * @param key The key of the mutant.
+     * @return The comparison if the traces differ on at least one field, otherwise {@code null}.
+     */
+    public synchronized JSONCompareResult get(String key) {
+        final JSONArray failures = previousResults.getJSONArray(key);
+        results.put(key, failures);
+        if (failures.length() == 0) {
+            return null;
+        }
+
+        JSONCompareResult comparison = new JSONCompareResult();
+        for (int i = 0; i < failures.length(); i++) {
+            JSONObject failure = failures.getJSONObject(i);
+            comparison.fail(
+                    failure.getString("field"),
+                    toValue(failure.getJSONObject("expected")),
+                    toValue(failure.getJSONObject("actual"))
+            );
+        }
+        return comparison;
+    }
+
+    /**
+     * Add the comparison of a mutant of the current run, and append it to the journal.
+     *
+     * @param key        The key of the mutant.
+     * @param comparison The comparison if the traces differ on at least one field, otherwise {@code null}.
+     */
+    public synchronized void put(String key, JSONCompareResult comparison) {
+        JSONArray failures = new JSONArray();
+        if (comparison != null) {
+            for (FieldComparisonFailure failure : comparison.getFieldFailures()) {
+                JSONObject json = new JSONObject();
+                json.put("field", failure.getField());
+                json.put("expected", fromValue(failure.getExpected()));
+                json.put("actual", fromValue(failure.getActual()));
+                failures.put(json);
+            }
+        }
+        results.put(key, failures);
+
+        try {
+            if (journalWriter == null) {
+                journalWriter = new OutputStreamWriter(new FileOutputStream(journal, true), StandardCharsets.UTF_8);
+            }
+            journalWriter.write(new JSONObject().put("key", key).put("failures", failures).toString() + "\n");
+            journalWriter.flush();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed writing the mutant journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Store the comparisons of the current run, replacing the ones of the previous run;
+     * the journal isn't needed anymore once the run is complete.
+     */
+    public synchronized void save() {
+        try {
+            FileUtils.writeStringToFile(file, results.toString(), StandardCharsets.UTF_8);
+            if (journalWriter != null) {
+                journalWriter.close();
+                journalWriter = null;
+            }
+            FileUtils.deleteQuietly(journal);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed writing the mutant results to the cache: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Resume an interrupted run: the comparisons in its journal are used as if they were from the previous run.
+     * The last line of the journal might be incomplete, so the journal is rewritten with only the complete lines.
+     */
+    private void resume() {
+        if (!journal.exists()) {
+            return;
+        }
+
+        try {
+            StringBuilder completeLines = new StringBuilder();
+            for (String line : FileUtils.readLines(journal, StandardCharsets.UTF_8)) {
+                try {
+                    JSONObject entry = new JSONObject(line);
+                    previousResults.put(entry.getString("key"), entry.getJSONArray("failures"));
+                    completeLines.append(line).append('\n');
+                } catch (JSONException e) {
+                    // Incomplete line => that mutant is just traced again
+                }
+            }
+            FileUtils.writeStringToFile(journal, completeLines.toString(), StandardCharsets.UTF_8);
+
+        } catch (IOException e) {
+            throw new RuntimeException("Failed reading the mutant journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Get the hash of a test file.
+     *
+     * @param testFile The test file.
+     * @return The hash.
+     * @throws IOException If the test file could not be read.
+     */
+    private String hash(TestInventory.TestFile testFile) throws IOException {
+        String hash = testFileHashes.get(testFile.getPath());
+        if (hash == null) {
+            hash = Hash.sha256(new File(testFile.getPath()));
+            testFileHashes.put(testFile.getPath(), hash);
+        }
+        return hash;
+    }
+
+    /**
+     * Store a value of a trace, including its type, so it's restored exactly the same
+     * (the type determines the format of the generated assertion).
+     *
+     * @param value The value.
+     * @return The value in form of a JSON object.
+     */
+    private static JSONObject fromValue(Object value) {
+        JSONObject json = new JSONObject();
+        if (value == null || value == JSONObject.NULL) {
+            json.put("type", "null");
+        } else {
+            json.put("type", value.getClass().getSimpleName());
+            json.put("value", value.toString());
+        }
+        return json;
+    }
+
+    /**
+     * Restore a value of a trace (see {@link #fromValue(Object)}).
+     *
+     * @param json The value in form of a JSON object.
+     * @return The value.
+     */
+    private static Object toValue(JSONObject json) {
+        final String value = json.optString("value");
+        switch (json.getString("type")) {
+            case "Boolean":
+                return Boolean.valueOf(value);
+            case "Integer":
+                return Integer.valueOf(value);
+            case "Long":
+                return Long.valueOf(value);
+            case "Float":
+                return Float.valueOf(value);
+            case "Double":
+                return Double.valueOf(value);
+            case "String":
+                return value;
+            case "Character":
+                return value.charAt(0);
+            case "Truncated":
+                return new Truncated(value);
+            default:
+                return JSONObject.NULL;
+        }
+    }
+
+}
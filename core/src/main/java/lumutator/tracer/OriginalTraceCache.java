@@ -0,0 +1,203 @@
+package lumutator.tracer;
+
+import lumutator.Configuration;
+import lumutator.tracer.debugger.Coverage;
+import lumutator.tracer.debugger.Trace;
+import lumutator.util.Hash;
+import org.apache.commons.io.FileUtils;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Cache for the original trace (and the inspector methods it depends on, and the coverage recorded while tracing),
+ * so a next run on the same code can skip the purity analysis and the tracing of the original version of the code.
+ * <p>
+ * The cache is stored in the cache directory of the configuration, and is only valid for the same key:
+ * a hash of the configuration file, the class files, the classpath and the test files.
+ */
+public class OriginalTraceCache {
+
+    /**
+     * Version of the cache, increase when the trace changes (e.g. what is observed), so old caches are not used anymore.
+     */
+    private static final int version = 1;
+
+    /**
+     * The directory of the cache.
+     */
+    private final File directory;
+
+    /**
+     * The key of the current code and configuration.
+     */
+    private final String key;
+
+    /**
+     * The cached inspector methods, {@code null} if not loaded.
+     */
+    private Set<String> inspectorMethods;
+
+    /**
+     * The cached original trace, {@code null} if not loaded.
+     */
+    private Trace trace;
+
+    /**
+     * The cached coverage, {@code null} if not loaded or it wasn't recorded.
+     */
+    private Coverage coverage;
+
+    /**
+     * Create the key of the current code and configuration; the cache directory must be set in the configuration.
+     *
+     * @param configFile Path to the configuration file.
+     * @throws IOException If some files could not be read.
+     */
+    public OriginalTraceCache(String configFile) throws IOException {
+        Configuration config = Configuration.getInstance();
+        this.directory = new File(config.get("cacheDir"), "original-trace");
+
+        StringBuilder key = new StringBuilder("version=").append(version).append('\n');
+        key.append("config=").append(Hash.sha256(new File(configFile))).append('\n');
+        key.append("classFiles=").append(hash(new File(config.get("classFiles")))).append('\n');
+        for (String classPathEntry : config.get("classPath").split(File.pathSeparator)) {
+            key.append("classPath=").append(hash(new File(classPathEntry))).append('\n');
+        }
+        key.append("testDir=").append(hash(new File(config.get("testDir")))).append('\n');
+        this.key = Hash.sha256(key.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Load the cache, if it's valid for the current code and configuration.
+     *
+     * @param needCoverage Is the coverage needed? If so, the cache is only valid if the coverage has been recorded.
+     * @return True if the cache has been loaded.
+     */
+    public boolean load(boolean needCoverage) {
+        final File coverageFile = new File(directory, "coverage.json");
+        try {
+            if (!key.equals(readFile("key")) || (needCoverage && !coverageFile.exists())) {
+                return false;
+            }
+
+            Set<String> cachedInspectorMethods = new HashSet<>();
+            new JSONArray(readFile("inspector-methods.json")).forEach(method -> cachedInspectorMethods.add((String) method));
+            try (InputStream inputStream = new FileInputStream(new File(directory, "trace.bin"))) {
+                trace = Trace.read(inputStream);
+            }
+            if (coverageFile.exists()) {
+                coverage = Coverage.fromJSON(
+                        Configuration.getInstance().get("classFiles"), new JSONObject(readFile("coverage.json"))
+                );
+            }
+            inspectorMethods = cachedInspectorMethods;
+            return true;
+
+        } catch (IOException | JSONException e) {
+            // Invalid cache => just trace the original version of the code again
+            trace = null;
+            coverage = null;
+            return false;
+        }
+    }
+
+    /**
+     * Store the results of the current run in the cache, replacing the previous cache.
+     *
+     * @param inspectorMethods Set of all inspector methods in the source classes.
+     * @param trace            The trace from the original version of the code.
+     * @param coverage         The coverage recorded during the original trace, {@code null} if it wasn't recorded.
+     */
+    public void store(Set<String> inspectorMethods, Trace trace, Coverage coverage) {
+        try {
+            FileUtils.deleteDirectory(directory);
+            FileUtils.forceMkdir(directory);
+
+            FileUtils.writeStringToFile(
+                    new File(directory, "inspector-methods.json"), new JSONArray(inspectorMethods).toString(), StandardCharsets.UTF_8
+            );
+            try (OutputStream outputStream = new FileOutputStream(new File(directory, "trace.bin"))) {
+                trace.write(outputStream);
+            }
+            if (coverage != null) {
+                FileUtils.writeStringToFile(new File(directory, "coverage.json"), coverage.toJSON().toString(), StandardCharsets.UTF_8);
+            }
+            // Only write the key once the cache is complete
+            FileUtils.writeStringToFile(new File(directory, "key"), key, StandardCharsets.UTF_8);
+
+        } catch (IOException e) {
+            throw new RuntimeException("Failed writing the original trace to the cache: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Get the cached inspector methods.
+     *
+     * @return Set of all inspector methods in the source classes, {@code null} if the cache isn't loaded.
+     */
+    public Set<String> getInspectorMethods() {
+        return inspectorMethods;
+    }
+
+    /**
+     * Get the cached original trace.
+     *
+     * @return The trace from the original version of the code, {@code null} if the cache isn't loaded.
+     */
+    public Trace getTrace() {
+        return trace;
+    }
+
+    /**
+     * Get the cached coverage.
+     *
+     * @return The coverage recorded during the original trace, {@code null} if it wasn't recorded or the cache isn't loaded.
+     */
+    public Coverage getCoverage() {
+        return coverage;
+    }
+
+    /**
+     * Read a file of the cache.
+     *
+     * @param name Name of the file.
+     * @return The contents of the file, {@code null} if it doesn't exist.
+     * @throws IOException If the file could not be read.
+     */
+    private String readFile(String name) throws IOException {
+        final File file = new File(directory, name);
+        return file.exists() ? FileUtils.readFileToString(file, StandardCharsets.UTF_8) : null;
+    }
+
+    /**
+     * Hash a file or all the files in a directory (including their relative paths).
+     *
+     * @param file The file or directory.
+     * @return The hash, "missing" if the file doesn't exist.
+     * @throws IOException If a file could not be read.
+     */
+    private static String hash(File file) throws IOException {
+        if (!file.exists()) {
+            return "missing";
+        } else if (file.isFile()) {
+            return Hash.sha256(file);
+        }
+
+        List<File> files = new ArrayList<>(FileUtils.listFiles(file, null, true));
+        files.sort(Comparator.comparing(File::getPath));
+        StringBuilder hashes = new StringBuilder();
+        for (File child : files) {
+            hashes.append(file.toURI().relativize(child.toURI()).getPath())
+                    .append('=')
+                    .append(Hash.sha256(child))
+                    .append('\n');
+        }
+        return Hash.sha256(hashes.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+}
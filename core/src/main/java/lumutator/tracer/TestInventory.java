@@ -0,0 +1,310 @@
+package lumutator.tracer;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseException;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.body.BodyDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.expr.AnnotationExpr;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
+import lumutator.Configuration;
+import lumutator.util.Hash;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.filefilter.DirectoryFileFilter;
+import org.apache.commons.io.filefilter.RegexFileFilter;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Inventory of all the test files in a directory: for each test file, the test class, the methods where
+ * a breakpoint is needed and the lines of their assertions. The test files don't change between the mutants,
+ * so the inventory is only created once.
+ * <p>
+ * If a cache directory is set in the configuration, the inventory is also stored there, so the test files
+ * that didn't change (according to their hash) don't need to be parsed again in a next run.
+ */
+public class TestInventory {
+
+    /**
+     * All the JUnit annotations for the "tests".
+     */
+    private static final Set<String> junitAnnotations = new HashSet<>(Arrays.asList(
+            "Test", "Before", "After", "BeforeClass", "AfterClass"
+    ));
+
+    /**
+     * Name of the file in the cache directory that stores the inventory.
+     */
+    private static final String cacheFile = "test-inventory.json";
+
+    /**
+     * All the test files.
+     */
+    private final List<TestFile> testFiles;
+
+    /**
+     * Constructor.
+     *
+     * @param testFiles All the test files.
+     */
+    private TestInventory(List<TestFile> testFiles) {
+        this.testFiles = testFiles;
+    }
+
+    /**
+     * Create the inventory of all the test files in a directory.
+     *
+     * @param directory Directory that contains the test files.
+     * @return The inventory.
+     */
+    public static TestInventory scan(String directory) {
+        Configuration config = Configuration.getInstance();
+        final File cache = config.hasParameter("cacheDir") ? new File(config.get("cacheDir"), cacheFile) : null;
+
+        JSONObject cachedTestFiles = new JSONObject();
+        if (cache != null && cache.exists()) {
+            try {
+                cachedTestFiles = new JSONObject(FileUtils.readFileToString(cache, StandardCharsets.UTF_8));
+            } catch (IOException | org.json.JSONException e) {
+                // Invalid cache => just parse all the test files again
+            }
+        }
+
+        List<File> files = (List<File>) FileUtils.listFiles(
+                new File(directory),
+                new RegexFileFilter("(?i)^(.*?test.*?)"),       // only match test files
+                DirectoryFileFilter.DIRECTORY
+        );
+        // Always trace the test files in the same order, no matter the order of the file system
+        files.sort(Comparator.comparing(File::getPath));
+
+        List<TestFile> testFiles = new ArrayList<>();
+        JSONObject newCachedTestFiles = new JSONObject();
+        for (File file : files) {
+            try {
+                final String path = file.getCanonicalPath();
+                final String hash = cache != null ? Hash.sha256(file) : "";
+
+                TestFile testFile;
+                JSONObject cached = cachedTestFiles.optJSONObject(path);
+                if (cached != null && cached.getString("hash").equals(hash) && cached.has("assertionLines")) {
+                    testFile = TestFile.fromJSON(path, cached);
+                } else {
+                    testFile = TestFile.parse(file, path);
+                }
+                testFiles.add(testFile);
+                newCachedTestFiles.put(path, testFile.toJSON().put("hash", hash));
+
+            } catch (ParseException | IOException e) {
+                // Should not be possible
+            }
+        }
+
+        if (cache != null) {
+            try {
+                FileUtils.writeStringToFile(cache, newCachedTestFiles.toString(), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed writing the test inventory to the cache: " + e.getMessage());
+            }
+        }
+
+        return new TestInventory(testFiles);
+    }
+
+    /**
+     * Get all the test files.
+     *
+     * @return All the test files.
+     */
+    public List<TestFile> getTestFiles() {
+        return testFiles;
+    }
+
+    /**
+     * A single test file.
+     */
+    public static class TestFile {
+
+        /**
+         * The canonical path of the test file.
+         */
+        private final String path;
+
+        /**
+         * The test class, including its package.
+         */
+        private final String className;
+
+        /**
+         * All the methods with a JUnit annotation (e.g. @Test or @Before), where a breakpoint is needed.
+         */
+        private final List<String> breakpoints;
+
+        /**
+         * The test methods (@Test).
+         */
+        private final Set<String> tests;
+
+        /**
+         * The lines with an assertion (a call of an assert method) in the methods with a JUnit annotation.
+         */
+        private final Set<Integer> assertionLines;
+
+        /**
+         * Constructor.
+         *
+         * @param path           The canonical path of the test file.
+         * @param className      The test class, including its package.
+         * @param breakpoints    All the methods with a JUnit annotation.
+         * @param tests          The test methods.
+         * @param assertionLines The lines with an assertion.
+         */
+        private TestFile(String path, String className, List<String> breakpoints, Set<String> tests,
+                         Set<Integer> assertionLines) {
+            this.path = path;
+            this.className = className;
+            this.breakpoints = Collections.unmodifiableList(breakpoints);
+            this.tests = Collections.unmodifiableSet(tests);
+            this.assertionLines = Collections.unmodifiableSet(assertionLines);
+        }
+
+        /**
+         * Parse a test file.
+         *
+         * @param file The test file.
+         * @param path The canonical path of the test file.
+         * @return The parsed test file.
+         * @throws ParseException If the test file could not be parsed.
+         * @throws IOException    If the test file could not be read.
+         */
+        private static TestFile parse(File file, String path) throws ParseException, IOException {
+            CompilationUnit compilationUnit = JavaParser.parse(file);
+            final String className = String.format(
+                    "%s.%s",
+                    compilationUnit.getPackage().getName(),
+                    FilenameUtils.removeExtension(file.getName())
+            );
+
+            // Set breakpoint at start of each test (@Test)
+            List<String> breakpoints = new ArrayList<>();
+            Set<String> tests = new HashSet<>();
+            Set<Integer> assertionLines = new HashSet<>();
+            for (TypeDeclaration decl : compilationUnit.getTypes()) {
+                for (BodyDeclaration member : decl.getMembers()) {
+                    for (AnnotationExpr annotation : member.getAnnotations()) {
+                        if (junitAnnotations.contains(annotation.getName().toString())) {
+                            MethodDeclaration field = (MethodDeclaration) member;
+                            breakpoints.add(field.getName());
+                            if (annotation.getName().toString().equals("Test")) {
+                                tests.add(field.getName());
+                            }
+                            field.accept(new AssertionVisitor(), assertionLines);
+                        }
+                    }
+                }
+            }
+
+            return new TestFile(path, className, breakpoints, tests, assertionLines);
+        }
+
+        /**
+         * Restore a test file from the cache.
+         *
+         * @param path The canonical path of the test file.
+         * @param json The test file in the cache.
+         * @return The test file.
+         */
+        private static TestFile fromJSON(String path, JSONObject json) {
+            List<String> breakpoints = new ArrayList<>();
+            json.getJSONArray("breakpoints").forEach(breakpoint -> breakpoints.add((String) breakpoint));
+            Set<String> tests = new HashSet<>();
+            json.getJSONArray("tests").forEach(test -> tests.add((String) test));
+            Set<Integer> assertionLines = new HashSet<>();
+            json.getJSONArray("assertionLines").forEach(line -> assertionLines.add((Integer) line));
+            return new TestFile(path, json.getString("className"), breakpoints, tests, assertionLines);
+        }
+
+        /**
+         * Store the test file in the cache.
+         *
+         * @return The test file as a JSON object.
+         */
+        private JSONObject toJSON() {
+            return new JSONObject()
+                    .put("className", className)
+                    .put("breakpoints", new JSONArray(breakpoints))
+                    .put("tests", new JSONArray(tests))
+                    .put("assertionLines", new JSONArray(assertionLines));
+        }
+
+        /**
+         * Get the canonical path of the test file.
+         *
+         * @return The canonical path.
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Get the test class, including its package.
+         *
+         * @return The test class.
+         */
+        public String getClassName() {
+            return className;
+        }
+
+        /**
+         * Get all the methods with a JUnit annotation (e.g. @Test or @Before).
+         *
+         * @return The methods where a breakpoint is needed.
+         */
+        public List<String> getBreakpoints() {
+            return breakpoints;
+        }
+
+        /**
+         * Get the test methods (@Test).
+         *
+         * @return The test methods.
+         */
+        public Set<String> getTests() {
+            return tests;
+        }
+
+        /**
+         * Get the lines with an assertion in the methods with a JUnit annotation.
+         *
+         * @return The lines with an assertion.
+         */
+        public Set<Integer> getAssertionLines() {
+            return assertionLines;
+        }
+
+    }
+
+    /**
+     * Visitor that collects the lines where an assert method (e.g. assertEquals) is called.
+     */
+    private static class AssertionVisitor extends VoidVisitorAdapter<Set<Integer>> {
+
+        @Override
+        public void visit(MethodCallExpr call, Set<Integer> lines) {
+            if (call.getName().startsWith("assert")) {
+                lines.add(call.getBeginLine());
+            }
+            super.visit(call, lines);
+        }
+
+    }
+
+}
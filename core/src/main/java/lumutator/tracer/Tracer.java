@@ -1,33 +1,28 @@
 package lumutator.tracer;
 
-import com.github.javaparser.JavaParser;
-import com.github.javaparser.ParseException;
-import com.github.javaparser.ast.CompilationUnit;
-import com.github.javaparser.ast.body.BodyDeclaration;
-import com.github.javaparser.ast.body.MethodDeclaration;
-import com.github.javaparser.ast.body.TypeDeclaration;
-import com.github.javaparser.ast.expr.AnnotationExpr;
 import lumutator.Configuration;
 import lumutator.Mutant;
+import lumutator.tracer.debugger.AgentDebugger;
+import lumutator.tracer.debugger.Coverage;
 import lumutator.tracer.debugger.Debugger;
 import lumutator.tracer.debugger.Observer;
+import lumutator.tracer.debugger.ResidentDebugger;
+import lumutator.tracer.debugger.Trace;
+import lumutator.tracer.debugger.TraceComparator;
+import lumutator.util.Hash;
 import me.tongfei.progressbar.ProgressBar;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.io.filefilter.DirectoryFileFilter;
-import org.apache.commons.io.filefilter.RegexFileFilter;
 import org.apache.commons.lang3.tuple.ImmutablePair;
-import org.json.JSONObject;
-import org.skyscreamer.jsonassert.JSONCompare;
-import org.skyscreamer.jsonassert.JSONCompareMode;
 import org.skyscreamer.jsonassert.JSONCompareResult;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Tracer: trace a set of tests.
@@ -35,11 +30,10 @@ import java.util.*;
 public abstract class Tracer {
 
     /**
-     * All the JUnit annotations for the "tests".
+     * Name of the file in the cache directory that records which class file is replaced by a mutant
+     * while the mutants are traced one by one (see {@link #restoreClassFiles()}).
      */
-    private static final Set<String> junitAnnotations = new HashSet<>(Arrays.asList(
-            "Test", "Before", "After", "BeforeClass", "AfterClass"
-    ));
+    private static final String swapMarkerFile = "swapped-class";
 
     /**
      * Trace a set of tests.
@@ -48,44 +42,249 @@ public abstract class Tracer {
      * @param inspectorMethods Set of all inspector methods in the source classes.
      * @return The traces of the tests.
      */
-    public static JSONObject trace(String directory, Set<String> inspectorMethods) {
-        List<File> testFiles = (List<File>) FileUtils.listFiles(
-                new File(directory),
-                new RegexFileFilter("(?i)^(.*?test.*?)"),       // only match test files
-                DirectoryFileFilter.DIRECTORY
+    public static Trace trace(String directory, Set<String> inspectorMethods) {
+        return trace(directory, inspectorMethods, Configuration.getInstance().get("classPath"));
+    }
+
+    /**
+     * Trace a set of tests and record which tests reach which source methods.
+     *
+     * @param directory        Directory that contains the test files that need to be traced.
+     * @param inspectorMethods Set of all inspector methods in the source classes.
+     * @param coverage         The coverage where the reached source methods are added to.
+     * @return The traces of the tests.
+     */
+    public static Trace trace(String directory, Set<String> inspectorMethods, Coverage coverage) {
+        return trace(
+                TestInventory.scan(directory), inspectorMethods, Configuration.getInstance().get("classPath"), coverage, null
         );
+    }
 
-        JSONObject traces = new JSONObject();
-        for (File file : testFiles) {
+    /**
+     * Trace a set of tests with a custom classpath.
+     *
+     * @param directory        Directory that contains the test files that need to be traced.
+     * @param inspectorMethods Set of all inspector methods in the source classes.
+     * @param classPath        The classpath of the VM that runs the tests.
+     * @return The traces of the tests.
+     */
+    public static Trace trace(String directory, Set<String> inspectorMethods, String classPath) {
+        return trace(TestInventory.scan(directory), inspectorMethods, classPath, null, null);
+    }
+
+    /**
+     * Trace a set of tests in a resident VM.
+     *
+     * @param directory        Directory that contains the test files that need to be traced.
+     * @param inspectorMethods Set of all inspector methods in the source classes.
+     * @param residentDebugger The resident VM that runs the tests.
+     * @return The traces of the tests.
+     */
+    public static Trace trace(String directory, Set<String> inspectorMethods, ResidentDebugger residentDebugger) {
+        return trace(TestInventory.scan(directory), inspectorMethods, null, residentDebugger, null, null, null, null);
+    }
+
+    /**
+     * Trace a selection of tests with a custom classpath.
+     *
+     * @param inventory        The inventory of the test files that need to be traced.
+     * @param inspectorMethods Set of all inspector methods in the source classes.
+     * @param classPath        The classpath of the VM that runs the tests.
+     * @param coverage         The coverage where the reached source methods are added to, {@code null} to not record it.
+     * @param selection        The test classes to trace with their test methods (see {@link Coverage#getTests(String, String)}),
+     *                         {@code null} to trace all the tests.
+     * @return The traces of the tests.
+     */
+    static Trace trace(TestInventory inventory, Set<String> inspectorMethods, String classPath,
+                            Coverage coverage, Map<String, Set<String>> selection) {
+        return trace(inventory, inspectorMethods, classPath, coverage, selection, null, null);
+    }
+
+    /**
+     * Trace a selection of tests with a custom classpath and compare them with the original trace while they're traced;
+     * the tracing stops as soon as the traces differ, or when a test class takes too long (see {@link #getTimeout(long)}).
+     *
+     * @param mutant           The mutant that is traced, marked as timed out if it takes too long.
+     * @param inventory        The inventory of the test files that need to be traced.
+     * @param inspectorMethods Set of all inspector methods in the source classes.
+     * @param classPath        The classpath of the VM that runs the tests.
+     * @param selection        The test classes to trace with their test methods (see {@link Coverage#getTests(String, String)}),
+     *                         {@code null} to trace all the tests.
+     * @param originalTrace    The trace from the original version of the code.
+     * @return The comparison if the traces differ on at least one field (before it timed out), otherwise {@code null}.
+     */
+    static JSONCompareResult traceAndCompare(Mutant mutant, TestInventory inventory, Set<String> inspectorMethods,
+                                             String classPath, Map<String, Set<String>> selection, Trace originalTrace) {
+        TraceComparator comparator = new TraceComparator(originalTrace);
+        trace(inventory, inspectorMethods, classPath, null, selection, comparator, mutant);
+        mutant.setTimedOut(comparator.hasTimedOut());
+        return comparator.getComparison();
+    }
+
+    /**
+     * Trace a selection of tests in a resident VM and compare them with the original trace while they're traced;
+     * the tracing stops as soon as the traces differ, or when a test class takes too long (see {@link #getTimeout(long)}).
+     *
+     * @param mutant           The mutant that is traced, marked as timed out if it takes too long.
+     * @param inventory        The inventory of the test files that need to be traced.
+     * @param inspectorMethods Set of all inspector methods in the source classes.
+     * @param residentDebugger The resident VM that runs the tests.
+     * @param selection        The test classes to trace with their test methods (see {@link Coverage#getTests(String, String)}),
+     *                         {@code null} to trace all the tests.
+     * @param originalTrace    The trace from the original version of the code.
+     * @return The comparison if the traces differ on at least one field (before it timed out), otherwise {@code null}.
+     */
+    static JSONCompareResult traceAndCompare(Mutant mutant, TestInventory inventory, Set<String> inspectorMethods,
+                                             ResidentDebugger residentDebugger, Map<String, Set<String>> selection,
+                                             Trace originalTrace) {
+        TraceComparator comparator = new TraceComparator(originalTrace);
+        trace(inventory, inspectorMethods, null, residentDebugger, null, selection, comparator, mutant);
+        mutant.setTimedOut(comparator.hasTimedOut());
+        return comparator.getComparison();
+    }
+
+    /**
+     * Trace a selection of tests with a custom classpath.
+     * If the resident runner is enabled in the configuration, all the test classes run in one VM
+     * instead of a new VM for each test class.
+     *
+     * @param inventory        The inventory of the test files that need to be traced.
+     * @param inspectorMethods Set of all inspector methods in the source classes.
+     * @param classPath        The classpath of the VM that runs the tests.
+     * @param coverage         The coverage where the reached source methods are added to, {@code null} to not record it.
+     * @param selection        The test classes to trace with their test methods, {@code null} to trace all the tests.
+     * @param comparator       Comparator that compares the tests with the original trace, {@code null} to collect the traces.
+     * @param mutant           The mutant that is traced, {@code null} if the original code is traced.
+     * @return The traces of the tests (empty if they are compared instead).
+     */
+    private static Trace trace(TestInventory inventory, Set<String> inspectorMethods, String classPath,
+                                    Coverage coverage, Map<String, Set<String>> selection, TraceComparator comparator,
+                                    Mutant mutant) {
+        Configuration config = Configuration.getInstance();
+        if (config.hasParameter("residentRunner") && Boolean.parseBoolean(config.get("residentRunner"))) {
+            ResidentDebugger residentDebugger = new ResidentDebugger(classPath);
             try {
-                CompilationUnit compilationUnit = JavaParser.parse(file);
-                final String classToDebug = String.format(
-                        "%s.%s",
-                        compilationUnit.getPackage().getName(),
-                        FilenameUtils.removeExtension(file.getName())
+                residentDebugger.start();
+                return trace(
+                        inventory, inspectorMethods, classPath, residentDebugger, coverage, selection, comparator, mutant
                 );
+            } finally {
+                residentDebugger.close();
+            }
+        }
+        return trace(inventory, inspectorMethods, classPath, null, coverage, selection, comparator, mutant);
+    }
+
+    /**
+     * Trace a selection of tests, either in a resident VM or by launching a new VM for each test class.
+     * If only some test methods of a test class are selected, only those are traced
+     * (and in a resident VM, only those are run).
+     * The original trace records how long each test class takes; when comparing, each test class gets a time limit
+     * based on that duration.
+     * <p>
+     * A new VM traces its test class with JDI, or with the tracing agent if "tracer" is "agent" in the configuration
+     * (see {@link AgentDebugger}), unless the coverage is recorded.
+     * If "observation" is "assertions" in the configuration, only the lines with an assertion and the end of each
+     * traced method are observed (see {@link Debugger#setObservationLines(Set)}); this always uses JDI.
+     * If "prefixElision" is true in the configuration, a mutant is only observed from the mutated line on
+     * (see {@link Debugger#setMutant(Mutant)}); the tracing agent always observes each traced method from its start.
+     *
+     * @param inventory        The inventory of the test files that need to be traced.
+     * @param inspectorMethods Set of all inspector methods in the source classes.
+     * @param classPath        The classpath of the VMs that run the tests (if no resident VM is used).
+     * @param residentDebugger The resident VM that runs the tests, {@code null} to launch a new VM for each test class.
+     * @param coverage         The coverage where the reached source methods are added to, {@code null} to not record it.
+     * @param selection        The test classes to trace with their test methods, {@code null} to trace all the tests.
+     * @param comparator       Comparator that compares the tests with the original trace, {@code null} to collect the traces.
+     * @param mutant           The mutant that is traced, {@code null} if the original code is traced.
+     * @return The traces of the tests (empty if they are compared instead).
+     */
+    private static Trace trace(TestInventory inventory, Set<String> inspectorMethods, String classPath,
+                                    ResidentDebugger residentDebugger, Coverage coverage,
+                                    Map<String, Set<String>> selection, TraceComparator comparator, Mutant mutant) {
+        // A static initializer might run before the first traced method, so it's never reached from a traced method;
+        // an inspector method might only be invoked by the observer itself
+        final Mutant elidedMutant = mutant != null && elidePrefix() && !mutant.getMutatedMethod().equals("<clinit>")
+                && !inspectorMethods.contains(mutant.getMutatedClass() + "." + mutant.getMutatedMethod()) ? mutant : null;
+        Trace traces = new Trace();
+        for (TestInventory.TestFile testFile : inventory.getTestFiles()) {
+            final String classToDebug = testFile.getClassName();
+            if (selection != null && !selection.containsKey(classToDebug)) {
+                continue;
+            }
 
-                Observer observer = new Observer(inspectorMethods);
-                Debugger debugger = new Debugger(classToDebug, observer);
-
-                // Set breakpoint at start of each test (@Test)
-                for (TypeDeclaration decl : compilationUnit.getTypes()) {
-                    for (BodyDeclaration member : decl.getMembers()) {
-                        for (AnnotationExpr annotation : member.getAnnotations()) {
-                            if (junitAnnotations.contains(annotation.getName().toString())) {
-                                MethodDeclaration field = (MethodDeclaration) member;
-                                debugger.addBreakpoint(field.getName());
-                            }
+            if (comparator != null) {
+                comparator.startTestFile(testFile.getPath());
+            }
+            Observer observer = comparator != null
+                    ? new Observer(inspectorMethods, comparator)
+                    : new Observer(inspectorMethods, traces.getStrings());
+            final long timeout = comparator != null ? getTimeout(comparator.getOriginalDuration()) : 0;
+            final long start = System.currentTimeMillis();
+            boolean timedOut = false;
+
+            // Set breakpoint at start of each test (@Test),
+            // unless only some tests are selected => skip the other tests and the set up methods (e.g. @Before)
+            List<String> breakpoints = testFile.getBreakpoints();
+            Set<String> selectedTests = selection != null ? selection.get(classToDebug) : null;
+            if (selectedTests != null && testFile.getTests().containsAll(selectedTests)) {
+                breakpoints = new ArrayList<>(selectedTests);
+            } else {
+                selectedTests = null;
+            }
+
+            final Set<Integer> observationLines = observeAssertions() ? testFile.getAssertionLines() : null;
+            if (residentDebugger != null) {
+                residentDebugger.setCoverage(coverage);
+                residentDebugger.setObservationLines(observationLines);
+                residentDebugger.setMutant(elidedMutant);
+                residentDebugger.setTimeout(timeout);
+                if (selectedTests == null) {
+                    residentDebugger.run(classToDebug, breakpoints, observer);
+                    timedOut = residentDebugger.hasTimedOut();
+                } else {
+                    for (String test : selectedTests) {
+                        // The time limit is for the whole test class
+                        if (timeout > 0) {
+                            residentDebugger.setTimeout(Math.max(1, start + timeout - System.currentTimeMillis()));
+                        }
+                        residentDebugger.run(classToDebug, test, breakpoints, observer);
+                        timedOut = residentDebugger.hasTimedOut();
+                        if (timedOut || (comparator != null && comparator.hasDiverged())) {
+                            break;
                         }
                     }
                 }
-
+            } else {
+                // The tracing agent can't record the coverage or only observe some lines => always use JDI for that
+                final Debugger debugger;
+                if (coverage == null && observationLines == null && useAgent()) {
+                    debugger = new AgentDebugger(classToDebug, observer, classPath);
+                } else {
+                    debugger = new Debugger(classToDebug, observer, classPath);
+                    debugger.setCoverage(coverage);
+                    debugger.setObservationLines(observationLines);
+                }
+                debugger.setMutant(elidedMutant);
+                debugger.setTimeout(timeout);
+                breakpoints.forEach(debugger::addBreakpoint);
                 debugger.run();
                 debugger.close();
-                traces.put(file.getCanonicalPath(), observer.getTrace());
-
-            } catch (ParseException | IOException e) {
-                // Should not be possible
+                timedOut = debugger.hasTimedOut();
+            }
+            if (comparator != null) {
+                // Took too long => the VM is killed, don't trace the other test classes either
+                if (timedOut) {
+                    comparator.timeOut();
+                    break;
+                }
+                // The traces already differ => no need to trace the other test classes
+                if (comparator.endOfMethod()) {
+                    break;
+                }
+            } else {
+                traces.put(testFile.getPath(), observer.getLines());
+                traces.setDuration(testFile.getPath(), System.currentTimeMillis() - start);
             }
         }
 
@@ -101,14 +300,189 @@ public abstract class Tracer {
      * @return List of all the failed trace comparisons between the original and mutant trace (consists of the json comparison and the associated mutant).
      */
     public static List<ImmutablePair<JSONCompareResult, Mutant>> traceAndCompareMutants(
-            List<Mutant> survivedMutants, JSONObject originalTrace, Set<String> inspectorMethods) {
+            List<Mutant> survivedMutants, Trace originalTrace, Set<String> inspectorMethods) {
+        return traceAndCompareMutants(survivedMutants, originalTrace, inspectorMethods, null);
+    }
+
+    /**
+     * Trace all the mutants tests and also compare them afterwards with the original trace.
+     * Each mutant is only traced on the tests that reach the mutated method, if they're known from the mutation testing tool
+     * (see {@link Mutant#getCoveringTests()}) or from the coverage of the original trace.
+     * If a cache directory is set in the configuration, the mutants that didn't change since the previous run
+     * (see {@link MutantResultStore}) are not traced again.
+     * A mutant that takes too long to trace is marked as timed out (see {@link Mutant#hasTimedOut()}),
+     * its result isn't stored so it's traced again in the next run.
+     * If the configuration sets more than one worker, the mutants are traced in parallel.
+     * If hot-swapping is enabled, each worker swaps the mutants into a resident VM.
+     * If "weakMutationFilter" is enabled in the configuration, the mutants that don't change the state at the exits of
+     * the mutated method are not traced (see {@link WeakMutationFilter} and {@link Mutant#isSkipped()});
+     * their results aren't stored either.
+     * A mutant whose class file has the same bytes as the original class file is equivalent, so it isn't traced
+     * (see {@link Mutant#isSkipped()});
+     * mutants whose class files have the same bytes as each other (and that reach the same tests) are only traced once,
+     * they share the comparison.
+     *
+     * @param survivedMutants  List of all the survived mutants that need to be traced.
+     * @param originalTrace    The trace from the original version of the code.
+     * @param inspectorMethods Set of all inspector methods in the source classes.
+     * @param coverage         The coverage recorded during the original trace, {@code null} if unknown.
+     * @return List of all the failed trace comparisons between the original and mutant trace (consists of the json comparison and the associated mutant).
+     */
+    public static List<ImmutablePair<JSONCompareResult, Mutant>> traceAndCompareMutants(
+            List<Mutant> survivedMutants, Trace originalTrace, Set<String> inspectorMethods, Coverage coverage) {
+
+        Configuration config = Configuration.getInstance();
+
+        // The test files don't change between the mutants
+        final TestInventory inventory = TestInventory.scan(config.get("testDir"));
+
+        // Split the mutants in the ones that are already known from the previous run and the ones that need to be traced
+        final MutantResultStore store = config.hasParameter("cacheDir")
+                ? new MutantResultStore(inventory, originalTrace, inspectorMethods) : null;
+        Map<Mutant, JSONCompareResult> comparisons = new IdentityHashMap<>();
+        List<Mutant> mutantsToTrace = new ArrayList<>();
+        List<Map<String, Set<String>>> selections = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        Map<String, String> originalHashes = new HashMap<>();
+        Map<List<Object>, Mutant> mutantsByHash = new HashMap<>();
+        Map<Mutant, Mutant> duplicates = new IdentityHashMap<>();
+        for (Mutant mutant : survivedMutants) {
+            mutant.setSkipped(false);
+            final Map<String, Set<String>> selection = selectTests(mutant, coverage, inspectorMethods);
+            if (selection != null && selection.isEmpty()) {
+                continue;   // No test reaches the mutant
+            }
+
+            final String hash = hash(mutant.getClassFile());
+            if (hash != null) {
+                final String originalHash = originalHashes.computeIfAbsent(mutant.getMutatedClass(), className -> hash(
+                        new File(config.get("classFiles") + "/" + className.replace(".", "/") + ".class")
+                ));
+                if (hash.equals(originalHash)) {
+                    mutant.setSkipped(true);
+                    continue;   // Same bytes as the original class => equivalent
+                }
+                final Mutant sameMutant = mutantsByHash.putIfAbsent(Arrays.asList(hash, selection), mutant);
+                if (sameMutant != null) {
+                    duplicates.put(mutant, sameMutant);
+                    continue;
+                }
+            }
+
+            final String key = store != null ? store.key(mutant, selection) : null;
+            if (store != null && store.contains(key)) {
+                comparisons.put(mutant, store.get(key));
+            } else {
+                mutantsToTrace.add(mutant);
+                selections.add(selection);
+                keys.add(key);
+            }
+        }
+
+        if (config.hasParameter("weakMutationFilter") && Boolean.parseBoolean(config.get("weakMutationFilter"))) {
+            filterMutants(mutantsToTrace, selections, keys, inventory, inspectorMethods, originalTrace);
+        }
 
+        final int workers = config.hasParameter("workers") ? Integer.parseInt(config.get("workers")) : 1;
+        final boolean hotSwap = config.hasParameter("hotSwap") && Boolean.parseBoolean(config.get("hotSwap"));
+        final List<JSONCompareResult> tracedComparisons = workers > 1 || hotSwap
+                ? traceAndCompareMutantsWithWorkers(
+                        mutantsToTrace, selections, originalTrace, inspectorMethods, inventory, workers, hotSwap, store, keys)
+                : traceAndCompareMutants(mutantsToTrace, selections, originalTrace, inspectorMethods, inventory, store, keys);
+        for (int i = 0; i < tracedComparisons.size(); i++) {
+            comparisons.put(mutantsToTrace.get(i), tracedComparisons.get(i));
+        }
+        for (Map.Entry<Mutant, Mutant> duplicate : duplicates.entrySet()) {
+            comparisons.put(duplicate.getKey(), comparisons.get(duplicate.getValue()));
+            duplicate.getKey().setTimedOut(duplicate.getValue().hasTimedOut());
+            duplicate.getKey().setSkipped(duplicate.getValue().isSkipped());
+        }
+        if (store != null) {
+            store.save();
+        }
+
+        // Keep the original order, so the mutants stay grouped by class
         List<ImmutablePair<JSONCompareResult, Mutant>> failedComparisons = new ArrayList<>();
+        for (Mutant mutant : survivedMutants) {
+            final JSONCompareResult comparison = comparisons.get(mutant);
+            if (comparison != null) {
+                failedComparisons.add(new ImmutablePair<>(comparison, mutant));
+            }
+        }
+        return failedComparisons;
+    }
+
+    /**
+     * Get the hash of a class file, to find the mutants with the same bytes.
+     *
+     * @param classFile The class file.
+     * @return The hash, {@code null} if the class file could not be read.
+     */
+    private static String hash(File classFile) {
+        try {
+            return Hash.sha256(classFile);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Remove the mutants that don't infect the state (see {@link WeakMutationFilter}) from the mutants to trace.
+     *
+     * @param mutants          List of the mutants that need to be traced.
+     * @param selections       The selected tests of each mutant, {@code null} to trace all the tests.
+     * @param keys             The key of each mutant in the store.
+     * @param inventory        The inventory of the test files.
+     * @param inspectorMethods Set of all inspector methods in the source classes.
+     * @param originalTrace    The trace from the original version of the code.
+     */
+    private static void filterMutants(List<Mutant> mutants, List<Map<String, Set<String>>> selections, List<String> keys,
+                                      TestInventory inventory, Set<String> inspectorMethods, Trace originalTrace) {
+        WeakMutationFilter filter = null;
+        try (ProgressBar progressBar = new ProgressBar("Filtering Mutants", mutants.size())) {
+            filter = new WeakMutationFilter(inventory, inspectorMethods, originalTrace);
+            for (int i = mutants.size() - 1; i >= 0; i--) {
+                if (!filter.infects(mutants.get(i), selections.get(i))) {
+                    mutants.get(i).setSkipped(true);
+                    mutants.remove(i);
+                    selections.remove(i);
+                    keys.remove(i);
+                }
+                progressBar.step();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed filtering the mutants: " + e.getMessage());
+        } finally {
+            if (filter != null) {
+                filter.close();
+            }
+        }
+    }
+
+    /**
+     * Trace the tests of the mutants one by one and compare them with the original trace,
+     * by swapping the class file of each mutant into the class files
+     * (the original class file is kept next to it as .tmp, see {@link #restoreClassFiles()}).
+     *
+     * @param mutants          List of the mutants that need to be traced.
+     * @param selections       The selected tests of each mutant, {@code null} to trace all the tests.
+     * @param originalTrace    The trace from the original version of the code.
+     * @param inspectorMethods Set of all inspector methods in the source classes.
+     * @param inventory        The inventory of the test files.
+     * @param store            Where the comparison of each mutant is added as soon as it's traced, {@code null} if none.
+     * @param keys             The key of each mutant in the store.
+     * @return The comparison of each mutant, {@code null} if the traces don't differ.
+     */
+    private static List<JSONCompareResult> traceAndCompareMutants(
+            List<Mutant> mutants, List<Map<String, Set<String>>> selections, Trace originalTrace,
+            Set<String> inspectorMethods, TestInventory inventory, MutantResultStore store, List<String> keys) {
+
+        List<JSONCompareResult> comparisons = new ArrayList<>();
         Configuration config = Configuration.getInstance();
 
         try {
             String currentTempFile = "";    // Store current class, so we dont need to make a copy for each mutant
-            for (Mutant mutant : ProgressBar.wrap(survivedMutants, "Tracing Mutants")) {
+            for (Mutant mutant : ProgressBar.wrap(mutants, "Tracing Mutants")) {
                 final String classFilesDir = config.get("classFiles") + "/" + mutant.getMutatedClass().replace(".", "/");
                 final String newClassFile = mutant.getClassFile().getCanonicalPath();
                 final String oldClassFile = classFilesDir + ".class";
@@ -117,11 +491,13 @@ public abstract class Tracer {
                 // Create copy of original .class file if necessary
                 if (currentTempFile.isEmpty()) {
                     // Start
+                    markSwapped(oldClassFile);
                     Files.move(Paths.get(oldClassFile), Paths.get(oldClassTempFile), StandardCopyOption.REPLACE_EXISTING);
                     currentTempFile = oldClassTempFile;
                 } else if (!currentTempFile.equals(oldClassTempFile)) {
                     // New class
                     Files.move(Paths.get(currentTempFile), Paths.get(currentTempFile.replace(".tmp", ".class")), StandardCopyOption.REPLACE_EXISTING);
+                    markSwapped(oldClassFile);
                     Files.move(Paths.get(oldClassFile), Paths.get(oldClassTempFile), StandardCopyOption.REPLACE_EXISTING);
                     currentTempFile = oldClassTempFile;
                 } // else: Mutants still in same class, no need to make copy of original
@@ -129,23 +505,220 @@ public abstract class Tracer {
                 // Copy the mutant .class file
                 Files.copy(Paths.get(newClassFile), Paths.get(oldClassFile), StandardCopyOption.REPLACE_EXISTING);
 
-                JSONObject mutantTrace = trace(config.get("testDir"), inspectorMethods);
-
-                // Compare traces
-                // LENIENT is fastest and we dont need strictness or extensibility checks
-                JSONCompareResult comparison = JSONCompare.compareJSON(originalTrace, mutantTrace, JSONCompareMode.LENIENT);
-                if (comparison.isFailureOnField()) {
-                    failedComparisons.add(new ImmutablePair<>(comparison, mutant));
+                final int i = comparisons.size();
+                final JSONCompareResult comparison = traceAndCompare(
+                        mutant, inventory, inspectorMethods, config.get("classPath"), selections.get(i), originalTrace
+                );
+                if (store != null && !mutant.hasTimedOut()) {
+                    store.put(keys.get(i), comparison);
                 }
+                comparisons.add(comparison);
             }
             // Restore copy of class of last mutant
-            Files.move(Paths.get(currentTempFile), Paths.get(currentTempFile.replace(".tmp", ".class")), StandardCopyOption.REPLACE_EXISTING);
+            if (!currentTempFile.isEmpty()) {
+                Files.move(Paths.get(currentTempFile), Paths.get(currentTempFile.replace(".tmp", ".class")), StandardCopyOption.REPLACE_EXISTING);
+                markSwapped(null);
+            }
 
         } catch (IOException e) {
             // Should not be possible
         }
 
-        return failedComparisons;
+        return comparisons;
+    }
+
+    /**
+     * Trace the tests of the mutants with a number of workers and compare them with the original trace.
+     * Each worker traces a different mutant, without touching the original class files.
+     *
+     * @param mutants          List of the mutants that need to be traced.
+     * @param selections       The selected tests of each mutant, {@code null} to trace all the tests.
+     * @param originalTrace    The trace from the original version of the code.
+     * @param inspectorMethods Set of all inspector methods in the source classes.
+     * @param inventory        The inventory of the test files.
+     * @param workers          The amount of mutants that are traced at the same time.
+     * @param hotSwap          Should the workers hot-swap the mutants into a resident VM?
+     * @param store            Where the comparison of each mutant is added as soon as it's traced, {@code null} if none.
+     * @param keys             The key of each mutant in the store.
+     * @return The comparison of each mutant, {@code null} if the traces don't differ.
+     */
+    private static List<JSONCompareResult> traceAndCompareMutantsWithWorkers(
+            List<Mutant> mutants, List<Map<String, Set<String>>> selections, Trace originalTrace,
+            Set<String> inspectorMethods, TestInventory inventory, int workers, boolean hotSwap,
+            MutantResultStore store, List<String> keys) {
+
+        List<JSONCompareResult> comparisons = new ArrayList<>();
+        List<Worker> allWorkers = new ArrayList<>();
+        BlockingQueue<Worker> availableWorkers = new ArrayBlockingQueue<>(workers);
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+
+        try (ProgressBar progressBar = new ProgressBar("Tracing Mutants", mutants.size())) {
+            for (int i = 0; i < workers; i++) {
+                Worker worker = new Worker(inventory, hotSwap);
+                allWorkers.add(worker);
+                availableWorkers.add(worker);
+            }
+
+            List<Future<JSONCompareResult>> futures = new ArrayList<>();
+            for (int i = 0; i < mutants.size(); i++) {
+                final Mutant mutant = mutants.get(i);
+                final Map<String, Set<String>> selection = selections.get(i);
+                final String key = store != null ? keys.get(i) : null;
+                futures.add(executor.submit(() -> {
+                    Worker worker = availableWorkers.take();
+                    try {
+                        final JSONCompareResult comparison =
+                                worker.traceAndCompare(mutant, inspectorMethods, selection, originalTrace);
+                        if (store != null && !mutant.hasTimedOut()) {
+                            store.put(key, comparison);
+                        }
+                        return comparison;
+                    } finally {
+                        availableWorkers.put(worker);
+                        progressBar.step();
+                    }
+                }));
+            }
+
+            // Collect the comparisons in the original order
+            for (Future<JSONCompareResult> future : futures) {
+                comparisons.add(future.get());
+            }
+
+        } catch (IOException e) {
+            throw new RuntimeException("Failed creating the overlay directories: " + e.getMessage());
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed tracing the mutants: " + e.getMessage());
+        } finally {
+            executor.shutdownNow();
+            allWorkers.forEach(Worker::close);
+        }
+
+        return comparisons;
+    }
+
+    /**
+     * Get the time limit of a test class when tracing a mutant: the duration of the test class in the original trace
+     * times a factor ("timeoutFactor" in the configuration, 2 by default), plus a constant
+     * ("timeoutConstant" in the configuration, in milliseconds, 10 seconds by default).
+     *
+     * @param originalDuration The duration of the test class in the original trace in milliseconds, -1 if unknown.
+     * @return The time limit in milliseconds, 0 for no limit (the duration is unknown).
+     */
+    static long getTimeout(long originalDuration) {
+        if (originalDuration < 0) {
+            return 0;
+        }
+        Configuration config = Configuration.getInstance();
+        final double factor = config.hasParameter("timeoutFactor") ? Double.parseDouble(config.get("timeoutFactor")) : 2;
+        final long constant = config.hasParameter("timeoutConstant") ? Long.parseLong(config.get("timeoutConstant")) : 10000;
+        return Math.max(1, (long) (factor * originalDuration) + constant);
+    }
+
+    /**
+     * Check if the test classes are traced with the tracing agent instead of JDI ("tracer" in the configuration).
+     *
+     * @return True if the tracing agent is used.
+     */
+    private static boolean useAgent() {
+        Configuration config = Configuration.getInstance();
+        return config.hasParameter("tracer") && config.get("tracer").equals("agent");
+    }
+
+    /**
+     * Check if only the assertions and the end of each traced method are observed, according to the configuration
+     * ("observation" is "assertions"), instead of every line.
+     *
+     * @return True if only the assertions are observed.
+     */
+    private static boolean observeAssertions() {
+        Configuration config = Configuration.getInstance();
+        return config.hasParameter("observation") && config.get("observation").equals("assertions");
+    }
+
+    /**
+     * Check if the mutants are only observed from the mutated line on, according to the configuration
+     * ("prefixElision" is true).
+     *
+     * @return True if the prefix of each traced method up to the mutated line is skipped.
+     */
+    private static boolean elidePrefix() {
+        Configuration config = Configuration.getInstance();
+        return config.hasParameter("prefixElision") && Boolean.parseBoolean(config.get("prefixElision"));
+    }
+
+    /**
+     * Record which class file is replaced by a mutant, so it can be restored if the run is interrupted
+     * (see {@link #restoreClassFiles()}); only if a cache directory is set in the configuration.
+     *
+     * @param classFile The class file that is replaced, {@code null} once the original class file is restored.
+     * @throws IOException If the record could not be written.
+     */
+    private static void markSwapped(String classFile) throws IOException {
+        Configuration config = Configuration.getInstance();
+        if (!config.hasParameter("cacheDir")) {
+            return;
+        }
+
+        final File marker = new File(config.get("cacheDir"), swapMarkerFile);
+        if (classFile == null) {
+            Files.deleteIfExists(marker.toPath());
+        } else {
+            FileUtils.writeStringToFile(marker, classFile, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Restore the original class file that is still replaced by a mutant, because a previous run was interrupted
+     * while tracing the mutants one by one: the original class file is still next to the mutant as .tmp.
+     * Only the class file that is recorded in the cache directory is restored (see {@link #markSwapped(String)}),
+     * other .tmp files are left alone.
+     */
+    public static void restoreClassFiles() {
+        Configuration config = Configuration.getInstance();
+        if (!config.hasParameter("cacheDir")) {
+            return;
+        }
+        final File marker = new File(config.get("cacheDir"), swapMarkerFile);
+        if (!marker.isFile()) {
+            return;
+        }
+
+        try {
+            final String classFile = FileUtils.readFileToString(marker, StandardCharsets.UTF_8);
+            final File tempFile = new File(classFile.substring(0, classFile.length() - ".class".length()) + ".tmp");
+            if (tempFile.isFile()) {
+                Files.move(tempFile.toPath(), Paths.get(classFile), StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.delete(marker.toPath());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed restoring the original class file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Select the tests that reach a mutant: the covering tests of the mutation testing tool if they're known,
+     * otherwise the coverage recorded during the original trace.
+     * The mutation testing tool doesn't know that the inspector methods are also invoked while tracing,
+     * so the recorded coverage is always used for them.
+     *
+     * @param mutant           The mutant.
+     * @param coverage         The coverage recorded during the original trace, {@code null} if unknown.
+     * @param inspectorMethods Set of all inspector methods in the source classes.
+     * @return The test classes with their test methods (see {@link Coverage#getTests(String, String)}),
+     * {@code null} if all the tests need to be traced.
+     */
+    private static Map<String, Set<String>> selectTests(Mutant mutant, Coverage coverage, Set<String> inspectorMethods) {
+        if (mutant.getCoveringTests() != null
+                && !inspectorMethods.contains(mutant.getMutatedClass() + "." + mutant.getMutatedMethod())) {
+            Map<String, Set<String>> selection = new HashMap<>(mutant.getCoveringTests());
+            if (mutant.getMutatedMethod().equals("<clinit>")) {
+                // A static initializer only runs once per VM, so always trace the whole test classes
+                selection.replaceAll((testClass, testMethods) -> null);
+            }
+            return selection;
+        }
+        return coverage == null ? null : coverage.getTests(mutant.getMutatedClass(), mutant.getMutatedMethod());
     }
 
 }
@@ -0,0 +1,164 @@
+package lumutator.tracer;
+
+import lumutator.Configuration;
+import lumutator.Mutant;
+import lumutator.tracer.debugger.ExitRecorder;
+import lumutator.tracer.debugger.StringTable;
+import lumutator.tracer.debugger.Trace;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Weak-mutation prefilter: before a mutant is traced, the selected test classes are run with only the exits of
+ * the mutated method recorded (see {@link ExitRecorder}), without stepping through the tests. If the way it exits
+ * (a return or an exception), the return value, the receiver, the arguments and the static fields (with all the
+ * objects they reach) are the same at every exit as with the original version of the code, the mutant doesn't infect
+ * the state, so it isn't traced.
+ * <p>
+ * The filter is not sound for a mutant that only changes the static fields of another class than the mutated one:
+ * those aren't recorded, so such a mutant is filtered out even if the tests observe the change.
+ * <p>
+ * Mutants of a static initializer are never filtered, as it runs before the tests, and neither are mutants of
+ * an inspector method, as those are also invoked by the tracer itself.
+ */
+class WeakMutationFilter {
+
+    /**
+     * The inventory of the test files.
+     */
+    private final TestInventory inventory;
+
+    /**
+     * Set of all inspector methods in the source classes.
+     */
+    private final Set<String> inspectorMethods;
+
+    /**
+     * The trace from the original version of the code, for the duration of each test class.
+     */
+    private final Trace originalTrace;
+
+    /**
+     * The strings of all the recorded states, so the states of the mutants and the original code can be compared.
+     */
+    private final StringTable strings = new StringTable();
+
+    /**
+     * The recorded states with the original version of the code (method and test class => states).
+     */
+    private final Map<String, List<Trace.Line>> baselines = new HashMap<>();
+
+    /**
+     * Overlay directory that contains the class file of the current mutant.
+     */
+    private final ClassOverlay overlay;
+
+    /**
+     * Constructor.
+     *
+     * @param inventory        The inventory of the test files.
+     * @param inspectorMethods Set of all inspector methods in the source classes.
+     * @param originalTrace    The trace from the original version of the code.
+     * @throws IOException If the overlay directory could not be created.
+     */
+    WeakMutationFilter(TestInventory inventory, Set<String> inspectorMethods, Trace originalTrace) throws IOException {
+        this.inventory = inventory;
+        this.inspectorMethods = inspectorMethods;
+        this.originalTrace = originalTrace;
+        this.overlay = new ClassOverlay();
+    }
+
+    /**
+     * Check if a mutant might infect the state of the selected tests, i.e. if it needs to be traced.
+     *
+     * @param mutant    The mutant.
+     * @param selection The selected test classes (see {@link Tracer#trace(TestInventory, Set, String, lumutator.tracer.debugger.Coverage, Map)}),
+     *                  {@code null} for all the test classes.
+     * @return True if the state at an exit of the mutated method differs (or the test class took too long).
+     * @throws IOException If the class file of the mutant could not be installed.
+     */
+    boolean infects(Mutant mutant, Map<String, Set<String>> selection) throws IOException {
+        if (mutant.getMutatedMethod().equals("<clinit>")
+                || inspectorMethods.contains(mutant.getMutatedClass() + "." + mutant.getMutatedMethod())) {
+            return true;
+        }
+
+        final String classPath = Configuration.getInstance().get("classPath");
+        overlay.install(mutant);
+        try {
+            for (TestInventory.TestFile testFile : inventory.getTestFiles()) {
+                if (selection != null && !selection.containsKey(testFile.getClassName())) {
+                    continue;
+                }
+
+                final String key = String.format("%s.%s%s %s", mutant.getMutatedClass(), mutant.getMutatedMethod(),
+                        mutant.getMutatedMethodDescr(), testFile.getClassName());
+                List<Trace.Line> baseline = baselines.get(key);
+                if (baseline == null) {
+                    baseline = record(mutant, testFile.getClassName(), classPath, 0);
+                    baselines.put(key, baseline);
+                }
+
+                final long timeout = Tracer.getTimeout(originalTrace.getDuration(testFile.getPath()));
+                final List<Trace.Line> exits = record(mutant, testFile.getClassName(), overlay.getClassPath(classPath), timeout);
+                if (exits == null || !sameStates(baseline, exits)) {
+                    return true;
+                }
+            }
+        } finally {
+            overlay.uninstall();
+        }
+        return false;
+    }
+
+    /**
+     * Remove the overlay directory.
+     */
+    void close() {
+        overlay.delete();
+    }
+
+    /**
+     * Run a test class and record the states at the exits of the mutated method.
+     *
+     * @param mutant       The mutant.
+     * @param classToDebug The test class.
+     * @param classPath    The classpath of the VM.
+     * @param timeout      The time limit in milliseconds, 0 for no limit.
+     * @return The states, {@code null} if it took too long.
+     */
+    private List<Trace.Line> record(Mutant mutant, String classToDebug, String classPath, long timeout) {
+        ExitRecorder recorder = new ExitRecorder(
+                classToDebug, strings, classPath,
+                mutant.getMutatedClass(), mutant.getMutatedMethod(), mutant.getMutatedMethodDescr()
+        );
+        recorder.setTimeout(timeout);
+        recorder.run();
+        recorder.close();
+        return recorder.hasTimedOut() ? null : recorder.getExits();
+    }
+
+    /**
+     * Check if the states at the exits are the same.
+     *
+     * @param expected The states with the original version of the code.
+     * @param actual   The states with the mutant.
+     * @return True if the states are the same.
+     */
+    private static boolean sameStates(List<Trace.Line> expected, List<Trace.Line> actual) {
+        if (expected.size() != actual.size()) {
+            return false;
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            if (!expected.get(i).sameState(actual.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,122 @@
+package lumutator.tracer;
+
+import lumutator.Configuration;
+import lumutator.Mutant;
+import lumutator.tracer.debugger.ResidentDebugger;
+import lumutator.tracer.debugger.Trace;
+import org.skyscreamer.jsonassert.JSONCompareResult;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Worker that traces one mutant at a time; multiple workers can trace different mutants at the same time.
+ * <p>
+ * By default, a new VM is launched for each test class, with the class file of the mutant in an overlay directory.
+ * With hot-swapping, the worker keeps one VM alive and swaps the mutated class in and out of it instead;
+ * if the VM can't redefine the class, the worker falls back to launching new VMs.
+ * The original trace is taken in new VMs, so after a mutant of a class with static state (which the mutant might have
+ * changed) the resident VM is restarted for the next mutant.
+ */
+class Worker {
+
+    /**
+     * Overlay directory that contains the class file of the current mutant.
+     */
+    private final ClassOverlay overlay;
+
+    /**
+     * The inventory of the test files.
+     */
+    private final TestInventory inventory;
+
+    /**
+     * Should the mutants be hot-swapped into a resident VM?
+     */
+    private final boolean hotSwap;
+
+    /**
+     * The resident VM, {@code null} if it isn't started yet.
+     */
+    private ResidentDebugger residentDebugger;
+
+    /**
+     * Create a new worker.
+     *
+     * @param inventory The inventory of the test files.
+     * @param hotSwap   Should the mutants be hot-swapped into a resident VM?
+     * @throws IOException If the overlay directory could not be created.
+     */
+    Worker(TestInventory inventory, boolean hotSwap) throws IOException {
+        this.overlay = new ClassOverlay();
+        this.inventory = inventory;
+        this.hotSwap = hotSwap;
+    }
+
+    /**
+     * Trace the tests with a mutant and compare them with the original trace.
+     *
+     * @param mutant           The mutant.
+     * @param inspectorMethods Set of all inspector methods in the source classes.
+     * @param selection        The tests that need to be traced (see {@link Tracer#trace(TestInventory, Set, String, lumutator.tracer.debugger.Coverage, Map)}),
+     *                         {@code null} to trace all the tests.
+     * @param originalTrace    The trace from the original version of the code.
+     * @return The comparison if the traces differ on at least one field, otherwise {@code null}.
+     * @throws IOException If something went wrong with the class files.
+     */
+    JSONCompareResult traceAndCompare(Mutant mutant, Set<String> inspectorMethods, Map<String, Set<String>> selection,
+                                      Trace originalTrace) throws IOException {
+        Configuration config = Configuration.getInstance();
+
+        // A static initializer already ran in the resident VM, so these mutants always need a new VM
+        if (hotSwap && !mutant.getMutatedMethod().equals("<clinit>")) {
+            if (residentDebugger == null || !residentDebugger.isAlive()) {
+                residentDebugger = new ResidentDebugger(config.get("classPath"));
+                residentDebugger.start();
+            }
+
+            final byte[] originalClass = Files.readAllBytes(Paths.get(
+                    config.get("classFiles"), mutant.getMutatedClass().replace(".", "/") + ".class"
+            ));
+            final boolean staticState = residentDebugger.hasStaticState(mutant.getMutatedClass());
+            if (residentDebugger.redefineClass(mutant.getMutatedClass(), Files.readAllBytes(mutant.getClassFile().toPath()))) {
+                try {
+                    return Tracer.traceAndCompare(
+                            mutant, inventory, inspectorMethods, residentDebugger, selection, originalTrace
+                    );
+                } finally {
+                    // Never continue with the mutant or the static state it might have changed still in place
+                    if (staticState || (residentDebugger.isAlive()
+                            && !residentDebugger.redefineClass(mutant.getMutatedClass(), originalClass))) {
+                        residentDebugger.close();
+                        residentDebugger = null;
+                    }
+                }
+            }
+            // else: the VM can't redefine the class => fall back to launching new VMs
+        }
+
+        overlay.install(mutant);
+        try {
+            return Tracer.traceAndCompare(
+                    mutant, inventory, inspectorMethods, overlay.getClassPath(config.get("classPath")), selection, originalTrace
+            );
+        } finally {
+            overlay.uninstall();
+        }
+    }
+
+    /**
+     * Stop the resident VM (if any) and remove the overlay directory.
+     */
+    void close() {
+        if (residentDebugger != null) {
+            residentDebugger.close();
+        }
+        overlay.delete();
+    }
+
+}
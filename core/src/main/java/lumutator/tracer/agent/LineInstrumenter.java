@@ -0,0 +1,673 @@
+package lumutator.tracer.agent;
+
+import org.objectweb.asm.*;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.security.ProtectionDomain;
+import java.util.*;
+
+/**
+ * LineInstrumenter: add the hooks of {@link Snapshots} to the traced methods of the test class, when it's loaded.
+ * <p>
+ * Each traced method gets a hook at its start and at each exit (a return or an exception), and a line hook wherever
+ * a line can be entered: at the start of each line and wherever a jump or an exception handler lands. A line hook
+ * passes the local variables that are visible at that point according to the local variable table
+ * (the same variables that a debugger sees), so the class needs to be compiled with debug information.
+ * <p>
+ * The class is read twice: first to find the jump targets and the scopes of the local variables of each traced method,
+ * then to add the hooks. The hooks don't change the stack, so the existing stack map frames stay valid.
+ */
+class LineInstrumenter implements ClassFileTransformer {
+
+    /**
+     * Internal name of the snapshots class.
+     */
+    private static final String snapshots = Type.getInternalName(Snapshots.class);
+
+    /**
+     * Internal name of the class to trace.
+     */
+    private final String className;
+
+    /**
+     * The names of the methods to trace.
+     */
+    private final Set<String> methods;
+
+    /**
+     * Constructor.
+     *
+     * @param className The class to trace.
+     * @param methods   The names of the methods to trace.
+     */
+    LineInstrumenter(String className, Set<String> methods) {
+        this.className = className.replace('.', '/');
+        this.methods = methods;
+    }
+
+    @Override
+    public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+                            ProtectionDomain protectionDomain, byte[] classFile) {
+        if (classBeingRedefined != null || !this.className.equals(className)) {
+            return null;
+        }
+        try {
+            return instrument(classFile);
+        } catch (RuntimeException e) {
+            // The VM ignores exceptions of a transformer, so at least report it in the output of the tests
+            System.err.println("Failed instrumenting " + className + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Add the hooks to the traced methods of a class.
+     *
+     * @param classFile The class file.
+     * @return The instrumented class file.
+     */
+    byte[] instrument(byte[] classFile) {
+        final ClassReader reader = new ClassReader(classFile);
+
+        // (1) Find the jump targets and the scopes of the local variables
+        final Map<String, MethodInfo> tracedMethods = new HashMap<>();
+        reader.accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                if (!isTraced(access, name)) {
+                    return null;
+                }
+                MethodInfo info = new MethodInfo();
+                tracedMethods.put(name + descriptor, info);
+                return info.new Collector();
+            }
+        }, 0);
+
+        // (2) Add the hooks
+        final ClassWriter writer = new ClassWriter(reader, ClassWriter.COMPUTE_MAXS);
+        reader.accept(new ClassVisitor(Opcodes.ASM9, writer) {
+            private int version;
+
+            @Override
+            public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+                this.version = version;
+                super.visit(version, access, name, signature, superName, interfaces);
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                final MethodVisitor methodVisitor = super.visitMethod(access, name, descriptor, signature, exceptions);
+                final MethodInfo info = tracedMethods.get(name + descriptor);
+                if (info == null) {
+                    return methodVisitor;
+                }
+                return new Hooks(
+                        methodVisitor, LineInstrumenter.this.className, access, descriptor, info, version >= Opcodes.V1_7
+                );
+            }
+        }, 0);
+
+        return writer.toByteArray();
+    }
+
+    /**
+     * Check if a method needs to be traced.
+     *
+     * @param access The access flags of the method.
+     * @param name   The name of the method.
+     * @return True if the method needs to be traced.
+     */
+    private boolean isTraced(int access, String name) {
+        return (access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) == 0
+                && !name.startsWith("<") && methods.contains(name);
+    }
+
+    /**
+     * A local variable in the local variable table.
+     */
+    private static class LocalVariable {
+
+        /**
+         * The name.
+         */
+        final String name;
+
+        /**
+         * The descriptor of the declared type.
+         */
+        final String descriptor;
+
+        /**
+         * The index in the local variables of the frame.
+         */
+        final int index;
+
+        /**
+         * The first instruction of the scope.
+         */
+        final int start;
+
+        /**
+         * The first instruction after the scope.
+         */
+        final int end;
+
+        /**
+         * Constructor.
+         *
+         * @param name       The name.
+         * @param descriptor The descriptor of the declared type.
+         * @param index      The index in the local variables of the frame.
+         * @param start      The first instruction of the scope.
+         * @param end        The first instruction after the scope.
+         */
+        LocalVariable(String name, String descriptor, int index, int start, int end) {
+            this.name = name;
+            this.descriptor = descriptor;
+            this.index = index;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * What needs to be known about a traced method before adding the hooks; the positions are instruction numbers,
+     * which are the same when the method is read again.
+     */
+    private static class MethodInfo {
+
+        /**
+         * The instructions where a jump or an exception handler lands.
+         */
+        final Set<Integer> jumpTargets = new HashSet<>();
+
+        /**
+         * The local variables.
+         */
+        final List<LocalVariable> localVariables = new ArrayList<>();
+
+        /**
+         * Get the local variables that are visible at an instruction; "this" isn't one of them.
+         *
+         * @param instruction The instruction.
+         * @return The local variables.
+         */
+        List<LocalVariable> getVisibleVariables(int instruction) {
+            List<LocalVariable> visibleVariables = new ArrayList<>();
+            Set<String> names = new HashSet<>();
+            for (LocalVariable variable : localVariables) {
+                if (variable.start <= instruction && instruction < variable.end
+                        && !variable.name.equals("this") && !variable.name.startsWith("this$") && names.add(variable.name)) {
+                    visibleVariables.add(variable);
+                }
+            }
+            return visibleVariables;
+        }
+
+        /**
+         * Collects the jump targets and the local variables of the method.
+         */
+        class Collector extends MethodVisitor {
+
+            /**
+             * The number of instructions so far.
+             */
+            private int instructions = 0;
+
+            /**
+             * The instruction at each label.
+             */
+            private final Map<Label, Integer> labels = new HashMap<>();
+
+            /**
+             * The labels where a jump or an exception handler lands.
+             */
+            private final List<Label> targets = new ArrayList<>();
+
+            /**
+             * The local variables, with the labels of their scopes.
+             */
+            private final List<Object[]> variables = new ArrayList<>();
+
+            /**
+             * Constructor.
+             */
+            Collector() {
+                super(Opcodes.ASM9);
+            }
+
+            @Override
+            public void visitLabel(Label label) {
+                labels.put(label, instructions);
+            }
+
+            @Override
+            public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+                targets.add(handler);
+            }
+
+            @Override
+            public void visitLocalVariable(String name, String descriptor, String signature, Label start, Label end, int index) {
+                variables.add(new Object[]{name, descriptor, index, start, end});
+            }
+
+            @Override
+            public void visitInsn(int opcode) {
+                instructions++;
+            }
+
+            @Override
+            public void visitIntInsn(int opcode, int operand) {
+                instructions++;
+            }
+
+            @Override
+            public void visitVarInsn(int opcode, int var) {
+                instructions++;
+            }
+
+            @Override
+            public void visitTypeInsn(int opcode, String type) {
+                instructions++;
+            }
+
+            @Override
+            public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+                instructions++;
+            }
+
+            @Override
+            public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+                instructions++;
+            }
+
+            @Override
+            public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
+                instructions++;
+            }
+
+            @Override
+            public void visitJumpInsn(int opcode, Label label) {
+                targets.add(label);
+                instructions++;
+            }
+
+            @Override
+            public void visitLdcInsn(Object value) {
+                instructions++;
+            }
+
+            @Override
+            public void visitIincInsn(int var, int increment) {
+                instructions++;
+            }
+
+            @Override
+            public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+                targets.add(dflt);
+                targets.addAll(Arrays.asList(labels));
+                instructions++;
+            }
+
+            @Override
+            public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+                targets.add(dflt);
+                targets.addAll(Arrays.asList(labels));
+                instructions++;
+            }
+
+            @Override
+            public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+                instructions++;
+            }
+
+            @Override
+            public void visitEnd() {
+                for (Label target : targets) {
+                    jumpTargets.add(labels.get(target));
+                }
+                for (Object[] variable : variables) {
+                    localVariables.add(new LocalVariable((String) variable[0], (String) variable[1], (Integer) variable[2],
+                            labels.get((Label) variable[3]), labels.get((Label) variable[4])));
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the hooks to a traced method.
+     */
+    private static class Hooks extends MethodVisitor {
+
+        /**
+         * The id of the method.
+         */
+        private final int method = Snapshots.registerMethod();
+
+        /**
+         * Internal name of the class of the method.
+         */
+        private final String owner;
+
+        /**
+         * Is the method static (so there's no test object)?
+         */
+        private final boolean isStatic;
+
+        /**
+         * The descriptor of the method.
+         */
+        private final String descriptor;
+
+        /**
+         * The jump targets and the local variables of the method.
+         */
+        private final MethodInfo info;
+
+        /**
+         * Does the class need stack map frames (so the exception handler of the exit hook needs one)?
+         */
+        private final boolean frames;
+
+        /**
+         * Start of the code that is covered by the exception handler of the exit hook.
+         */
+        private final Label start = new Label();
+
+        /**
+         * The exception handler of the exit hook.
+         */
+        private final Label handler = new Label();
+
+        /**
+         * The number of (original) instructions so far.
+         */
+        private int instructions = 0;
+
+        /**
+         * The current line, -1 if not known yet.
+         */
+        private int line = -1;
+
+        /**
+         * Does a new line start at the next instruction?
+         */
+        private boolean lineStart = false;
+
+        /**
+         * Constructor.
+         *
+         * @param methodVisitor The visitor that writes the method.
+         * @param owner         Internal name of the class of the method.
+         * @param access        The access flags of the method.
+         * @param descriptor    The descriptor of the method.
+         * @param info          The jump targets and the local variables of the method.
+         * @param frames        Does the class need stack map frames?
+         */
+        Hooks(MethodVisitor methodVisitor, String owner, int access, String descriptor, MethodInfo info, boolean frames) {
+            super(Opcodes.ASM9, methodVisitor);
+            this.owner = owner;
+            this.isStatic = (access & Opcodes.ACC_STATIC) != 0;
+            this.descriptor = descriptor;
+            this.info = info;
+            this.frames = frames;
+        }
+
+        @Override
+        public void visitCode() {
+            super.visitCode();
+            push(method);
+            super.visitMethodInsn(Opcodes.INVOKESTATIC, snapshots, "enter", "(I)V", false);
+            super.visitLabel(start);
+        }
+
+        @Override
+        public void visitLineNumber(int line, Label start) {
+            super.visitLineNumber(line, start);
+            this.line = line;
+            lineStart = true;
+        }
+
+        @Override
+        public void visitInsn(int opcode) {
+            beforeInstruction();
+            if (opcode >= Opcodes.IRETURN && opcode <= Opcodes.RETURN) {
+                exitHook();
+            }
+            super.visitInsn(opcode);
+        }
+
+        @Override
+        public void visitIntInsn(int opcode, int operand) {
+            beforeInstruction();
+            super.visitIntInsn(opcode, operand);
+        }
+
+        @Override
+        public void visitVarInsn(int opcode, int var) {
+            beforeInstruction();
+            super.visitVarInsn(opcode, var);
+        }
+
+        @Override
+        public void visitTypeInsn(int opcode, String type) {
+            beforeInstruction();
+            super.visitTypeInsn(opcode, type);
+        }
+
+        @Override
+        public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+            beforeInstruction();
+            super.visitFieldInsn(opcode, owner, name, descriptor);
+        }
+
+        @Override
+        public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+            beforeInstruction();
+            super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+        }
+
+        @Override
+        public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
+            beforeInstruction();
+            super.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
+        }
+
+        @Override
+        public void visitJumpInsn(int opcode, Label label) {
+            beforeInstruction();
+            super.visitJumpInsn(opcode, label);
+        }
+
+        @Override
+        public void visitLdcInsn(Object value) {
+            beforeInstruction();
+            super.visitLdcInsn(value);
+        }
+
+        @Override
+        public void visitIincInsn(int var, int increment) {
+            beforeInstruction();
+            super.visitIincInsn(var, increment);
+        }
+
+        @Override
+        public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+            beforeInstruction();
+            super.visitTableSwitchInsn(min, max, dflt, labels);
+        }
+
+        @Override
+        public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+            beforeInstruction();
+            super.visitLookupSwitchInsn(dflt, keys, labels);
+        }
+
+        @Override
+        public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+            beforeInstruction();
+            super.visitMultiANewArrayInsn(descriptor, numDimensions);
+        }
+
+        @Override
+        public void visitMaxs(int maxStack, int maxLocals) {
+            // Exit hook for the exceptions that leave the method, after the exception handlers of the method itself
+            super.visitTryCatchBlock(start, handler, handler, null);
+            super.visitLabel(handler);
+            if (frames) {
+                final Object[] argumentTypes = getArgumentTypes();
+                super.visitFrame(Opcodes.F_FULL, argumentTypes.length, argumentTypes, 1, new Object[]{"java/lang/Throwable"});
+            }
+            exitHook();
+            super.visitInsn(Opcodes.ATHROW);
+            super.visitMaxs(maxStack, maxLocals);
+        }
+
+        /**
+         * Add a line hook before an instruction, if a line can be entered there.
+         */
+        private void beforeInstruction() {
+            if (line != -1 && (lineStart || info.jumpTargets.contains(instructions))) {
+                lineHook();
+            }
+            lineStart = false;
+            instructions++;
+        }
+
+        /**
+         * Add a line hook, which passes the test object and the visible local variables to {@link Snapshots#line}.
+         */
+        private void lineHook() {
+            final List<LocalVariable> variables = info.getVisibleVariables(instructions);
+            final String[] names = new String[variables.size()];
+            final String[] types = new String[variables.size()];
+            final boolean[] primitives = new boolean[variables.size()];
+            for (int i = 0; i < variables.size(); i++) {
+                final Type type = Type.getType(variables.get(i).descriptor);
+                names[i] = variables.get(i).name;
+                types[i] = type.getClassName();
+                primitives[i] = type.getSort() != Type.OBJECT && type.getSort() != Type.ARRAY;
+            }
+
+            push(Snapshots.registerSite(method, line, names, types, primitives));
+            if (isStatic) {
+                super.visitInsn(Opcodes.ACONST_NULL);
+            } else {
+                super.visitVarInsn(Opcodes.ALOAD, 0);
+            }
+            push(variables.size());
+            super.visitTypeInsn(Opcodes.ANEWARRAY, "java/lang/Object");
+            for (int i = 0; i < variables.size(); i++) {
+                final Type type = Type.getType(variables.get(i).descriptor);
+                super.visitInsn(Opcodes.DUP);
+                push(i);
+                super.visitVarInsn(type.getOpcode(Opcodes.ILOAD), variables.get(i).index);
+                box(type);
+                super.visitInsn(Opcodes.AASTORE);
+            }
+            super.visitMethodInsn(Opcodes.INVOKESTATIC, snapshots, "line", "(ILjava/lang/Object;[Ljava/lang/Object;)V", false);
+        }
+
+        /**
+         * Add an exit hook.
+         */
+        private void exitHook() {
+            push(method);
+            super.visitMethodInsn(Opcodes.INVOKESTATIC, snapshots, "exit", "(I)V", false);
+        }
+
+        /**
+         * Box the primitive value on top of the stack.
+         *
+         * @param type The type of the value.
+         */
+        private void box(Type type) {
+            final Type boxedType;
+            switch (type.getSort()) {
+                case Type.BOOLEAN:
+                    boxedType = Type.getType(Boolean.class);
+                    break;
+                case Type.CHAR:
+                    boxedType = Type.getType(Character.class);
+                    break;
+                case Type.BYTE:
+                    boxedType = Type.getType(Byte.class);
+                    break;
+                case Type.SHORT:
+                    boxedType = Type.getType(Short.class);
+                    break;
+                case Type.INT:
+                    boxedType = Type.getType(Integer.class);
+                    break;
+                case Type.FLOAT:
+                    boxedType = Type.getType(Float.class);
+                    break;
+                case Type.LONG:
+                    boxedType = Type.getType(Long.class);
+                    break;
+                case Type.DOUBLE:
+                    boxedType = Type.getType(Double.class);
+                    break;
+                default:
+                    // Object or array => nothing to box
+                    return;
+            }
+            super.visitMethodInsn(Opcodes.INVOKESTATIC, boxedType.getInternalName(), "valueOf",
+                    Type.getMethodDescriptor(boxedType, type), false);
+        }
+
+        /**
+         * Push an int constant.
+         *
+         * @param value The constant.
+         */
+        private void push(int value) {
+            if (value >= -1 && value <= 5) {
+                super.visitInsn(Opcodes.ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                super.visitIntInsn(Opcodes.BIPUSH, value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                super.visitIntInsn(Opcodes.SIPUSH, value);
+            } else {
+                super.visitLdcInsn(value);
+            }
+        }
+
+        /**
+         * Get the types of the local variables at the start of the method (the test object and the arguments),
+         * in the format of a stack map frame.
+         *
+         * @return The types.
+         */
+        private Object[] getArgumentTypes() {
+            List<Object> types = new ArrayList<>();
+            if (!isStatic) {
+                types.add(owner);
+            }
+            for (Type type : Type.getArgumentTypes(descriptor)) {
+                switch (type.getSort()) {
+                    case Type.BOOLEAN:
+                    case Type.CHAR:
+                    case Type.BYTE:
+                    case Type.SHORT:
+                    case Type.INT:
+                        types.add(Opcodes.INTEGER);
+                        break;
+                    case Type.FLOAT:
+                        types.add(Opcodes.FLOAT);
+                        break;
+                    case Type.LONG:
+                        types.add(Opcodes.LONG);
+                        break;
+                    case Type.DOUBLE:
+                        types.add(Opcodes.DOUBLE);
+                        break;
+                    default:
+                        types.add(type.getInternalName());
+                }
+            }
+            return types.toArray();
+        }
+    }
+
+}
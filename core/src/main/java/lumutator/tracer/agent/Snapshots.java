@@ -0,0 +1,619 @@
+package lumutator.tracer.agent;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Snapshots: take snapshots of the traced methods inside the VM that runs the tests and stream them to LuMutator;
+ * called by the hooks that the {@link LineInstrumenter} adds to the test class.
+ * <p>
+ * A snapshot contains the same state as the {@code Observer} collects through JDI: the local variables,
+ * the fields of the test class, and for each object the results of its inspector methods and its public fields
+ * (recursively). Just like stepping through a traced method with a debugger, only the first invocation of each
+ * traced method is traced, and a snapshot is only taken when the line changes.
+ * <p>
+ * The snapshots are written to the stream as records, each starting with its kind:
+ * <ul>
+ * <li>{@link #STRING}: the next string of the string table (length in bytes and UTF-8 bytes)</li>
+ * <li>{@link #LINE}: a snapshot; the method, the line, the number of values,
+ * and for each value the id of its expression, its type and the value itself</li>
+ * <li>{@link #END}: the traced method is done</li>
+ * </ul>
+ * This class is loaded in the VM that runs the tests, so it only depends on the JDK.
+ */
+public class Snapshots {
+
+    /**
+     * Record of a new string.
+     */
+    public static final byte STRING = 0;
+
+    /**
+     * Record of a snapshot.
+     */
+    public static final byte LINE = 1;
+
+    /**
+     * Record of the end of a traced method.
+     */
+    public static final byte END = 2;
+
+    /**
+     * Type of a boolean value (one byte).
+     */
+    public static final byte BOOLEAN = 0;
+
+    /**
+     * Type of an int value, also used for byte and short.
+     */
+    public static final byte INT = 1;
+
+    /**
+     * Type of a long value.
+     */
+    public static final byte LONG = 2;
+
+    /**
+     * Type of a float value.
+     */
+    public static final byte FLOAT = 3;
+
+    /**
+     * Type of a double value.
+     */
+    public static final byte DOUBLE = 4;
+
+    /**
+     * Type of a string value (id in the string table).
+     */
+    public static final byte STRING_VALUE = 5;
+
+    /**
+     * Type of null (or void), without a value.
+     */
+    public static final byte NULL = 6;
+
+    /**
+     * Type of a char value.
+     */
+    public static final byte CHAR = 7;
+
+    /**
+     * Type of a value that is cut off by the limits (id in the string table of what is left of it, see {@link Truncated}).
+     */
+    public static final byte TRUNCATED = 8;
+
+    /**
+     * The stream to LuMutator, {@code null} if it's closed.
+     */
+    private static DataOutputStream out;
+
+    /**
+     * Set of all inspector methods in the source classes.
+     */
+    private static Set<String> inspectorMethods = Collections.emptySet();
+
+    /**
+     * The limits on what is traced of a state.
+     */
+    private static TraceLimits limits = TraceLimits.NONE;
+
+    /**
+     * The ids of the strings that have been written so far.
+     */
+    private static final Map<String, Integer> strings = new HashMap<>();
+
+    /**
+     * The sites of the line hooks.
+     */
+    private static final List<Site> sites = new ArrayList<>();
+
+    /**
+     * The number of traced methods.
+     */
+    private static int methods = 0;
+
+    /**
+     * The traced methods that have been invoked at least once.
+     */
+    private static final Set<Integer> invokedMethods = new HashSet<>();
+
+    /**
+     * The invocations of traced methods on the stack of each thread.
+     */
+    private static final ThreadLocal<Invocations> invocations = ThreadLocal.withInitial(Invocations::new);
+
+    /**
+     * Start streaming the snapshots; the stream is flushed at the end of each traced method and closed when the VM exits.
+     *
+     * @param stream           The stream to LuMutator.
+     * @param inspectorMethods Set of all inspector methods in the source classes.
+     * @param limits           The limits on what is traced of a state.
+     */
+    static synchronized void connect(DataOutputStream stream, Set<String> inspectorMethods, TraceLimits limits) {
+        out = stream;
+        Snapshots.inspectorMethods = inspectorMethods;
+        Snapshots.limits = limits;
+        Runtime.getRuntime().addShutdownHook(new Thread(Snapshots::close));
+    }
+
+    /**
+     * Register a traced method.
+     *
+     * @return The id of the method.
+     */
+    static synchronized int registerMethod() {
+        return methods++;
+    }
+
+    /**
+     * Register the site of a line hook.
+     *
+     * @param method     The id of the method of the hook.
+     * @param line       The line of the hook.
+     * @param names      The names of the local variables that are visible at the hook.
+     * @param types      The declared types of these local variables.
+     * @param primitives Is the declared type of each local variable primitive?
+     * @return The id of the site.
+     */
+    static synchronized int registerSite(int method, int line, String[] names, String[] types, boolean[] primitives) {
+        sites.add(new Site(method, line, names, types, primitives));
+        return sites.size() - 1;
+    }
+
+    /**
+     * Hook at the start of a traced method.
+     *
+     * @param method The id of the method.
+     */
+    public static void enter(int method) {
+        final Invocations stack = invocations.get();
+        boolean first;
+        synchronized (Snapshots.class) {
+            first = !stack.busy && invokedMethods.add(method);
+        }
+        stack.push(first ? method : -1);
+    }
+
+    /**
+     * Hook at each exit of a traced method (a return or an exception).
+     *
+     * @param method The id of the method.
+     */
+    public static void exit(int method) {
+        final Invocations stack = invocations.get();
+        if (stack.depth > 0 && stack.pop() != -1) {
+            synchronized (Snapshots.class) {
+                try {
+                    if (out != null) {
+                        out.writeByte(END);
+                        out.flush();
+                    }
+                } catch (IOException e) {
+                    // LuMutator stopped listening (e.g. the trace already differs) => stop tracing
+                    out = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Hook at the start of a line (or where a jump lands in a line): take a snapshot if the line changed.
+     *
+     * @param site   The id of the site.
+     * @param self   The test object, {@code null} in a static method.
+     * @param values The values of the local variables that are visible at the site.
+     */
+    public static void line(int site, Object self, Object[] values) {
+        final Invocations stack = invocations.get();
+        if (stack.depth == 0 || stack.busy) {
+            return;
+        }
+
+        final Site hook;
+        synchronized (Snapshots.class) {
+            hook = sites.get(site);
+        }
+        if (stack.methods[stack.depth - 1] != hook.method || stack.lines[stack.depth - 1] == hook.line) {
+            return;
+        }
+        stack.lines[stack.depth - 1] = hook.line;
+        if (!limits.observes(stack.visit(hook.method, hook.line))) {
+            return;     // A visit in between of a line in a loop
+        }
+
+        stack.busy = true;
+        try {
+            Map<String, Object> state = new LinkedHashMap<>();
+
+            // (1) Local variables, by name (just like the debugger)
+            for (int i : hook.order) {
+                traceObject(state, hook.types[i], hook.names[i], values[i], hook.primitives[i], new HashSet<>(), 0);
+            }
+
+            // (2) Fields of the test class itself
+            if (self != null) {
+                List<Field> fields = allFields(self.getClass(), new ArrayList<>());
+                fields.sort(Comparator.comparing(Field::getName));
+                for (Field field : fields) {
+                    try {
+                        field.setAccessible(true);
+                        traceObject(state, field.getType().getTypeName(), field.getName(), field.get(self),
+                                field.getType().isPrimitive(), new HashSet<>(), 0);
+                    } catch (IllegalAccessException | RuntimeException e) {
+                        // Field can't be read => skip it
+                    }
+                }
+            }
+
+            write(hook.method, hook.line, state);
+
+        } catch (RuntimeException | LinkageError e) {
+            // Never break the test itself, just skip the snapshot
+        } finally {
+            stack.busy = false;
+        }
+    }
+
+    /**
+     * Trace an object, in the same way as the {@code Observer} does: primitive values, strings and null are added
+     * as they are, arrays element by element, and other objects through their inspector methods and public fields
+     * (within the limits, see {@link TraceLimits}).
+     *
+     * @param state          The current snapshot.
+     * @param varType        The type assigned to the variable (does NOT necessarily equal to the type of the variable).
+     * @param variable       Name of the variable, can also be an expression that returns a variable.
+     * @param value          The value of the variable (boxed if it's primitive).
+     * @param primitive      Is the declared type of the variable primitive?
+     * @param visitedClasses Set of all the seen classes, this is just to prevent infinite recursion.
+     * @param depth          How many objects were followed to get to the variable.
+     */
+    private static void traceObject(Map<String, Object> state, String varType, String variable, Object value,
+                                    boolean primitive, Set<String> visitedClasses, int depth) {
+        // The snapshot already has the maximum number of expressions => mark it and skip the rest
+        if (limits.isFull(state.size())) {
+            state.put(TraceLimits.TRUNCATED, new Truncated(TraceLimits.TRUNCATED));
+            return;
+        }
+
+        if (primitive || value == null || value instanceof String) {
+            addTrace(state, variable, value);
+            return;
+        }
+
+        final Class<?> type = value.getClass();
+        if (type.isArray() && !limits.follows(depth)) {
+            state.put(variable, new Truncated(TraceLimits.TRUNCATED));
+            return;
+        }
+        if (type.isArray()) {
+            // Only the first and last elements of a long array (and its length)
+            final boolean primitiveElements = type.getComponentType().isPrimitive();
+            final int length = Array.getLength(value);
+            if (limits.samples(length)) {
+                state.put(variable + ".length", length);
+            }
+            for (int[] range : limits.sample(length)) {
+                for (int i = range[0]; i < range[1]; i++) {
+                    final Object element = Array.get(value, i);
+                    traceObject(state, element != null ? element.getClass().getTypeName() : null,
+                            String.format("%s[%s]", variable, i), element, primitiveElements, visitedClasses, depth + 1);
+                }
+            }
+            return;
+        }
+
+        // Check if we're not back at the same class, this is to prevent infinite recursion.
+        if (!visitedClasses.contains(type.getName()) && !limits.follows(depth)) {
+            state.put(variable, new Truncated(TraceLimits.TRUNCATED));
+            return;
+        }
+        if (!visitedClasses.add(type.getName())) {
+            return;
+        }
+
+        // (1) Inspector methods, by name: the order of reflection is unspecified, and it matters for the limits.
+        //     Only the overloads without arguments, the others can't be invoked.
+        Method[] methods = type.getDeclaredMethods();
+        Arrays.sort(methods, Comparator.comparing(Method::getName));
+        for (Method method : methods) {
+            if (inspectorMethods.contains(type.getName() + "." + method.getName()) && method.getParameterCount() == 0) {
+                final String expression = type.getName().equals(varType)
+                        ? String.format("%s.%s()", variable, method.getName())
+                        : String.format("((%s) %s).%s()", type.getName().replace('$', '.'), variable, method.getName());
+                Object result = null;
+                boolean primitiveResult = false;
+                try {
+                    method.setAccessible(true);
+                    result = method.invoke(Modifier.isStatic(method.getModifiers()) ? null : value);
+                    primitiveResult = method.getReturnType().isPrimitive();
+                } catch (ReflectiveOperationException | RuntimeException e) {
+                    // Failed evaluation => null, just like the debugger
+                }
+                traceObject(state, method.getReturnType().getTypeName(), expression, result, primitiveResult,
+                        visitedClasses, depth + 1);
+            }
+        }
+
+        // (2) Public member fields (a field hides the fields with the same name of its superclasses)
+        Set<String> fieldNames = new HashSet<>();
+        Field[] fields = type.getFields();
+        Arrays.sort(fields, Comparator.comparing(Field::getName));
+        for (Field field : fields) {
+            if (fieldNames.add(field.getName())) {
+                try {
+                    field.setAccessible(true);
+                    traceObject(state, field.getType().getTypeName(), String.format("%s.%s", variable, field.getName()),
+                            field.get(value), field.getType().isPrimitive(), visitedClasses, depth + 1);
+                } catch (IllegalAccessException | RuntimeException e) {
+                    // Field can't be read => skip it
+                }
+            }
+        }
+    }
+
+    /**
+     * Add a value to the snapshot; byte and short become int, and objects other than strings are skipped.
+     *
+     * @param state The current snapshot.
+     * @param key   The key, i.e. variable name, expression, ...
+     * @param value The value of the key (boxed if it's primitive).
+     */
+    private static void addTrace(Map<String, Object> state, String key, Object value) {
+        if (value instanceof Byte || value instanceof Short) {
+            state.put(key, ((Number) value).intValue());
+        } else if (value instanceof String) {
+            final String string = (String) value;
+            state.put(key, limits.truncates(string) ? new Truncated(limits.truncate(string)) : string);
+        } else if (value == null || value instanceof Boolean || value instanceof Integer || value instanceof Long
+                || value instanceof Float || value instanceof Double || value instanceof Character) {
+            state.put(key, value);
+        }
+    }
+
+    /**
+     * Get all the fields of a class: its own fields, then the fields of its interfaces and of its superclass.
+     *
+     * @param type   The class.
+     * @param fields The fields found so far.
+     * @return The fields.
+     */
+    private static List<Field> allFields(Class<?> type, List<Field> fields) {
+        fields.addAll(Arrays.asList(type.getDeclaredFields()));
+        for (Class<?> anInterface : type.getInterfaces()) {
+            allFields(anInterface, fields);
+        }
+        if (type.getSuperclass() != null) {
+            allFields(type.getSuperclass(), fields);
+        }
+        return fields;
+    }
+
+    /**
+     * Write a snapshot, preceded by the strings that are new.
+     *
+     * @param method The id of the method.
+     * @param line   The line.
+     * @param state  The snapshot.
+     */
+    private static synchronized void write(int method, int line, Map<String, Object> state) {
+        if (out == null) {
+            return;
+        }
+        try {
+            for (Map.Entry<String, Object> entry : state.entrySet()) {
+                id(entry.getKey());
+                if (entry.getValue() instanceof String || entry.getValue() instanceof Truncated) {
+                    id(entry.getValue().toString());
+                }
+            }
+
+            out.writeByte(LINE);
+            out.writeInt(method);
+            out.writeInt(line);
+            out.writeInt(state.size());
+            for (Map.Entry<String, Object> entry : state.entrySet()) {
+                out.writeInt(id(entry.getKey()));
+                final Object value = entry.getValue();
+                if (value == null) {
+                    out.writeByte(NULL);
+                } else if (value instanceof Boolean) {
+                    out.writeByte(BOOLEAN);
+                    out.writeBoolean((Boolean) value);
+                } else if (value instanceof Integer) {
+                    out.writeByte(INT);
+                    out.writeInt((Integer) value);
+                } else if (value instanceof Character) {
+                    out.writeByte(CHAR);
+                    out.writeChar((Character) value);
+                } else if (value instanceof Long) {
+                    out.writeByte(LONG);
+                    out.writeLong((Long) value);
+                } else if (value instanceof Float) {
+                    out.writeByte(FLOAT);
+                    out.writeFloat((Float) value);
+                } else if (value instanceof Double) {
+                    out.writeByte(DOUBLE);
+                    out.writeDouble((Double) value);
+                } else if (value instanceof Truncated) {
+                    out.writeByte(TRUNCATED);
+                    out.writeInt(id(value.toString()));
+                } else {
+                    out.writeByte(STRING_VALUE);
+                    out.writeInt(id((String) value));
+                }
+            }
+
+        } catch (IOException e) {
+            // LuMutator stopped listening (e.g. the trace already differs) => stop tracing
+            out = null;
+        }
+    }
+
+    /**
+     * Get the id of a string, the string is written first if it's new.
+     *
+     * @param string The string.
+     * @return The id.
+     * @throws IOException If the string could not be written.
+     */
+    private static int id(String string) throws IOException {
+        Integer id = strings.get(string);
+        if (id == null) {
+            id = strings.size();
+            strings.put(string, id);
+            final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeByte(STRING);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        return id;
+    }
+
+    /**
+     * Flush and close the stream, when the VM exits.
+     */
+    private static synchronized void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // LuMutator stopped listening
+            }
+            out = null;
+        }
+    }
+
+    /**
+     * The site of a line hook.
+     */
+    private static class Site {
+
+        /**
+         * The id of the method.
+         */
+        final int method;
+
+        /**
+         * The line.
+         */
+        final int line;
+
+        /**
+         * The names of the visible local variables.
+         */
+        final String[] names;
+
+        /**
+         * The declared types of the visible local variables.
+         */
+        final String[] types;
+
+        /**
+         * Is the declared type of each visible local variable primitive?
+         */
+        final boolean[] primitives;
+
+        /**
+         * The indices of the visible local variables, sorted by their names.
+         */
+        final int[] order;
+
+        /**
+         * Constructor.
+         *
+         * @param method     The id of the method.
+         * @param line       The line.
+         * @param names      The names of the visible local variables.
+         * @param types      The declared types of the visible local variables.
+         * @param primitives Is the declared type of each visible local variable primitive?
+         */
+        Site(int method, int line, String[] names, String[] types, boolean[] primitives) {
+            this.method = method;
+            this.line = line;
+            this.names = names;
+            this.types = types;
+            this.primitives = primitives;
+            this.order = IntStream.range(0, names.length)
+                    .boxed()
+                    .sorted(Comparator.comparing(i -> names[i]))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+        }
+    }
+
+    /**
+     * The invocations of traced methods on the stack of a thread.
+     */
+    private static class Invocations {
+
+        /**
+         * The method of each invocation, -1 if the invocation isn't traced.
+         */
+        int[] methods = new int[8];
+
+        /**
+         * The last observed line of each invocation, -1 if none yet.
+         */
+        int[] lines = new int[8];
+
+        /**
+         * The number of invocations.
+         */
+        int depth = 0;
+
+        /**
+         * Is a snapshot being taken? The inspector methods might invoke a traced method, which isn't traced then.
+         */
+        boolean busy = false;
+
+        /**
+         * How many times each line of the traced methods has been visited (method and line => visits);
+         * each traced method is only traced once, so the visits don't need to be reset.
+         */
+        final Map<Long, Integer> visits = new HashMap<>();
+
+        /**
+         * Count a visit of a line.
+         *
+         * @param method The method.
+         * @param line   The line.
+         * @return The number of visits of the line so far, including this one.
+         */
+        int visit(int method, int line) {
+            return visits.merge(((long) method << 32) | line, 1, Integer::sum);
+        }
+
+        /**
+         * Add an invocation.
+         *
+         * @param method The method, -1 if the invocation isn't traced.
+         */
+        void push(int method) {
+            if (depth == methods.length) {
+                methods = Arrays.copyOf(methods, depth * 2);
+                lines = Arrays.copyOf(lines, depth * 2);
+            }
+            methods[depth] = method;
+            lines[depth] = -1;
+            depth++;
+        }
+
+        /**
+         * Remove the last invocation.
+         *
+         * @return The method of the invocation, -1 if it wasn't traced.
+         */
+        int pop() {
+            return methods[--depth];
+        }
+    }
+
+}
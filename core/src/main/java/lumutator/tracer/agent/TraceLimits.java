@@ -0,0 +1,182 @@
+package lumutator.tracer.agent;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Limits on what is traced of a state, so a test that holds a huge object graph, array or string doesn't produce
+ * an enormous trace: how deep the objects are followed, how many elements of an array are traced (the first and
+ * the last ones, plus the length), how long a string may be (the rest is replaced by its length and hash) and
+ * how many expressions a line may have. A limit of 0 means no limit.
+ * <p>
+ * Also limits how often a line that is visited repeatedly (e.g. in a loop) is observed: only its first visit and
+ * every k-th visit. Only the last observed visit of a line ends up in the trace, but which visit is the last one
+ * isn't known until the method is done, so the visits in between are skipped instead. The original code and
+ * the mutants must count the visits in the same way, so this isn't combined with prefix elision.
+ * <p>
+ * Whatever is cut off is recorded explicitly as a {@link Truncated} value, so a truncated state is never mistaken for
+ * a complete one; a mutant only changes what is traced if it changes the traced part of the state.
+ * Such a change still kills the mutant, but a truncated value isn't a real value, so no assertions are generated
+ * from it.
+ * The {@code Observer} and the {@link Snapshots} truncate the states in the same way.
+ * This class is loaded in the VM that runs the tests, so it only depends on the JDK.
+ */
+public class TraceLimits {
+
+    /**
+     * No limits at all.
+     */
+    public static final TraceLimits NONE = new TraceLimits(0, 0, 0, 0, 0);
+
+    /**
+     * What is left of an object that is too deep to follow (see {@link Truncated}), and the expression that marks
+     * a line where the maximum number of expressions is reached (with the same truncated value).
+     */
+    public static final String TRUNCATED = "(truncated)";
+
+    /**
+     * How deep the objects are followed (the local variables are at depth 0), 0 for no limit.
+     */
+    private final int maxDepth;
+
+    /**
+     * How many elements of an array are traced, 0 for no limit.
+     */
+    private final int maxArrayElements;
+
+    /**
+     * How many characters of a string are traced, 0 for no limit.
+     */
+    private final int maxStringLength;
+
+    /**
+     * How many expressions a line may have, 0 for no limit.
+     */
+    private final int maxExpressions;
+
+    /**
+     * Every how many visits a line is observed after its first visit (k), 0 to observe every visit.
+     */
+    private final int visitInterval;
+
+    /**
+     * Constructor.
+     *
+     * @param maxDepth         How deep the objects are followed, 0 for no limit.
+     * @param maxArrayElements How many elements of an array are traced, 0 for no limit.
+     * @param maxStringLength  How many characters of a string are traced, 0 for no limit.
+     * @param maxExpressions   How many expressions a line may have, 0 for no limit.
+     * @param visitInterval    Every how many visits a line is observed after its first visit, 0 to observe every visit.
+     */
+    public TraceLimits(int maxDepth, int maxArrayElements, int maxStringLength, int maxExpressions, int visitInterval) {
+        this.maxDepth = maxDepth;
+        this.maxArrayElements = maxArrayElements;
+        this.maxStringLength = maxStringLength;
+        this.maxExpressions = maxExpressions;
+        this.visitInterval = visitInterval;
+    }
+
+    /**
+     * Check if a visit of a line is observed: the first visit and every k-th visit.
+     *
+     * @param visit The number of the visit of the line in the traced method, starting at 1.
+     * @return True if the state is observed at this visit.
+     */
+    public boolean observes(int visit) {
+        return visitInterval <= 0 || visit == 1 || visit % visitInterval == 0;
+    }
+
+    /**
+     * Check if an object (or array) is followed, i.e. if its inspector methods and fields (or elements) are traced.
+     *
+     * @param depth The depth of the object, 0 for a local variable or a field of the test class.
+     * @return True if the object is followed, false if it's traced as truncated ({@link #TRUNCATED}).
+     */
+    public boolean follows(int depth) {
+        return maxDepth <= 0 || depth < maxDepth;
+    }
+
+    /**
+     * Check if only some elements of an array are traced; its length is traced as well then.
+     *
+     * @param length The length of the array.
+     * @return True if the array is sampled.
+     */
+    public boolean samples(int length) {
+        return maxArrayElements > 0 && length > maxArrayElements;
+    }
+
+    /**
+     * Get the ranges of the elements of an array that are traced: all of them, or the first and the last ones.
+     *
+     * @param length The length of the array.
+     * @return The ranges, each one as its first index and the index after its last one.
+     */
+    public int[][] sample(int length) {
+        if (!samples(length)) {
+            return new int[][]{{0, length}};
+        }
+        final int head = (maxArrayElements + 1) / 2;
+        return new int[][]{{0, head}, {length - (maxArrayElements - head), length}};
+    }
+
+    /**
+     * Check if a string is too long, so it's traced as truncated (see {@link #truncate(String)}).
+     *
+     * @param value The string.
+     * @return True if the string is truncated.
+     */
+    public boolean truncates(String value) {
+        return maxStringLength > 0 && value.length() > maxStringLength;
+    }
+
+    /**
+     * Truncate a string that is too long: the rest is replaced by the length and the hash of the whole string.
+     *
+     * @param value The string.
+     * @return What is left of the string, the string itself if it isn't too long.
+     */
+    public String truncate(String value) {
+        if (!truncates(value)) {
+            return value;
+        }
+        return String.format("%s...(%d chars, #%08x)", value.substring(0, maxStringLength), value.length(), value.hashCode());
+    }
+
+    /**
+     * Check if a line already has the maximum number of expressions, so nothing else is traced.
+     *
+     * @param expressions The number of expressions of the line so far.
+     * @return True if the line is full.
+     */
+    public boolean isFull(int expressions) {
+        return maxExpressions > 0 && expressions >= maxExpressions;
+    }
+
+    /**
+     * Write the limits, e.g. to pass them to the tracing agent.
+     *
+     * @param out The stream.
+     * @throws IOException If the limits could not be written.
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(maxDepth);
+        out.writeInt(maxArrayElements);
+        out.writeInt(maxStringLength);
+        out.writeInt(maxExpressions);
+        out.writeInt(visitInterval);
+    }
+
+    /**
+     * Read the limits (see {@link #write(DataOutputStream)}).
+     *
+     * @param in The stream.
+     * @return The limits.
+     * @throws IOException If the limits could not be read.
+     */
+    public static TraceLimits read(DataInputStream in) throws IOException {
+        return new TraceLimits(in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt());
+    }
+
+}
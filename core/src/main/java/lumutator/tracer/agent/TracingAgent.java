@@ -0,0 +1,59 @@
+package lumutator.tracer.agent;
+
+import java.io.*;
+import java.lang.instrument.Instrumentation;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Tracing agent ({@code -javaagent}) that traces a test class inside the VM that runs the tests,
+ * instead of stepping through it with a debugger; the counterpart of the {@code AgentDebugger}.
+ * <p>
+ * The agent connects to LuMutator over a local socket, reads what to trace, and instruments the test class
+ * (see {@link LineInstrumenter}) so it takes its own snapshots (see {@link Snapshots}), which are sent back over
+ * the same socket. What to trace is read as: the name of the test class, the number of methods to trace
+ * and their names, the number of inspector methods and their names (all strings in modified UTF-8),
+ * and the limits on what is traced of a state (see {@link TraceLimits#write(DataOutputStream)}).
+ * <p>
+ * The agent is added to the classpath of the VM, so it only depends on the JDK and ASM.
+ */
+public class TracingAgent {
+
+    /**
+     * Connect to LuMutator and start instrumenting the test class.
+     *
+     * @param args            The port of the local socket to connect to.
+     * @param instrumentation Instrumentation of the VM.
+     * @throws IOException If the connection failed.
+     */
+    public static void premain(String args, Instrumentation instrumentation) throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(args));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        final String classToTrace = in.readUTF();
+        final Set<String> methods = readStrings(in);
+        final Set<String> inspectorMethods = readStrings(in);
+        final TraceLimits limits = TraceLimits.read(in);
+
+        Snapshots.connect(new DataOutputStream(new BufferedOutputStream(socket.getOutputStream())), inspectorMethods, limits);
+        instrumentation.addTransformer(new LineInstrumenter(classToTrace, methods));
+    }
+
+    /**
+     * Read a set of strings.
+     *
+     * @param in The stream.
+     * @return The strings.
+     * @throws IOException If the strings could not be read.
+     */
+    private static Set<String> readStrings(DataInputStream in) throws IOException {
+        final int size = in.readInt();
+        Set<String> strings = new HashSet<>();
+        for (int i = 0; i < size; i++) {
+            strings.add(in.readUTF());
+        }
+        return strings;
+    }
+
+}
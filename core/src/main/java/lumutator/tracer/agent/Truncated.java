@@ -0,0 +1,46 @@
+package lumutator.tracer.agent;
+
+/**
+ * A value that is cut off by the {@link TraceLimits}: an object that is too deep to follow, a string that is too long,
+ * or the marker of a line with too many expressions. It only holds what is left of the value (e.g. the start of
+ * the string with its length and hash), which is still compared, but it's never taken for a real value,
+ * e.g. to generate an assertion from.
+ * This class is loaded in the VM that runs the tests, so it only depends on the JDK.
+ */
+public final class Truncated {
+
+    /**
+     * What is left of the value.
+     */
+    private final String text;
+
+    /**
+     * Constructor.
+     *
+     * @param text What is left of the value.
+     */
+    public Truncated(String text) {
+        this.text = text;
+    }
+
+    /**
+     * Get what is left of the value.
+     *
+     * @return What is left of the value.
+     */
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Truncated && text.equals(((Truncated) other).text);
+    }
+
+    @Override
+    public int hashCode() {
+        return text.hashCode();
+    }
+
+}
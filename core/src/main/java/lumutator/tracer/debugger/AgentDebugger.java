@@ -0,0 +1,371 @@
+package lumutator.tracer.debugger;
+
+import lumutator.Configuration;
+import lumutator.tracer.agent.Snapshots;
+import lumutator.tracer.agent.TracingAgent;
+import org.apache.commons.io.FileUtils;
+import org.objectweb.asm.ClassReader;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+import java.util.jar.*;
+
+/**
+ * Debugger that traces a single test class with the {@link TracingAgent} instead of JDI: the test class is
+ * instrumented inside the VM, which sends its own snapshots back, so there's no round trip for every line and value.
+ * The trace is the same as with the {@link Debugger}.
+ * <p>
+ * The coverage can't be recorded with the agent, the {@link lumutator.tracer.Tracer} uses JDI for that.
+ * <p>
+ * The agent is loaded by the same class loader as the classes under test, so it brings its own copy of ASM,
+ * relocated into its own package: a different version of ASM on the classpath (e.g. of the project) doesn't conflict.
+ */
+public class AgentDebugger extends Debugger {
+
+    /**
+     * The JAR of the tracing agent (with ASM); created the first time it's needed.
+     */
+    private static Path agentJar;
+
+    /**
+     * The package of ASM, as an internal name.
+     */
+    private static final String asmPackage = ClassReader.class.getPackageName().replace('.', '/') + "/";
+
+    /**
+     * The package where ASM is relocated to in the JAR of the tracing agent, as an internal name.
+     */
+    private static final String relocatedAsmPackage = TracingAgent.class.getPackageName().replace('.', '/') + "/asm/";
+
+    /**
+     * The classpath of the VM.
+     */
+    private final String classPath;
+
+    /**
+     * The process of the VM, {@code null} if it isn't launched yet.
+     */
+    private Process process;
+
+    /**
+     * Has the tracing been stopped, e.g. because the trace already differs from the original trace?
+     */
+    private volatile boolean stopped = false;
+
+    /**
+     * Set up some options.
+     *
+     * @param classToDebug The class to debug.
+     * @param observer     Observer that collects the snapshots.
+     * @param classPath    The classpath of the VM.
+     */
+    public AgentDebugger(String classToDebug, Observer observer, String classPath) {
+        super(classToDebug, observer, classPath);
+        this.classPath = classPath;
+    }
+
+    /**
+     * The coverage can't be recorded with the tracing agent, use a {@link Debugger} instead.
+     *
+     * @param coverage Must be {@code null}.
+     * @throws UnsupportedOperationException If the coverage isn't {@code null}.
+     */
+    @Override
+    public void setCoverage(Coverage coverage) {
+        if (coverage != null) {
+            throw new UnsupportedOperationException("The tracing agent can't record the coverage");
+        }
+    }
+
+    /**
+     * Start the VM and collect the snapshots until the VM exits.
+     */
+    @Override
+    public void run() {
+        ScheduledFuture<?> kill = null;
+        try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            serverSocket.setSoTimeout(60000);
+            process = new ProcessBuilder(getCommand(serverSocket.getLocalPort())).start();
+            output = new OutputDrainer(process, classToDebug);
+            kill = startWatchdog(process);
+
+            try (Socket socket = serverSocket.accept()) {
+                DataOutputStream settings = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                settings.writeUTF(classToDebug);
+                writeStrings(settings, breakpoints);
+                writeStrings(settings, observer.getInspectorMethods());
+                observer.getLimits().write(settings);
+                settings.flush();
+
+                readSnapshots(new DataInputStream(new BufferedInputStream(socket.getInputStream())));
+            }
+            process.waitFor();
+
+        } catch (IOException e) {
+            // The VM is killed when it takes too long or when the tracing is stopped
+            if (!timedOut && !stopped) {
+                throw new RuntimeException("Failed tracing " + classToDebug + " with the tracing agent: " + e.getMessage()
+                        + "\n" + getOutput());
+            }
+
+        } catch (InterruptedException e) {
+            // Interrupted => stop tracing
+            stop();
+
+        } finally {
+            if (kill != null) {
+                kill.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Kill the VM, if it's still running.
+     */
+    @Override
+    public void close() {
+        if (process != null) {
+            process.destroyForcibly();
+        }
+    }
+
+    /**
+     * Stop tracing, e.g. because the trace already differs from the original trace.
+     */
+    @Override
+    void stop() {
+        stopped = true;
+        close();
+    }
+
+    /**
+     * Read the snapshots of the agent (see {@link Snapshots}) until the VM exits or the tracing is stopped.
+     *
+     * @param in The stream of the agent.
+     * @throws IOException If the stream could not be read.
+     */
+    private void readSnapshots(DataInputStream in) throws IOException {
+        List<String> strings = new ArrayList<>();
+        int record;
+        while ((record = in.read()) != -1) {
+            if (record == Snapshots.STRING) {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                strings.add(new String(bytes, StandardCharsets.UTF_8));
+
+            } else if (record == Snapshots.LINE) {
+                in.readInt();   // The method, the end of each method is sent separately
+                final int line = in.readInt();
+                final int size = in.readInt();
+                Trace.Line.Builder trace = observer.createLine();
+                for (int i = 0; i < size; i++) {
+                    final String expression = strings.get(in.readInt());
+                    switch (in.readByte()) {
+                        case Snapshots.BOOLEAN:
+                            trace.put(expression, in.readBoolean());
+                            break;
+                        case Snapshots.INT:
+                            trace.put(expression, in.readInt());
+                            break;
+                        case Snapshots.CHAR:
+                            trace.put(expression, in.readChar());
+                            break;
+                        case Snapshots.LONG:
+                            trace.put(expression, in.readLong());
+                            break;
+                        case Snapshots.FLOAT:
+                            trace.put(expression, in.readFloat());
+                            break;
+                        case Snapshots.DOUBLE:
+                            trace.put(expression, in.readDouble());
+                            break;
+                        case Snapshots.STRING_VALUE:
+                            trace.put(expression, strings.get(in.readInt()));
+                            break;
+                        case Snapshots.TRUNCATED:
+                            trace.putTruncated(expression, strings.get(in.readInt()));
+                            break;
+                        default:
+                            trace.putNull(expression);
+                    }
+                }
+                observer.add(line, trace);
+
+            } else {
+                // The trace already differs from the original trace => no need to run the remaining tests
+                if (observer.endOfMethod()) {
+                    stop();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the command that launches the VM with the tracing agent.
+     *
+     * @param port The port where the agent connects to.
+     * @return The command.
+     */
+    private List<String> getCommand(int port) {
+        Configuration config = Configuration.getInstance();
+        final String javaHome = config.hasParameter("javaHome") ? config.get("javaHome") : System.getProperty("java.home");
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(javaHome, "bin", "java").toString());
+        command.add("-javaagent:" + getAgentJar() + "=" + port);
+        command.add("-classpath");
+        command.add(classPath);
+        command.addAll(Arrays.asList(config.get("testRunner").trim().split("\\s+")));
+        command.add(classToDebug);
+        return command;
+    }
+
+    /**
+     * Write a collection of strings: the number of strings, then each string.
+     *
+     * @param out     The stream.
+     * @param strings The strings.
+     * @throws IOException If the strings could not be written.
+     */
+    private static void writeStrings(DataOutputStream out, Collection<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            out.writeUTF(string);
+        }
+    }
+
+    /**
+     * Get the JAR of the tracing agent, with the classes of the agent and of ASM (relocated);
+     * created the first time it's needed.
+     *
+     * @return The JAR.
+     */
+    static synchronized Path getAgentJar() {
+        if (agentJar == null) {
+            Manifest manifest = new Manifest();
+            manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+            manifest.getMainAttributes().put(new Attributes.Name("Premain-Class"), TracingAgent.class.getName());
+            try {
+                Path jar = Files.createTempFile("lumutator-agent", ".jar");
+                try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar), manifest)) {
+                    copyPackage(out, TracingAgent.class);
+                    copyPackage(out, ClassReader.class);
+                }
+                FileUtils.forceDeleteOnExit(jar.toFile());
+                agentJar = jar;
+            } catch (IOException | URISyntaxException e) {
+                throw new RuntimeException("Failed creating the tracing agent: " + e.getMessage());
+            }
+        }
+        return agentJar;
+    }
+
+    /**
+     * Copy the class files of a package (and its subpackages) to a JAR, from the directory or JAR the package is loaded from.
+     * The classes are relocated on the way (see {@link #relocate(byte[])}).
+     *
+     * @param out  The JAR.
+     * @param type A class of the package.
+     * @throws IOException        If the class files could not be copied.
+     * @throws URISyntaxException If the location of the package is invalid.
+     */
+    private static void copyPackage(JarOutputStream out, Class<?> type) throws IOException, URISyntaxException {
+        final String prefix = type.getPackageName().replace('.', '/') + "/";
+        final File source = new File(type.getProtectionDomain().getCodeSource().getLocation().toURI());
+        if (source.isDirectory()) {
+            for (File file : FileUtils.listFiles(new File(source, prefix), new String[]{"class"}, true)) {
+                out.putNextEntry(new JarEntry(relocate(source.toURI().relativize(file.toURI()).getPath())));
+                out.write(relocate(Files.readAllBytes(file.toPath())));
+                out.closeEntry();
+            }
+        } else {
+            try (JarFile jarFile = new JarFile(source)) {
+                for (JarEntry entry : Collections.list(jarFile.entries())) {
+                    if (entry.getName().startsWith(prefix) && entry.getName().endsWith(".class")) {
+                        out.putNextEntry(new JarEntry(relocate(entry.getName())));
+                        try (InputStream in = jarFile.getInputStream(entry)) {
+                            out.write(relocate(in.readAllBytes()));
+                        }
+                        out.closeEntry();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Relocate a name (e.g. of a class file) from the package of ASM to the package of the agent.
+     *
+     * @param name The name.
+     * @return The relocated name.
+     */
+    private static String relocate(String name) {
+        return name.replace(asmPackage, relocatedAsmPackage);
+    }
+
+    /**
+     * Relocate the references to ASM in a class file: every class name and descriptor is a UTF8 constant,
+     * so only the constant pool needs to be rewritten, the rest of the class file refers to it by index.
+     *
+     * @param classFile The class file.
+     * @return The relocated class file.
+     * @throws IOException If the class file is invalid.
+     */
+    private static byte[] relocate(byte[] classFile) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(classFile));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(classFile.length + 1024);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(in.readInt());         // magic
+        out.writeInt(in.readInt());         // minor and major version
+        final int constants = in.readUnsignedShort();
+        out.writeShort(constants);
+        for (int i = 1; i < constants; i++) {
+            final int tag = in.readUnsignedByte();
+            out.writeByte(tag);
+            switch (tag) {
+                case 1:     // UTF8
+                    out.writeUTF(relocate(in.readUTF()));
+                    break;
+                case 7:     // Class
+                case 8:     // String
+                case 16:    // MethodType
+                case 19:    // Module
+                case 20:    // Package
+                    out.write(in.readNBytes(2));
+                    break;
+                case 15:    // MethodHandle
+                    out.write(in.readNBytes(3));
+                    break;
+                case 3:     // Integer
+                case 4:     // Float
+                case 9:     // Fieldref
+                case 10:    // Methodref
+                case 11:    // InterfaceMethodref
+                case 12:    // NameAndType
+                case 17:    // Dynamic
+                case 18:    // InvokeDynamic
+                    out.write(in.readNBytes(4));
+                    break;
+                case 5:     // Long
+                case 6:     // Double
+                    out.write(in.readNBytes(8));
+                    i++;    // Takes two entries
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+        in.transferTo(out);
+        return bytes.toByteArray();
+    }
+
+}
@@ -0,0 +1,150 @@
+package lumutator.tracer.debugger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Coverage: which tests reach which methods of the source classes; recorded by the {@link Debugger}
+ * while tracing the original version of the code, so the mutants only need to be traced on the tests that reach them.
+ */
+public class Coverage {
+
+    /**
+     * All the source classes (including their package).
+     */
+    private final Set<String> sourceClasses = new HashSet<>();
+
+    /**
+     * For each method of a source class ("class.method"): the test classes that reach the method,
+     * with the test methods that reach it ({@code null} if the whole test class is needed).
+     */
+    private final Map<String, Map<String, Set<String>>> coverage = new HashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param classFiles Directory that contains the class files of the source classes.
+     */
+    public Coverage(String classFiles) {
+        final File directory = new File(classFiles);
+        for (File file : FileUtils.listFiles(directory, new String[]{"class"}, true)) {
+            final String relativePath = directory.toURI().relativize(file.toURI()).getPath();
+            sourceClasses.add(FilenameUtils.removeExtension(relativePath).replace('/', '.'));
+        }
+    }
+
+    /**
+     * Check if a class is one of the source classes.
+     *
+     * @param className Name of the class, including its package.
+     * @return True if it's a source class.
+     */
+    public boolean isSourceClass(String className) {
+        return sourceClasses.contains(className);
+    }
+
+    /**
+     * Get all the packages of the source classes.
+     *
+     * @return The packages, "" for the default package.
+     */
+    public Set<String> getPackages() {
+        Set<String> packages = new HashSet<>();
+        for (String sourceClass : sourceClasses) {
+            packages.add(sourceClass.contains(".") ? sourceClass.substring(0, sourceClass.lastIndexOf('.')) : "");
+        }
+        return packages;
+    }
+
+    /**
+     * Record that a test reaches a method of a source class.
+     *
+     * @param className  Name of the source class, including its package.
+     * @param method     Name of the method.
+     * @param testClass  The test class.
+     * @param testMethod The test method, {@code null} if it's unknown (the whole test class is needed).
+     */
+    public synchronized void record(String className, String method, String testClass, String testMethod) {
+        Map<String, Set<String>> tests = coverage.computeIfAbsent(className + "." + method, k -> new HashMap<>());
+        if (testMethod == null) {
+            tests.put(testClass, null);
+        } else if (!tests.containsKey(testClass) || tests.get(testClass) != null) {
+            tests.computeIfAbsent(testClass, k -> new HashSet<>()).add(testMethod);
+        }
+    }
+
+    /**
+     * Get the tests that reach a method of a source class.
+     * A static initializer only runs once per VM, so it's attributed to whole test classes that reach any method of the class.
+     *
+     * @param className Name of the source class, including its package.
+     * @param method    Name of the method.
+     * @return The test classes that reach the method, with the test methods that reach it
+     * ({@code null} if the whole test class is needed).
+     */
+    public synchronized Map<String, Set<String>> getTests(String className, String method) {
+        Map<String, Set<String>> tests = new HashMap<>();
+        if (method.equals("<clinit>")) {
+            for (Map.Entry<String, Map<String, Set<String>>> entry : coverage.entrySet()) {
+                if (entry.getKey().startsWith(className + ".")) {
+                    entry.getValue().keySet().forEach(testClass -> tests.put(testClass, null));
+                }
+            }
+        } else if (coverage.containsKey(className + "." + method)) {
+            coverage.get(className + "." + method).forEach(
+                    (testClass, testMethods) -> tests.put(testClass, testMethods == null ? null : new HashSet<>(testMethods))
+            );
+        }
+        return tests;
+    }
+
+    /**
+     * Export the recorded coverage to JSON, e.g. to store it.
+     *
+     * @return The coverage in form of a JSON object ("class.method" => test class => test methods or null).
+     */
+    public synchronized JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        coverage.forEach((method, tests) -> {
+            JSONObject testClasses = new JSONObject();
+            tests.forEach((testClass, testMethods) ->
+                    testClasses.put(testClass, testMethods == null ? JSONObject.NULL : new JSONArray(testMethods))
+            );
+            json.put(method, testClasses);
+        });
+        return json;
+    }
+
+    /**
+     * Restore the coverage from JSON (see {@link #toJSON()}).
+     *
+     * @param classFiles Directory that contains the class files of the source classes.
+     * @param json       The coverage in form of a JSON object.
+     * @return The coverage.
+     */
+    public static Coverage fromJSON(String classFiles, JSONObject json) {
+        Coverage coverage = new Coverage(classFiles);
+        for (String method : json.keySet()) {
+            Map<String, Set<String>> tests = new HashMap<>();
+            JSONObject testClasses = json.getJSONObject(method);
+            for (String testClass : testClasses.keySet()) {
+                JSONArray testMethods = testClasses.optJSONArray(testClass);
+                if (testMethods == null) {
+                    tests.put(testClass, null);
+                } else {
+                    Set<String> methods = new HashSet<>();
+                    testMethods.forEach(testMethod -> methods.add((String) testMethod));
+                    tests.put(testClass, methods);
+                }
+            }
+            coverage.coverage.put(method, tests);
+        }
+        return coverage;
+    }
+
+}
@@ -9,51 +9,150 @@ import com.sun.jdi.event.*;
 import com.sun.jdi.request.BreakpointRequest;
 import com.sun.jdi.request.ClassPrepareRequest;
 import com.sun.jdi.request.DuplicateRequestException;
+import com.sun.jdi.request.EventRequest;
+import com.sun.jdi.request.EventRequestManager;
+import com.sun.jdi.request.MethodEntryRequest;
 import com.sun.jdi.request.StepRequest;
-import com.sun.tools.example.debug.expr.ExpressionParser;
 import lumutator.Configuration;
+import lumutator.Mutant;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 
 /**
  * Interface for JDI; created to debug a single test class.
  * Reference: http://itsallbinary.com/java-debug-interface-api-jdi-hello-world-example-programmatic-stepping-through-the-code-lines/
+ * <p>
+ * By default, each line of a traced method is observed by stepping through it. If observation lines are set
+ * (see {@link #setObservationLines(Set)}), only those lines and the end of each traced method are observed,
+ * with breakpoints instead of stepping, so the VM runs at full speed in between.
+ * If a mutant is set (see {@link #setMutant(Mutant)}), the stepping through a traced method only starts once
+ * the mutated line is reached (prefix elision).
  */
 public class Debugger {
 
+    /**
+     * Watchdog that kills the VMs that take too long, shared by all the debuggers.
+     */
+    private static final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "LuMutator watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     /**
      * Observer to create a tracefile.
      */
-    private Observer observer;
+    Observer observer;
 
     /**
      * Connector that connects LuMutator to the program to debug.
      */
-    private LaunchingConnector launchingConnector;
+    LaunchingConnector launchingConnector;
 
     /**
      * Environment of the VM.
      */
-    private Map<String, Connector.Argument> env;
+    Map<String, Connector.Argument> env;
 
     /**
      * The class to debug.
      */
-    private String classToDebug;
+    String classToDebug;
 
     /**
      * List of all the methods where there's a breakpoint.
      */
-    private List<String> breakpoints = new ArrayList<>();
+    List<String> breakpoints = new ArrayList<>();
 
     /**
      * The virtual machine.
      */
-    private VirtualMachine vm;
+    VirtualMachine vm;
+
+    /**
+     * Coverage to record which tests reach which source methods, {@code null} if the coverage isn't recorded.
+     */
+    Coverage coverage;
+
+    /**
+     * How long the VM may run, in milliseconds; 0 for no limit.
+     */
+    long timeout = 0;
+
+    /**
+     * Has the VM been killed because it took too long?
+     */
+    volatile boolean timedOut = false;
+
+    /**
+     * Reads the output of the VM in the background, {@code null} if the VM isn't launched yet.
+     */
+    OutputDrainer output;
+
+    /**
+     * The lines to observe (e.g. the lines with an assertion), {@code null} to observe every line.
+     */
+    Set<Integer> observationLines;
+
+    /**
+     * The mutant that is traced, to only observe a traced method from the mutated line on; {@code null} to observe
+     * each traced method from its start.
+     */
+    Mutant mutant;
+
+    /**
+     * The current method we're in, so we can determine the amount of steps.
+     */
+    private String currentMethod = "";
+
+    /**
+     * The number of frames on the stack in the current method, to ignore (recursive) calls from within the method
+     * when only the observation lines are observed.
+     */
+    private int currentDepth;
+
+    /**
+     * The breakpoints at the observation lines of each traced method, disabled once the method is done.
+     */
+    private final Map<String, List<BreakpointRequest>> observationBreakpoints = new HashMap<>();
+
+    /**
+     * The breakpoints at the mutated line, enabled at the start of each traced method until the mutated line is reached.
+     */
+    private final List<BreakpointRequest> mutationBreakpoints = new ArrayList<>();
+
+    /**
+     * Property of the breakpoints at the start of a method.
+     */
+    private static final String methodStart = "methodStart";
+
+    /**
+     * Property of the breakpoints at the end of a method.
+     */
+    private static final String methodEnd = "methodEnd";
+
+    /**
+     * Property of the requests for the mutated line (the breakpoints and the request to prepare the mutated class).
+     */
+    private static final String mutatedLine = "mutatedLine";
+
+    /**
+     * Property of the step requests that step out of the methods invoked by the current method.
+     */
+    private static final String stepOut = "stepOut";
 
     /**
      * Set up connector and some options.
@@ -62,6 +161,17 @@ public class Debugger {
      * @param observer     Observer to be used at each breakpoint to observe the current state.
      */
     public Debugger(String classToDebug, Observer observer) {
+        this(classToDebug, observer, Configuration.getInstance().get("classPath"));
+    }
+
+    /**
+     * Set up connector and some options, but run the class with a custom classpath.
+     *
+     * @param classToDebug The class to debug.
+     * @param observer     Observer to be used at each breakpoint to observe the current state.
+     * @param classPath    The classpath of the VM.
+     */
+    public Debugger(String classToDebug, Observer observer, String classPath) {
         this.classToDebug = classToDebug;
         this.observer = observer;
 
@@ -75,39 +185,105 @@ public class Debugger {
         if (config.hasParameter("javaHome")) {
             env.get("home").setValue(config.get("javaHome"));
         }
-        env.get("options").setValue(String.format("-classpath %s ", config.get("classPath")));
+        env.get("options").setValue(String.format("-classpath %s ", classPath));
     }
 
     /**
-     * Evaluate an expression.
+     * Add breakpoint at start of a method.
      *
-     * @param expression The expression to be evaluated.
-     * @param vm         The current running virtual machine.
-     * @param stackFrame The current stack frame.
-     * @return The result of the expression, null if it failed.
+     * @param method The method where the breakpoint is added.
      */
-    public static Value evaluate(String expression, VirtualMachine vm, final StackFrame stackFrame) {
-        ExpressionParser.GetFrame frameGetter;
-        frameGetter = new ExpressionParser.GetFrame() {
-            @Override
-            public StackFrame get() {
-                return stackFrame;
-            }
-        };
-        try {
-            return ExpressionParser.evaluate(expression, vm, frameGetter);
-        } catch (Exception e) {
+    public void addBreakpoint(String method) {
+        breakpoints.add(method);
+    }
+
+    /**
+     * Record which tests reach which source methods while running the tests.
+     *
+     * @param coverage The coverage where the reached methods are added to.
+     */
+    public void setCoverage(Coverage coverage) {
+        this.coverage = coverage;
+    }
+
+    /**
+     * Only observe some lines of the traced methods, and the end of each traced method.
+     *
+     * @param observationLines The lines to observe (e.g. the lines with an assertion), {@code null} to observe every line.
+     */
+    public void setObservationLines(Set<Integer> observationLines) {
+        this.observationLines = observationLines;
+    }
+
+    /**
+     * Only observe the traced methods from the mutated line on (prefix elision): the VM runs at full speed until
+     * the mutated line is reached, as the states up to there are the same as with the original code.
+     * The tests are still stepped through from there until the end of each traced method, so the lines after the
+     * mutated line are compared with the original trace as usual (a line that was last visited before the mutated
+     * line is not compared). This only applies if every line is observed (see {@link #setObservationLines(Set)}).
+     *
+     * @param mutant The mutant that is traced, {@code null} to observe each traced method from its start.
+     */
+    public void setMutant(Mutant mutant) {
+        this.mutant = mutant;
+    }
+
+    /**
+     * Limit how long the VM may run (e.g. a mutant might cause an infinite loop); the VM is killed once the time is up.
+     *
+     * @param timeout The time limit in milliseconds, 0 for no limit.
+     */
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Check if the VM has been killed because it took too long; the trace is incomplete.
+     *
+     * @return True if the VM took too long.
+     */
+    public boolean hasTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Start the watchdog for the current VM.
+     *
+     * @param process The process of the VM.
+     * @return The scheduled kill of the VM, {@code null} if there is no time limit.
+     */
+    ScheduledFuture<?> startWatchdog(Process process) {
+        if (timeout <= 0) {
             return null;
         }
+        return watchdog.schedule(() -> {
+            timedOut = true;
+            if (process != null) {
+                process.destroyForcibly();
+            }
+        }, timeout, TimeUnit.MILLISECONDS);
     }
 
     /**
-     * Add breakpoint at start of a method.
+     * Get the last part of the output (stdout and stderr) of the VM, e.g. to find out why a test class failed.
      *
-     * @param method The method where the breakpoint is added.
+     * @return The output, empty if the VM isn't launched yet.
      */
-    public void addBreakpoint(String method) {
-        breakpoints.add(method);
+    public String getOutput() {
+        return output != null ? output.getOutput() : "";
+    }
+
+    /**
+     * Launch the VM and start reading its output.
+     *
+     * @param name Name of the VM, used in the name of the log file of its output.
+     * @throws IOException                        If the VM could not be launched.
+     * @throws IllegalConnectorArgumentsException If the arguments of the connector are invalid.
+     * @throws VMStartException                   If the VM could not be started.
+     */
+    void launch(String name) throws IOException, IllegalConnectorArgumentsException, VMStartException {
+        vm = launchingConnector.launch(env);
+        output = new OutputDrainer(vm.process(), name);
     }
 
     /**
@@ -123,90 +299,415 @@ public class Debugger {
         }
     }
 
+    /**
+     * Stop tracing, e.g. because the trace already differs from the original trace.
+     */
+    void stop() {
+        close();
+    }
+
     /**
      * Start the VM.
      */
     public void run() {
+        ScheduledFuture<?> kill = null;
         try {
-            vm = launchingConnector.launch(env);
+            launch(classToDebug);
+            kill = startWatchdog(vm.process());
 
             // Create initial prepare event
             ClassPrepareRequest classPrepareRequest = vm.eventRequestManager().createClassPrepareRequest();
             classPrepareRequest.addClassFilter(classToDebug);
             classPrepareRequest.enable();
+            if (elidePrefix()) {
+                createMutationRequests();
+            }
 
-            String currentMethod = "";  // store the current method we're in, so we can determine the amount of steps
-            EventSet eventSet;
-            while ((eventSet = vm.eventQueue().remove(100)) != null) {
+            // Handle the events until the VM is disconnected (the test runner exits when all the tests are done)
+            while (true) {
+                EventSet eventSet = vm.eventQueue().remove();
 
                 for (Event event : eventSet) {
 
-                    if (event instanceof ClassPrepareEvent) {
+                    if (event instanceof ClassPrepareEvent && event.request().getProperty(mutatedLine) != null) {
+                        createMutationBreakpoints(((ClassPrepareEvent) event).referenceType());
+                    } else if (event instanceof ClassPrepareEvent) {
                         final ClassPrepareEvent evt = (ClassPrepareEvent) event;
                         try {
                             final ClassType classType = (ClassType) evt.referenceType();
 
-                            // Set a breakpoint at the start of each method
-                            for (Method method : classType.methods()) {
-                                if (breakpoints.contains(method.name())) {
-                                    List<Location> locations = method.allLineLocations();
-                                    if (!locations.isEmpty()) {
-                                        BreakpointRequest breakRequest = vm.eventRequestManager().createBreakpointRequest(locations.get(0));
-                                        breakRequest.enable();
-                                    }
-                                }
-                            }
+                            createBreakpoints(classType);
                         } catch (java.lang.ClassCastException e) {
                             // Interface type => can't instantiate, just skip
                         }
+
+                        // Only record the coverage from here on, method entry events slow down the whole VM
+                        if (coverage != null) {
+                            createCoverageRequests();
+                        }
                     }
 
                     if (event instanceof BreakpointEvent || event instanceof StepEvent) {
-                        final ThreadReference thread;
-                        final Location location;
-                        if (event instanceof BreakpointEvent) {
-                            thread = ((BreakpointEvent) event).thread();
-                            location = ((BreakpointEvent) event).location();
-                        } else {
-                            thread = ((StepEvent) event).thread();
-                            location = ((StepEvent) event).location();
-                        }
+                        handleStep((LocatableEvent) event);
+                    } else if (event instanceof MethodEntryEvent) {
+                        handleMethodEntry((MethodEntryEvent) event);
+                    }
+                }
 
-                        if (event instanceof BreakpointEvent) {
-                            event.request().disable();
+                // Resume once all the events of the set are handled (e.g. a method entry and a breakpoint at the same location)
+                eventSet.resume();
+            }
 
-                            // At start of method
-                            currentMethod = location.method().name();
+        } catch (VMDisconnectedException | InterruptedException e) {
+            // VM is disconnected
 
-                            // Create new step (over) request
-                            try {
-                                StepRequest stepRequest = event.virtualMachine().eventRequestManager().createStepRequest(
-                                        thread, StepRequest.STEP_LINE, StepRequest.STEP_OVER);
-                                stepRequest.enable();
-                            } catch (DuplicateRequestException e) {
-                                // Skip
+        } catch (IOException | IllegalConnectorArgumentsException | VMStartException | AbsentInformationException e) {
+            throw new RuntimeException("Failed starting the VM for " + classToDebug + ": " + e.getMessage());
+
+        } finally {
+            if (kill != null) {
+                kill.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Set a breakpoint at the start of each traced method of a test class; if only the observation lines are observed,
+     * also set a breakpoint at each observation line in those methods and at the end of each method.
+     * The end of a method is its last location, which is the return at the closing brace of a test method
+     * (a method exit event would be simpler, but it makes the VM interpret all the code).
+     *
+     * @param testClass The test class.
+     * @return The requests.
+     * @throws AbsentInformationException If the test class has no line numbers.
+     */
+    List<EventRequest> createBreakpoints(ReferenceType testClass) throws AbsentInformationException {
+        List<EventRequest> requests = new ArrayList<>();
+        observationBreakpoints.clear();
+        currentMethod = "";
+        for (Method method : testClass.methods()) {
+            if (breakpoints.contains(method.name())) {
+                List<Location> locations = method.allLineLocations();
+                if (!locations.isEmpty()) {
+                    BreakpointRequest breakRequest = vm.eventRequestManager().createBreakpointRequest(locations.get(0));
+                    breakRequest.putProperty(methodStart, true);
+                    breakRequest.enable();
+                    requests.add(breakRequest);
+
+                    if (observationLines != null) {
+                        // Only the first location of each line, the start of the method already has a breakpoint
+                        Set<Integer> lines = new HashSet<>();
+                        lines.add(locations.get(0).lineNumber());
+                        List<BreakpointRequest> lineRequests = new ArrayList<>();
+                        for (Location location : locations) {
+                            if (observationLines.contains(location.lineNumber()) && lines.add(location.lineNumber())) {
+                                lineRequests.add(vm.eventRequestManager().createBreakpointRequest(location));
                             }
                         }
 
-                        // Check if still in current method
-                        if (!currentMethod.equals(location.method().name())) {
-                            // Out of method => stop step request
-                            event.request().disable();
+                        final Location end = Collections.max(locations, Comparator.comparingLong(Location::codeIndex));
+                        if (end.equals(locations.get(0))) {
+                            breakRequest.putProperty(methodEnd, true);
                         } else {
-                            // Observe current state
-                            observer.observe(vm, thread, location);
+                            BreakpointRequest endRequest = lineRequests.stream()
+                                    .filter(request -> request.location().equals(end))
+                                    .findFirst()
+                                    .orElseGet(() -> {
+                                        BreakpointRequest request = vm.eventRequestManager().createBreakpointRequest(end);
+                                        lineRequests.add(request);
+                                        return request;
+                                    });
+                            endRequest.putProperty(methodEnd, true);
                         }
+
+                        lineRequests.forEach(BreakpointRequest::enable);
+                        observationBreakpoints.put(method.name(), lineRequests);
+                        requests.addAll(lineRequests);
                     }
+                }
+            }
+        }
+        return requests;
+    }
+
+    /**
+     * Check if the traced methods are only observed from the mutated line on (see {@link #setMutant(Mutant)}).
+     *
+     * @return True if the prefix of each traced method up to the mutated line is skipped.
+     */
+    boolean elidePrefix() {
+        return mutant != null && observationLines == null;
+    }
+
+    /**
+     * Create the requests to set the breakpoints at the mutated line: right away if the mutated class is already
+     * loaded, otherwise once it's prepared (see {@link #createMutationBreakpoints(ReferenceType)}).
+     *
+     * @return The requests.
+     * @throws AbsentInformationException If the mutated class has no line numbers.
+     */
+    List<EventRequest> createMutationRequests() throws AbsentInformationException {
+        mutationBreakpoints.clear();
+        final List<ReferenceType> loaded = vm.classesByName(mutant.getMutatedClass());
+        if (!loaded.isEmpty()) {
+            return createMutationBreakpoints(loaded.get(0));
+        }
+
+        ClassPrepareRequest request = vm.eventRequestManager().createClassPrepareRequest();
+        request.addClassFilter(mutant.getMutatedClass());
+        request.putProperty(mutatedLine, true);
+        request.enable();
+        return Collections.singletonList(request);
+    }
 
-                    vm.resume();
+    /**
+     * Set a breakpoint at each location of the mutated line in the mutated method. If the line has no locations
+     * in that method (e.g. the mutant is in the initializer of a field), the breakpoints are set at the start of
+     * the method, or at each line of the class if the method isn't found either.
+     * The breakpoints are disabled until a traced method starts, unless one is already running (the mutated class
+     * is often only loaded by the traced method itself).
+     *
+     * @param mutatedClass The mutated class.
+     * @return The requests.
+     * @throws AbsentInformationException If the mutated class has no line numbers.
+     */
+    List<EventRequest> createMutationBreakpoints(ReferenceType mutatedClass) throws AbsentInformationException {
+        List<Location> locations = new ArrayList<>();
+        for (Method method : mutatedClass.methods()) {
+            if (method.name().equals(mutant.getMutatedMethod())
+                    && method.signature().equals(mutant.getMutatedMethodDescr())) {
+                locations = method.locationsOfLine(mutant.getLineNr());
+                if (locations.isEmpty() && !method.allLineLocations().isEmpty()) {
+                    locations = Collections.singletonList(method.allLineLocations().get(0));
                 }
             }
+        }
+        if (locations.isEmpty()) {
+            locations = mutatedClass.allLineLocations();
+        }
 
-        } catch (VMDisconnectedException | InterruptedException e) {
-            // VM is disconnected
+        List<EventRequest> requests = new ArrayList<>();
+        for (Location location : locations) {
+            BreakpointRequest request = vm.eventRequestManager().createBreakpointRequest(location);
+            request.putProperty(mutatedLine, true);
+            request.setEnabled(!currentMethod.isEmpty());
+            mutationBreakpoints.add(request);
+            requests.add(request);
+        }
+        return requests;
+    }
 
-        } catch (IOException | IllegalConnectorArgumentsException | VMStartException | AbsentInformationException e) {
-            throw new RuntimeException("Failed starting the VM for " + classToDebug + ": " + e.getMessage());
+    /**
+     * Handle a breakpoint or step event: start stepping at the start of a method and observe each line in it.
+     *
+     * @param event The breakpoint or step event.
+     */
+    void handleStep(LocatableEvent event) {
+        final ThreadReference thread = event.thread();
+        final Location location = event.location();
+
+        if (observationLines != null) {
+            handleObservationLine(event);
+            return;
+        }
+        if (elidePrefix() && handlePrefix(event)) {
+            return;
+        }
+
+        if (event instanceof BreakpointEvent) {
+            event.request().disable();
+
+            // At start of method
+            currentMethod = location.method().name();
+
+            // Create new step (over) request
+            try {
+                StepRequest stepRequest = event.virtualMachine().eventRequestManager().createStepRequest(
+                        thread, StepRequest.STEP_LINE, StepRequest.STEP_OVER);
+                stepRequest.enable();
+            } catch (DuplicateRequestException e) {
+                // Skip
+            }
+        }
+
+        // Check if still in current method
+        if (!currentMethod.equals(location.method().name())) {
+            // Out of method => stop step request
+            event.request().disable();
+            currentMethod = "";
+
+            // The trace already differs from the original trace => no need to run the remaining tests
+            if (observer.endOfMethod()) {
+                stop();
+            }
+        } else {
+            // Observe current state
+            observer.observe(event.virtualMachine(), thread, location);
+        }
+    }
+
+    /**
+     * Handle an event of the prefix of a traced method, i.e. before the stepping through the method starts
+     * (see {@link #setMutant(Mutant)}).
+     * At the start of a traced method, the breakpoints at the mutated line are enabled. Once the mutated line is
+     * reached from within the method, those are disabled again and the stepping starts: it first steps out of
+     * the invoked methods until it's back in the traced method, from there on it steps over each line as usual.
+     * The line where it's back in the traced method is only observed once it's done (at the next step).
+     *
+     * @param event The breakpoint or step event.
+     * @return True if the event has been handled, false if it's a step through the traced method.
+     */
+    private boolean handlePrefix(LocatableEvent event) {
+        final ThreadReference thread = event.thread();
+        final EventRequest request = event.request();
+        try {
+            if (request.getProperty(mutatedLine) != null) {
+                final int frameCount = thread.frameCount();
+                if (!currentMethod.isEmpty() && frameCount >= currentDepth
+                        && thread.frame(frameCount - currentDepth).location().method().name().equals(currentMethod)) {
+                    mutationBreakpoints.forEach(BreakpointRequest::disable);
+                    startStepping(thread, frameCount > currentDepth ? StepRequest.STEP_OUT : StepRequest.STEP_OVER);
+                }
+                // else: not invoked from a traced method (e.g. the constructor of the test class)
+                return true;
+            }
+
+            if (request.getProperty(stepOut) != null) {
+                final int frameCount = thread.frameCount();
+                if (frameCount == currentDepth && currentMethod.equals(event.location().method().name())) {
+                    startStepping(thread, StepRequest.STEP_OVER);
+                } else if (frameCount < currentDepth) {
+                    // Left the traced method with an exception
+                    request.disable();
+                    currentMethod = "";
+                    if (observer.endOfMethod()) {
+                        stop();
+                    }
+                }
+                // else: still in an invoked method => keep stepping out
+                return true;
+            }
+
+            if (event instanceof BreakpointEvent) {
+                // At start of method
+                request.disable();
+                currentMethod = event.location().method().name();
+                currentDepth = thread.frameCount();
+                mutationBreakpoints.forEach(BreakpointRequest::enable);
+                return true;
+            }
+        } catch (IncompatibleThreadStateException e) {
+            // Should not be possible, the thread is suspended by the event
+        }
+        return false;
+    }
+
+    /**
+     * Replace the step request of a thread (there can only be one step request per thread).
+     *
+     * @param thread The thread.
+     * @param depth  The depth of the steps, {@link StepRequest#STEP_OUT} or {@link StepRequest#STEP_OVER}.
+     */
+    private void startStepping(ThreadReference thread, int depth) {
+        EventRequestManager requestManager = thread.virtualMachine().eventRequestManager();
+        for (StepRequest request : requestManager.stepRequests()) {
+            if (request.thread().equals(thread)) {
+                requestManager.deleteEventRequest(request);
+            }
+        }
+
+        StepRequest stepRequest = requestManager.createStepRequest(thread, StepRequest.STEP_LINE, depth);
+        if (depth == StepRequest.STEP_OUT) {
+            stepRequest.putProperty(stepOut, true);
+        }
+        stepRequest.enable();
+    }
+
+    /**
+     * Handle a breakpoint when only the observation lines are observed:
+     * at the start of a method, at an observation line or at the end of a method.
+     *
+     * @param event The breakpoint event.
+     */
+    private void handleObservationLine(LocatableEvent event) {
+        final ThreadReference thread = event.thread();
+        final Location location = event.location();
+        try {
+            if (event.request().getProperty(methodStart) != null) {
+                if (!currentMethod.isEmpty() && thread.frameCount() > currentDepth) {
+                    return;     // Called from within the current method => only trace the current method
+                }
+                if (!currentMethod.isEmpty()) {
+                    // The previous method was left with an exception, so its end was never reached
+                    endOfMethod();
+                }
+
+                // At start of method
+                event.request().disable();
+                currentMethod = location.method().name();
+                currentDepth = thread.frameCount();
+            }
+
+            if (currentMethod.equals(location.method().name()) && thread.frameCount() == currentDepth) {
+                final boolean end = event.request().getProperty(methodEnd) != null;
+                if (end || observationLines.contains(location.lineNumber())) {
+                    observer.observe(event.virtualMachine(), thread, location);
+                }
+                if (end) {
+                    endOfMethod();
+                }
+            }
+        } catch (IncompatibleThreadStateException e) {
+            // Should not be possible, the thread is suspended by the breakpoint
+        }
+    }
+
+    /**
+     * The current method is done when only the observation lines are observed: each method is only traced once,
+     * so its breakpoints are disabled.
+     */
+    private void endOfMethod() {
+        observationBreakpoints.getOrDefault(currentMethod, new ArrayList<>()).forEach(BreakpointRequest::disable);
+        currentMethod = "";
+
+        // The trace already differs from the original trace => no need to run the remaining tests
+        if (observer.endOfMethod()) {
+            stop();
+        }
+    }
+
+    /**
+     * Create the requests to get an event when a method of one of the source classes is entered.
+     * The events don't suspend the VM, so the methods invoked by the {@link Observer} (the inspector methods)
+     * are recorded as well.
+     *
+     * @return The requests.
+     */
+    List<MethodEntryRequest> createCoverageRequests() {
+        List<MethodEntryRequest> requests = new ArrayList<>();
+        for (String packageName : coverage.getPackages()) {
+            MethodEntryRequest request = vm.eventRequestManager().createMethodEntryRequest();
+            if (!packageName.isEmpty()) {
+                request.addClassFilter(packageName + ".*");
+            }
+            request.setSuspendPolicy(EventRequest.SUSPEND_NONE);
+            request.enable();
+            requests.add(request);
+        }
+        return requests;
+    }
+
+    /**
+     * Handle a method entry event: record which test reaches the method.
+     * The events are handled in the order they occurred, so the test is the method that is being traced;
+     * outside a traced method (e.g. the constructor of the test class), the whole test class is needed.
+     *
+     * @param event The method entry event.
+     */
+    void handleMethodEntry(MethodEntryEvent event) {
+        final String className = event.method().declaringType().name();
+        if (coverage.isSourceClass(className)) {
+            coverage.record(className, event.method().name(), classToDebug, currentMethod.isEmpty() ? null : currentMethod);
         }
     }
 
@@ -0,0 +1,287 @@
+package lumutator.tracer.debugger;
+
+import com.sun.jdi.*;
+import com.sun.jdi.connect.IllegalConnectorArgumentsException;
+import com.sun.jdi.connect.VMStartException;
+import com.sun.jdi.event.Event;
+import com.sun.jdi.event.EventSet;
+import com.sun.jdi.event.ExceptionEvent;
+import com.sun.jdi.event.MethodExitEvent;
+import com.sun.jdi.request.EventRequest;
+import com.sun.jdi.request.ExceptionRequest;
+import com.sun.jdi.request.MethodExitRequest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Debugger that runs a test class without stepping through it, and only records the state at each exit of
+ * a single method (e.g. the mutated method of a mutant): how it exited (a return or the type of the exception that
+ * popped it), its return value, the receiver, the arguments and the static fields of its class, including all the
+ * objects they reach through their fields (private or not).
+ * If the states are the same as with the original version of the code, the mutant didn't infect the state
+ * (weak mutation), so there's no need to trace it.
+ * <p>
+ * Unlike the {@link Observer}, no inspector methods are invoked: the fields are read directly.
+ * <p>
+ * Note that the static fields of other classes are not recorded: a method that only changes the static state of
+ * another class has the same states at its exits, even though the tests might observe the change later on.
+ */
+public class ExitRecorder extends Debugger {
+
+    /**
+     * How deep the objects are followed through their fields.
+     */
+    private static final int maxDepth = 8;
+
+    /**
+     * The class of the recorded method.
+     */
+    private final String className;
+
+    /**
+     * The name of the recorded method.
+     */
+    private final String methodName;
+
+    /**
+     * The signature (descriptor) of the recorded method, e.g. "(I)V".
+     */
+    private final String methodSignature;
+
+    /**
+     * The strings of the states.
+     */
+    private final StringTable strings;
+
+    /**
+     * The state at each exit of the method, in the order they occurred.
+     */
+    private final List<Trace.Line> exits = new ArrayList<>();
+
+    /**
+     * Set up some options.
+     *
+     * @param classToDebug    The test class to run.
+     * @param strings         The strings of the states, the same for the states that are compared.
+     * @param classPath       The classpath of the VM.
+     * @param className       The class of the recorded method.
+     * @param methodName      The name of the recorded method.
+     * @param methodSignature The signature (descriptor) of the recorded method.
+     */
+    public ExitRecorder(String classToDebug, StringTable strings, String classPath,
+                        String className, String methodName, String methodSignature) {
+        super(classToDebug, null, classPath);
+        this.strings = strings;
+        this.className = className;
+        this.methodName = methodName;
+        this.methodSignature = methodSignature;
+    }
+
+    /**
+     * Get the state at each exit of the method, once the test class has run.
+     *
+     * @return The states, in the order they occurred.
+     */
+    public List<Trace.Line> getExits() {
+        return exits;
+    }
+
+    /**
+     * Start the VM and record the exits of the method until the VM exits.
+     */
+    @Override
+    public void run() {
+        ScheduledFuture<?> kill = null;
+        try {
+            launch(classToDebug);
+            kill = startWatchdog(vm.process());
+
+            // The filter also matches the class before it's loaded
+            MethodExitRequest exitRequest = vm.eventRequestManager().createMethodExitRequest();
+            exitRequest.addClassFilter(className);
+            exitRequest.setSuspendPolicy(EventRequest.SUSPEND_EVENT_THREAD);
+            exitRequest.enable();
+
+            // There's no method exit event for a frame that is popped by an exception, so these exits are
+            // recorded when the exception is thrown (in the method itself, or in a method it calls)
+            ExceptionRequest exceptionRequest = vm.eventRequestManager().createExceptionRequest(null, true, true);
+            exceptionRequest.setSuspendPolicy(EventRequest.SUSPEND_EVENT_THREAD);
+            exceptionRequest.enable();
+
+            while (true) {
+                EventSet eventSet = vm.eventQueue().remove();
+                for (Event event : eventSet) {
+                    if (event instanceof MethodExitEvent) {
+                        final MethodExitEvent exit = (MethodExitEvent) event;
+                        if (isRecorded(exit.method())) {
+                            exits.add(observe(exit));
+                        }
+                    } else if (event instanceof ExceptionEvent) {
+                        observe((ExceptionEvent) event);
+                    }
+                }
+                eventSet.resume();
+            }
+
+        } catch (VMDisconnectedException | InterruptedException e) {
+            // VM is disconnected
+
+        } catch (IOException | IllegalConnectorArgumentsException | VMStartException e) {
+            throw new RuntimeException("Failed starting the VM for " + classToDebug + ": " + e.getMessage());
+
+        } finally {
+            if (kill != null) {
+                kill.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Check if a method is the recorded method.
+     *
+     * @param method The method.
+     * @return True if it's the recorded method.
+     */
+    private boolean isRecorded(Method method) {
+        return method.name().equals(methodName) && method.signature().equals(methodSignature)
+                && method.declaringType().name().equals(className);
+    }
+
+    /**
+     * Take a snapshot of the state at the exit of the method with a return: the way it exited ("exit": "return"),
+     * the return value ("return"), the receiver ("this"), the arguments ("arg0", "arg1", ...) as they are at the end
+     * of the method, and the static fields of its class.
+     *
+     * @param exit The method exit event.
+     * @return The state.
+     */
+    private Trace.Line observe(MethodExitEvent exit) {
+        Trace.Line.Builder state = new Trace.Line.Builder(strings);
+        Map<Long, String> visited = new HashMap<>();
+        state.put("exit", "return");
+        if (vm.canGetMethodReturnValues()) {
+            snapshot(state, "return", exit.returnValue(), visited, 0);
+        }
+        try {
+            snapshotFrame(state, exit.thread().frame(0), exit.method(), visited);
+        } catch (IncompatibleThreadStateException e) {
+            // Should not be possible, the thread is suspended by the event
+        }
+        return state.build();
+    }
+
+    /**
+     * Take a snapshot of the state at each exit of the method that an exception causes: each frame of the method
+     * above the frame that catches the exception is popped by it. The state is the same as at an exit with a return,
+     * except that the way it exited ("exit") is the type of the exception, and there is no return value.
+     * A finally block also catches the exception, so the state can't change anymore before the frames are popped.
+     *
+     * @param exception The exception event.
+     */
+    private void observe(ExceptionEvent exception) {
+        final Location catchLocation = exception.catchLocation();
+        try {
+            for (StackFrame frame : exception.thread().frames()) {
+                final Method method = frame.location().method();
+                if (catchLocation != null && method.equals(catchLocation.method())) {
+                    // Caught here (or in a deeper frame of the same method, if it's recursive)
+                    return;
+                } else if (isRecorded(method)) {
+                    Trace.Line.Builder state = new Trace.Line.Builder(strings);
+                    Map<Long, String> visited = new HashMap<>();
+                    state.put("exit", exception.exception().referenceType().name());
+                    snapshotFrame(state, frame, method, visited);
+                    exits.add(state.build());
+                }
+            }
+        } catch (IncompatibleThreadStateException e) {
+            // Should not be possible, the thread is suspended by the event
+        }
+    }
+
+    /**
+     * Add the receiver ("this"), the arguments ("arg0", "arg1", ...) and the static fields of the class of
+     * the method to the state.
+     *
+     * @param state   The state.
+     * @param frame   The frame of the method.
+     * @param method  The method.
+     * @param visited The path of each object that was already added (unique id => path).
+     */
+    private void snapshotFrame(Trace.Line.Builder state, StackFrame frame, Method method, Map<Long, String> visited) {
+        if (!method.isStatic()) {
+            snapshot(state, "this", frame.thisObject(), visited, 0);
+        }
+        final List<Value> arguments = frame.getArgumentValues();
+        for (int i = 0; i < arguments.size(); i++) {
+            snapshot(state, "arg" + i, arguments.get(i), visited, 0);
+        }
+
+        final ReferenceType declaringType = method.declaringType();
+        for (Field field : declaringType.allFields()) {
+            if (field.isStatic()) {
+                snapshot(state, "static." + field.name(), declaringType.getValue(field), visited, 0);
+            }
+        }
+    }
+
+    /**
+     * Add a value to the state; an object is added through all its fields, an array through all its elements.
+     * An object that was already added (e.g. a second reference to the same object) is added as the path
+     * where it was added first, so the states also show which references are shared.
+     *
+     * @param state   The state.
+     * @param path    The path of the value, e.g. "this.customers".
+     * @param value   The value.
+     * @param visited The path of each object that was already added (unique id => path).
+     * @param depth   How many fields were followed to get to the value.
+     */
+    private void snapshot(Trace.Line.Builder state, String path, Value value, Map<Long, String> visited, int depth) {
+        if (value == null) {
+            state.putNull(path);
+        } else if (value instanceof BooleanValue) {
+            state.put(path, ((BooleanValue) value).value());
+        } else if (value instanceof ByteValue || value instanceof CharValue
+                || value instanceof ShortValue || value instanceof IntegerValue) {
+            state.put(path, ((PrimitiveValue) value).intValue());
+        } else if (value instanceof LongValue) {
+            state.put(path, ((LongValue) value).value());
+        } else if (value instanceof FloatValue) {
+            state.put(path, ((FloatValue) value).value());
+        } else if (value instanceof DoubleValue) {
+            state.put(path, ((DoubleValue) value).value());
+        } else if (value instanceof StringReference) {
+            state.put(path, ((StringReference) value).value());
+        } else if (value instanceof ObjectReference) {
+            final ObjectReference object = (ObjectReference) value;
+            final String firstPath = visited.putIfAbsent(object.uniqueID(), path);
+            if (firstPath != null) {
+                state.put(path, "@" + firstPath);
+            } else if (depth >= maxDepth || object instanceof ClassObjectReference
+                    || object instanceof ClassLoaderReference || object instanceof ThreadReference) {
+                state.put(path, object.referenceType().name());
+            } else if (object instanceof ArrayReference) {
+                final List<Value> values = ((ArrayReference) object).getValues();
+                for (int i = 0; i < values.size(); i++) {
+                    snapshot(state, String.format("%s[%s]", path, i), values.get(i), visited, depth + 1);
+                }
+            } else {
+                state.put(path, object.referenceType().name());
+                for (Field field : object.referenceType().allFields()) {
+                    if (!field.isStatic()) {
+                        snapshot(state, path + "." + field.name(), object.getValue(field), visited, depth + 1);
+                    }
+                }
+            }
+        } else {
+            // void
+            state.putNull(path);
+        }
+    }
+
+}
@@ -1,14 +1,11 @@
 package lumutator.tracer.debugger;
 
 import com.sun.jdi.*;
+import lumutator.Configuration;
+import lumutator.tracer.agent.TraceLimits;
 import org.json.JSONObject;
 
-import java.util.HashSet;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.*;
 
 /**
  * Observer: observe a running program and create a trace; used by {@link Debugger}.
@@ -16,32 +13,142 @@ import java.util.regex.Pattern;
 public class Observer {
 
     /**
-     * Json object that stores the trace.
+     * Builder that collects the trace.
      */
-    private JSONObject json;
+    private TraceBuilder traceBuilder;
 
     /**
      * Set of all inspector methods in the source classes.
      */
     private Set<String> inspectorMethods;
 
+    /**
+     * Comparator that compares the states with the original trace, {@code null} if the trace is collected instead.
+     */
+    private TraceComparator comparator;
+
+    /**
+     * The strings of the trace.
+     */
+    private StringTable strings;
+
+    /**
+     * The limits on what is traced of a state (see {@link TraceLimits}).
+     */
+    private final TraceLimits limits;
+
+    /**
+     * What needs to be traced of each class (class of the VM => its inspector methods and public fields),
+     * so the methods and fields of a class are only looked up once.
+     */
+    private final Map<ClassType, ClassMembers> classMembers = new HashMap<>();
+
+    /**
+     * All the fields of each test class (type of the VM => its fields, by name).
+     */
+    private final Map<ReferenceType, List<Field>> allFields = new HashMap<>();
+
+    /**
+     * The results of the inspector methods in the current observation (unique id of the object => method => result),
+     * so an object that is reachable in multiple ways (e.g. through a local variable and a field) is only inspected once.
+     * The inspector methods are pure and the VM is suspended, so the results can't change during one observation.
+     */
+    private final Map<Long, Map<Method, Value>> evaluations = new HashMap<>();
+
+    /**
+     * The previous state of the current method, {@code null} at the start of a method.
+     * A state that is the same as the previous one is not stored again, but shares the previous state
+     * (see {@link TraceComparator}, which then only compares it once).
+     */
+    private Trace.Line previousLine;
+
+    /**
+     * How many times each line of the current method has been visited (line => visits), so a line in a loop is only
+     * observed at some of its visits (see {@link TraceLimits#observes(int)}).
+     */
+    private final Map<Integer, Integer> lineVisits = new HashMap<>();
+
     /**
      * Constructor.
      *
      * @param inspectorMethods Set of all inspector methods in the source classes.
      */
     public Observer(Set<String> inspectorMethods) {
-        json = new JSONObject();
+        this(inspectorMethods, new StringTable());
+    }
+
+    /**
+     * Constructor for an observer that adds the strings of the trace to a given table, e.g. of a {@link Trace}.
+     *
+     * @param inspectorMethods Set of all inspector methods in the source classes.
+     * @param strings          The strings of the trace.
+     */
+    public Observer(Set<String> inspectorMethods, StringTable strings) {
+        traceBuilder = new TraceBuilder();
         this.inspectorMethods = inspectorMethods;
+        this.strings = strings;
+        this.limits = readLimits();
     }
 
     /**
-     * Get the trace.
+     * Read the limits on what is traced from the configuration ("maxTraceDepth", "maxArrayElements",
+     * "maxStringLength", "maxExpressionsPerLine" and "visitInterval"); a limit that isn't set means no limit.
+     * With "prefixElision", every visit of a line is observed: the visits before the mutated line run without being
+     * counted, so a mutant would observe other visits than the original code.
+     *
+     * @return The limits.
+     */
+    private static TraceLimits readLimits() {
+        Configuration config = Configuration.getInstance();
+        int[] limits = new int[5];
+        String[] keys = {"maxTraceDepth", "maxArrayElements", "maxStringLength", "maxExpressionsPerLine", "visitInterval"};
+        for (int i = 0; i < keys.length; i++) {
+            limits[i] = config.hasParameter(keys[i]) ? Integer.parseInt(config.get(keys[i])) : 0;
+        }
+        if (config.hasParameter("prefixElision") && Boolean.parseBoolean(config.get("prefixElision"))) {
+            limits[4] = 0;
+        }
+        return new TraceLimits(limits[0], limits[1], limits[2], limits[3], limits[4]);
+    }
+
+    /**
+     * Constructor for an observer that compares the states with the original trace, instead of collecting the trace.
+     *
+     * @param inspectorMethods Set of all inspector methods in the source classes.
+     * @param comparator       Comparator that compares the states with the original trace.
+     */
+    public Observer(Set<String> inspectorMethods, TraceComparator comparator) {
+        this(inspectorMethods, comparator.getStrings());
+        this.comparator = comparator;
+    }
+
+    /**
+     * Get the state at each observed line.
+     *
+     * @return The state at each line (see {@link Trace#put(String, Map)}).
+     */
+    public Map<Integer, Trace.Line> getLines() {
+        return traceBuilder.build();
+    }
+
+    /**
+     * Get the trace, e.g. for debugging.
      *
      * @return The trace in form of a JSON object.
      */
     public JSONObject getTrace() {
-        return json;
+        return Trace.toJSON(traceBuilder.build(), strings);
+    }
+
+    /**
+     * The traced method is done; if the states are compared with the original trace, compare the lines of the method.
+     *
+     * @return True if the trace differs from the original trace, so there's no need to trace any further.
+     */
+    public boolean endOfMethod() {
+        previousLine = null;
+        lineVisits.clear();
+        return comparator != null && comparator.endOfMethod();
     }
 
     /**
@@ -50,55 +157,121 @@ public class Observer {
      * <p>
      * (1) Local variables on the stackframe.
      * (2) States of non-primitive objects.
+     * <p>
+     * A line that is visited repeatedly (e.g. in a loop) might only be observed at some of its visits
+     * (see {@link TraceLimits#observes(int)}).
      *
      * @param vm       The current running virtual machine.
      * @param thread   The current running thread.
      * @param location Current location of the vm.
      */
     public void observe(VirtualMachine vm, ThreadReference thread, Location location) {
+        if (!limits.observes(lineVisits.merge(location.lineNumber(), 1, Integer::sum))) {
+            return;     // A visit in between of a line in a loop
+        }
         try {
-            JSONObject trace = new JSONObject();
+            Trace.Line.Builder trace = new Trace.Line.Builder(strings);
+            evaluations.clear();
 
-            // (1) Check each local variable
-            Map<LocalVariable, Value> visibleVariables = thread.frame(0).getValues(thread.frame(0).visibleVariables());
-            for (Map.Entry<LocalVariable, Value> entry : visibleVariables.entrySet()) {
-                traceObject(vm, thread, trace, entry.getKey().typeName(), entry.getKey().name(), entry.getValue(), new HashSet<>());
+            // (1) Check each local variable, by name (the order matters for the limits)
+            List<LocalVariable> variables = new ArrayList<>(thread.frame(0).visibleVariables());
+            variables.sort(Comparator.comparing(LocalVariable::name));
+            Map<LocalVariable, Value> visibleVariables = thread.frame(0).getValues(variables);
+            for (LocalVariable variable : variables) {
+                traceObject(thread, trace, variable.typeName(), variable.name(), visibleVariables.get(variable), new HashSet<>(), 0);
             }
 
             // (2) Check class fields (i.e. fields of the test class itself)
             ObjectReference thisObject = thread.frame(0).thisObject();
             if (thisObject != null) {
-                for (Field field : thisObject.referenceType().allFields()) {
-                    traceObject(vm, thread, trace, field.typeName(), field.name(), thisObject.getValue(field), new HashSet<>());
+                List<Field> fields = allFields.computeIfAbsent(thisObject.referenceType(), type -> {
+                    List<Field> sortedFields = new ArrayList<>(type.allFields());
+                    sortedFields.sort(Comparator.comparing(Field::name));
+                    return sortedFields;
+                });
+                for (Field field : fields) {
+                    traceObject(thread, trace, field.typeName(), field.name(), thisObject.getValue(field), new HashSet<>(), 0);
                 }
             }
 
             // Commit new trace
-            if (!trace.isEmpty()) {
-                json.toString();    // For some reason this prevents a bug (json becomes null)
-                json.put(String.valueOf(location.lineNumber()), trace);
-            }
+            add(location.lineNumber(), trace);
 
         } catch (AbsentInformationException | IncompatibleThreadStateException e) {
             throw new RuntimeException("Incompatible thread state: " + e.getMessage());
         }
     }
 
+    /**
+     * Get the inspector methods, e.g. to pass them to the tracing agent.
+     *
+     * @return Set of all inspector methods in the source classes.
+     */
+    Set<String> getInspectorMethods() {
+        return inspectorMethods;
+    }
+
+    /**
+     * Get the limits on what is traced of a state, e.g. to pass them to the tracing agent.
+     *
+     * @return The limits.
+     */
+    TraceLimits getLimits() {
+        return limits;
+    }
+
+    /**
+     * Create the state at a line, with the strings of the trace.
+     *
+     * @return The builder of the state.
+     */
+    Trace.Line.Builder createLine() {
+        return new Trace.Line.Builder(strings);
+    }
+
+    /**
+     * Add the state at a line, e.g. a snapshot of the tracing agent (see {@link AgentDebugger}).
+     *
+     * @param line  The line number.
+     * @param trace The state at that line, created with {@link #createLine()}; nothing is added if it's empty.
+     */
+    void add(int line, Trace.Line.Builder trace) {
+        if (!trace.isEmpty()) {
+            Trace.Line state = trace.build();
+            if (previousLine != null && state.sameState(previousLine)) {
+                state = previousLine;
+            }
+            previousLine = state;
+
+            if (comparator != null) {
+                comparator.add(line, state);
+            } else {
+                traceBuilder.add(line, state);
+            }
+        }
+    }
+
     /**
      * Trace an object, this might be a of a primitive type or a complex type.
-     * Works recursively, meaning if a method return another object, this object gets traced too.
+     * Works recursively, meaning if a method return another object, this object gets traced too
+     * (within the limits, see {@link TraceLimits}).
      *
-     * @param vm             The current running virtual machine.
      * @param thread         The current running thread.
      * @param trace          The current trace.
      * @param varType        The type assigned to the variable (does NOT necessarily equal to the type of the variable).
      * @param variable       Name of the variable, can also be an expression that returns a variable.
      * @param value          The value of the variable.
      * @param visitedClasses Map of all the seen classes, this is just to prevent infinite recursion.
-     * @throws IncompatibleThreadStateException If incompatible thread state.
+     * @param depth          How many objects were followed to get to the variable.
      */
-    private void traceObject(VirtualMachine vm, ThreadReference thread, JSONObject trace, String varType, String variable,
-                             Value value, HashSet<String> visitedClasses) throws IncompatibleThreadStateException {
+    private void traceObject(ThreadReference thread, Trace.Line.Builder trace, String varType, String variable,
+                             Value value, HashSet<String> visitedClasses, int depth) {
+
+        // The line already has the maximum number of expressions => mark it and skip the rest
+        if (limits.isFull(trace.size())) {
+            trace.putTruncated(TraceLimits.TRUNCATED, TraceLimits.TRUNCATED);
+            return;
+        }
 
         // Check if it's a non-primitive datatype
         try {
@@ -106,14 +279,26 @@ public class Observer {
                 // String and null are here considered a "complex" type, enforce primitive type
                 throw new ClassCastException();
 
+            } else if (value instanceof ArrayReference && !limits.follows(depth)) {
+                trace.putTruncated(variable, TraceLimits.TRUNCATED);
+
             } else if (value instanceof ArrayReference) {
-                // Array
-                List<Value> values = ((ArrayReference) value).getValues();
-                for (int i = 0; i < values.size(); i++) {
-                    if (values.get(i) != null) {
-                        traceObject(vm, thread, trace, values.get(i).type().name(), String.format("%s[%s]", variable, i), values.get(i), visitedClasses);
-                    } else {
-                        traceObject(vm, thread, trace, null, String.format("%s[%s]", variable, i), values.get(i), visitedClasses);
+                // Array, only the first and last elements of a long array (and its length)
+                final ArrayReference array = (ArrayReference) value;
+                final int length = array.length();
+                if (limits.samples(length)) {
+                    trace.put(variable + ".length", length);
+                }
+                for (int[] range : limits.sample(length)) {
+                    List<Value> values = range[1] > range[0]
+                            ? array.getValues(range[0], range[1] - range[0]) : Collections.emptyList();
+                    for (int j = 0; j < values.size(); j++) {
+                        final int i = range[0] + j;
+                        if (values.get(j) != null) {
+                            traceObject(thread, trace, values.get(j).type().name(), String.format("%s[%s]", variable, i), values.get(j), visitedClasses, depth + 1);
+                        } else {
+                            traceObject(thread, trace, null, String.format("%s[%s]", variable, i), values.get(j), visitedClasses, depth + 1);
+                        }
                     }
                 }
 
@@ -122,35 +307,34 @@ public class Observer {
                 ClassType classType = (ClassType) value.type();
 
                 // Check if we're not back at the same class, this is to prevent infinite recursion.
-                if (!visitedClasses.contains(classType.name())) {
+                if (!visitedClasses.contains(classType.name()) && !limits.follows(depth)) {
+                    trace.putTruncated(variable, TraceLimits.TRUNCATED);
+                } else if (!visitedClasses.contains(classType.name())) {
                     visitedClasses.add(classType.name());
 
+                    ClassMembers members = classMembers.computeIfAbsent(classType, ClassMembers::new);
+                    ObjectReference objectRef = (ObjectReference) value;
+
                     // (1) Inspector methods
-                    for (Method method : classType.methods()) {
-                        Matcher matcher = Pattern.compile("([^(]+)\\(").matcher(method.toString());
-                        if (matcher.find() && inspectorMethods.contains(matcher.group(1))) {
-                            // Execute inspector method
-                            Value evaluatedValue = Debugger.evaluate(String.format("%s.%s()", variable, method.name()), vm, thread.frame(0));
-                            // Check if casting is needed
-                            String returnType = method.returnTypeName();
-                            if (varType.equals(classType.name())) {
-                                traceObject(vm, thread, trace, returnType, String.format("%s.%s()", variable, method.name()), evaluatedValue, visitedClasses);
-                            } else {
-                                String castToClass = classType.name().replace('$', '.');
-                                traceObject(vm, thread, trace, returnType, String.format("((%s) %s).%s()", castToClass, variable, method.name()), evaluatedValue, visitedClasses);
-                            }
+                    for (Method method : members.inspectorMethods) {
+                        // Execute inspector method
+                        Value evaluatedValue = evaluate(thread, objectRef, method);
+                        // Check if casting is needed
+                        String returnType = method.returnTypeName();
+                        if (varType.equals(classType.name())) {
+                            traceObject(thread, trace, returnType, String.format("%s.%s()", variable, method.name()), evaluatedValue, visitedClasses, depth + 1);
+                        } else {
+                            String castToClass = classType.name().replace('$', '.');
+                            traceObject(thread, trace, returnType, String.format("((%s) %s).%s()", castToClass, variable, method.name()), evaluatedValue, visitedClasses, depth + 1);
                         }
                     }
 
                     // (2) Public member fields
-                    ObjectReference objectRef = (ObjectReference) value;
-                    for (Field field : classType.visibleFields()) {
-                        if (field.isPublic()) {
-                            try {
-                                traceObject(vm, thread, trace, field.typeName(), String.format("%s.%s", variable, field.name()), objectRef.getValue(field), visitedClasses);
-                            } catch (ObjectCollectedException e) {
-                                // Object has been garbage collected
-                            }
+                    for (Field field : members.publicFields) {
+                        try {
+                            traceObject(thread, trace, field.typeName(), String.format("%s.%s", variable, field.name()), objectRef.getValue(field), visitedClasses, depth + 1);
+                        } catch (ObjectCollectedException e) {
+                            // Object has been garbage collected
                         }
                     }
                 }
@@ -163,6 +347,47 @@ public class Observer {
         }
     }
 
+    /**
+     * Get the result of an inspector method on an object, it's only invoked the first time in the current observation.
+     *
+     * @param thread The current running thread.
+     * @param object The object.
+     * @param method The inspector method.
+     * @return The result of the method, null if it failed.
+     */
+    private Value evaluate(ThreadReference thread, ObjectReference object, Method method) {
+        Map<Method, Value> results = evaluations.computeIfAbsent(object.uniqueID(), id -> new HashMap<>());
+        if (!results.containsKey(method)) {
+            results.put(method, invoke(thread, object, method));
+        }
+        return results.get(method);
+    }
+
+    /**
+     * Invoke an inspector method directly on an object; only the current thread runs during the invocation.
+     *
+     * @param thread The current running thread.
+     * @param object The object.
+     * @param method The inspector method.
+     * @return The result of the method, null if it failed (e.g. it threw an exception or it needs arguments).
+     */
+    private static Value invoke(ThreadReference thread, ObjectReference object, Method method) {
+        if (!method.argumentTypeNames().isEmpty()) {
+            return null;
+        }
+        try {
+            if (method.isStatic()) {
+                return ((ClassType) method.declaringType()).invokeMethod(
+                        thread, method, Collections.emptyList(), ObjectReference.INVOKE_SINGLE_THREADED
+                );
+            }
+            return object.invokeMethod(thread, method, Collections.emptyList(), ObjectReference.INVOKE_SINGLE_THREADED);
+        } catch (InvalidTypeException | ClassNotLoadedException | IncompatibleThreadStateException | InvocationException
+                | ObjectCollectedException e) {
+            return null;
+        }
+    }
+
     /**
      * Add new entry in the current trace.
      *
@@ -170,7 +395,7 @@ public class Observer {
      * @param key   The key, i.e. variable name, expression, ...
      * @param value The value of the key.
      */
-    private void addTrace(JSONObject trace, String key, Value value) {
+    private void addTrace(Trace.Line.Builder trace, String key, Value value) {
         if (value instanceof PrimitiveValue) {
             if (value instanceof BooleanValue) {
                 trace.put(key, ((BooleanValue) value).value());
@@ -190,17 +415,60 @@ public class Observer {
                 trace.put(key, ((ShortValue) value).value());
             } else {
                 // void
-                trace.put(key, JSONObject.NULL);
+                trace.putNull(key);
             }
 
         } else if (value instanceof ObjectReference) {
             if (value instanceof StringReference) {
-                trace.put(key, ((StringReference) value).value());
+                final String string = ((StringReference) value).value();
+                if (limits.truncates(string)) {
+                    trace.putTruncated(key, limits.truncate(string));
+                } else {
+                    trace.put(key, string);
+                }
             }
 
         } else {
             // null
-            trace.put(key, JSONObject.NULL);
+            trace.putNull(key);
+        }
+    }
+
+    /**
+     * What needs to be traced of a class: its inspector methods and its public fields, both by name
+     * (the same order as the tracing agent, which matters for the limits).
+     */
+    private class ClassMembers {
+
+        /**
+         * The inspector methods declared in the class; only the overloads without arguments, the others can't be invoked.
+         */
+        final List<Method> inspectorMethods = new ArrayList<>();
+
+        /**
+         * The public fields of the class (including the inherited ones).
+         */
+        final List<Field> publicFields = new ArrayList<>();
+
+        /**
+         * Look up the members of a class.
+         *
+         * @param classType The class.
+         */
+        ClassMembers(ClassType classType) {
+            for (Method method : classType.methods()) {
+                if (Observer.this.inspectorMethods.contains(classType.name() + "." + method.name())
+                        && method.argumentTypeNames().isEmpty()) {
+                    inspectorMethods.add(method);
+                }
+            }
+            for (Field field : classType.visibleFields()) {
+                if (field.isPublic()) {
+                    publicFields.add(field);
+                }
+            }
+            inspectorMethods.sort(Comparator.comparing(Method::name));
+            publicFields.sort(Comparator.comparing(Field::name));
         }
     }
 
@@ -0,0 +1,145 @@
+package lumutator.tracer.debugger;
+
+import lumutator.Configuration;
+
+import java.io.*;
+import java.nio.charset.Charset;
+
+/**
+ * OutputDrainer: keep reading the output (stdout and stderr) of a debuggee in the background.
+ * <p>
+ * Nobody reads the output of a launched VM otherwise; once the pipe buffer of the OS is full, the debuggee blocks
+ * on its next print, which stalls the tracing. Only the last part of the output is kept (in a ring buffer),
+ * unless "outputLogDir" is set in the configuration: then all the output is also written to a log file in there.
+ */
+class OutputDrainer {
+
+    /**
+     * How much of the output is kept in memory, in bytes.
+     */
+    static final int capacity = 64 * 1024;
+
+    /**
+     * The last part of the output.
+     */
+    private final byte[] buffer = new byte[capacity];
+
+    /**
+     * Where the next byte is written to in the buffer.
+     */
+    private int position = 0;
+
+    /**
+     * Is the buffer full (so the oldest byte is at the current position)?
+     */
+    private boolean full = false;
+
+    /**
+     * The log file, {@code null} if the output isn't logged.
+     */
+    private final OutputStream log;
+
+    /**
+     * The number of streams that are still open; the log file is closed once both stdout and stderr are closed.
+     */
+    private int openStreams = 2;
+
+    /**
+     * Start draining the output of a process.
+     *
+     * @param process The process of the debuggee.
+     * @param name    Name of the debuggee (e.g. the test class), used in the name of the log file.
+     */
+    OutputDrainer(Process process, String name) {
+        Configuration config = Configuration.getInstance();
+        OutputStream logFile = null;
+        if (config.hasParameter("outputLogDir")) {
+            try {
+                File directory = new File(config.get("outputLogDir"));
+                directory.mkdirs();
+                logFile = new BufferedOutputStream(
+                        new FileOutputStream(new File(directory, String.format("%s.%d.log", name, process.pid())))
+                );
+            } catch (IOException e) {
+                throw new RuntimeException("Failed creating the log file of " + name + ": " + e.getMessage());
+            }
+        }
+        this.log = logFile;
+
+        startReader(process.getInputStream(), name + " stdout");
+        startReader(process.getErrorStream(), name + " stderr");
+    }
+
+    /**
+     * Get the last part of the output.
+     *
+     * @return The output (at most {@link #capacity} bytes).
+     */
+    synchronized String getOutput() {
+        if (!full) {
+            return new String(buffer, 0, position, Charset.defaultCharset());
+        }
+        byte[] output = new byte[capacity];
+        System.arraycopy(buffer, position, output, 0, capacity - position);
+        System.arraycopy(buffer, 0, output, capacity - position, position);
+        return new String(output, Charset.defaultCharset());
+    }
+
+    /**
+     * Start reading a stream of the process in the background, until the process closes it (e.g. when it exits).
+     *
+     * @param stream The stream.
+     * @param name   Name of the thread.
+     */
+    private void startReader(InputStream stream, String name) {
+        Thread reader = new Thread(() -> {
+            byte[] bytes = new byte[8192];
+            try {
+                int length;
+                while ((length = stream.read(bytes)) != -1) {
+                    append(bytes, length);
+                }
+            } catch (IOException e) {
+                // Process is gone
+            }
+            closeStream();
+        }, name);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * A stream of the process is closed; close the log file once all of them are closed.
+     */
+    private synchronized void closeStream() {
+        if (--openStreams == 0) {
+            try (OutputStream closing = log) {
+                // Flushed and closed when leaving the block (nothing happens if the output isn't logged)
+            } catch (IOException e) {
+                // Only the end of the log file might be missing
+            }
+        }
+    }
+
+    /**
+     * Add output to the buffer (overwriting the oldest output if it's full) and to the log file.
+     *
+     * @param bytes  The output.
+     * @param length The number of bytes of the output.
+     */
+    private synchronized void append(byte[] bytes, int length) {
+        for (int i = Math.max(0, length - capacity); i < length; i++) {
+            buffer[position] = bytes[i];
+            position = (position + 1) % capacity;
+            full |= position == 0;
+        }
+        if (log != null) {
+            try {
+                log.write(bytes, 0, length);
+            } catch (IOException e) {
+                // Only the log file is incomplete, the output is still drained
+            }
+        }
+    }
+
+}
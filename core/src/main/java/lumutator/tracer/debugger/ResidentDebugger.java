@@ -0,0 +1,336 @@
+package lumutator.tracer.debugger;
+
+import com.sun.jdi.*;
+import com.sun.jdi.connect.IllegalConnectorArgumentsException;
+import com.sun.jdi.connect.VMStartException;
+import com.sun.jdi.event.*;
+import com.sun.jdi.request.EventRequest;
+import com.sun.jdi.request.EventRequestManager;
+import lumutator.tracer.runner.ResidentRunner;
+import org.apache.commons.io.FileUtils;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Debugger that keeps a single VM alive to trace many test classes, instead of launching a new VM for each test class.
+ * The VM runs a {@link ResidentRunner}, which gets its commands over a local socket; the classes under test can be
+ * swapped in between the test runs with {@link VirtualMachine#redefineClasses(Map)}.
+ * <p>
+ * Note that static state is shared between the runs, just like the test classes in a test suite.
+ */
+public class ResidentDebugger extends Debugger {
+
+    /**
+     * Directory that contains the class file of the {@link ResidentRunner}, so it can be added to the classpath of the VM.
+     */
+    private static Path runnerDirectory;
+
+    /**
+     * How long to wait for the runner to connect, in milliseconds.
+     */
+    private static final long connectTimeout = 60000;
+
+    /**
+     * Socket where the runner connects to.
+     */
+    private final ServerSocket serverSocket;
+
+    /**
+     * Replies of the runner.
+     */
+    private BufferedReader replies;
+
+    /**
+     * Commands for the runner.
+     */
+    private PrintWriter commands;
+
+    /**
+     * Set up the connector and some options.
+     *
+     * @param classPath The classpath of the VM.
+     */
+    public ResidentDebugger(String classPath) {
+        super("", null, classPath);
+        try {
+            serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+            serverSocket.setSoTimeout(1000);    // Check in between if the VM is still running
+        } catch (IOException e) {
+            throw new RuntimeException("Failed opening a socket for the resident runner: " + e.getMessage());
+        }
+        env.get("main").setValue(ResidentRunner.class.getName() + " " + serverSocket.getLocalPort());
+        env.get("options").setValue(String.format(
+                "-classpath %s%s%s ", getRunnerDirectory(), File.pathSeparator, classPath
+        ));
+    }
+
+    /**
+     * Start the VM and wait until the runner is connected.
+     */
+    public void start() {
+        try {
+            launch("resident-" + serverSocket.getLocalPort());
+            vm.resume();
+
+            Socket socket = accept();
+            replies = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            commands = new PrintWriter(socket.getOutputStream(), true);
+
+        } catch (IOException | IllegalConnectorArgumentsException | VMStartException e) {
+            throw new RuntimeException("Failed starting the resident VM: " + e.getMessage() + "\n" + getOutput());
+        }
+    }
+
+    /**
+     * Wait until the runner connects, as long as the VM is running (e.g. it exits right away if the classpath is wrong).
+     *
+     * @return The socket of the runner.
+     * @throws IOException If the VM exited or the runner didn't connect in time.
+     */
+    private Socket accept() throws IOException {
+        final long deadline = System.currentTimeMillis() + connectTimeout;
+        while (true) {
+            try {
+                return serverSocket.accept();
+            } catch (SocketTimeoutException e) {
+                if (!isAlive()) {
+                    throw new IOException("The VM exited before the runner connected (exit code " + vm.process().exitValue() + ")");
+                } else if (System.currentTimeMillis() >= deadline) {
+                    throw new IOException("The runner didn't connect within " + connectTimeout / 1000 + " seconds");
+                }
+            }
+        }
+    }
+
+    /**
+     * Check if the VM is (still) running.
+     *
+     * @return True if the VM is running.
+     */
+    public boolean isAlive() {
+        return vm != null && vm.process() != null && vm.process().isAlive();
+    }
+
+    /**
+     * Replace the definition of a class in the VM.
+     *
+     * @param className Name of the class, including its package.
+     * @param classFile The bytes of the new class file.
+     * @return True if the class has been redefined, false if the VM can't redefine the class (e.g. the shape of the class changed).
+     */
+    public boolean redefineClass(String className, byte[] classFile) {
+        if (!vm.canRedefineClasses()) {
+            return false;
+        }
+        try {
+            vm.redefineClasses(Collections.singletonMap(loadClass(className), classFile));
+            return true;
+        } catch (UnsupportedOperationException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Check if a class has static state that a test run can change, i.e. a static field that isn't a constant
+     * (a final field of a primitive type or a string).
+     *
+     * @param className Name of the class, including its package.
+     * @return True if the class has static state.
+     */
+    public boolean hasStaticState(String className) {
+        for (Field field : loadClass(className).fields()) {
+            if (field.isStatic() && !(field.isFinal() && isConstantType(field.typeName()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check if a type can only hold constants once it's final: a primitive type or a string.
+     *
+     * @param typeName The name of the type.
+     * @return True if it's a primitive type or a string.
+     */
+    private static boolean isConstantType(String typeName) {
+        return typeName.equals("java.lang.String") || Arrays.asList(
+                "boolean", "byte", "char", "short", "int", "long", "float", "double"
+        ).contains(typeName);
+    }
+
+    /**
+     * Run and trace a test class.
+     *
+     * @param classToDebug The test class to run.
+     * @param breakpoints  The methods where a breakpoint should be added.
+     * @param observer     Observer to be used at each breakpoint to observe the current state.
+     */
+    public void run(String classToDebug, List<String> breakpoints, Observer observer) {
+        run(classToDebug, null, breakpoints, observer);
+    }
+
+    /**
+     * Run and trace a single test method (or a whole test class).
+     *
+     * @param classToDebug The test class to run.
+     * @param testMethod   The test method to run, {@code null} to run all the tests of the test class.
+     * @param breakpoints  The methods where a breakpoint should be added.
+     * @param observer     Observer to be used at each breakpoint to observe the current state.
+     */
+    public void run(String classToDebug, String testMethod, List<String> breakpoints, Observer observer) {
+        this.classToDebug = classToDebug;
+        this.breakpoints = breakpoints;
+        this.observer = observer;
+
+        EventRequestManager requestManager = vm.eventRequestManager();
+        List<EventRequest> requests = new ArrayList<>();
+        ScheduledFuture<?> kill = null;
+        timedOut = false;
+        try {
+            // Start with a clean slate, just like a new VM would
+            requestManager.deleteEventRequests(requestManager.stepRequests());
+
+            // Set a breakpoint at the start of each method
+            requests.addAll(createBreakpoints(loadClass(classToDebug)));
+            if (elidePrefix()) {
+                requests.addAll(createMutationRequests());
+            }
+
+            if (coverage != null) {
+                requests.addAll(createCoverageRequests());
+            }
+
+            // Let the runner run the tests and handle the events until the runner is done
+            commands.println("run " + classToDebug + (testMethod != null ? "#" + testMethod : ""));
+            kill = startWatchdog(vm.process());
+            while (true) {
+                EventSet eventSet = vm.eventQueue().remove(10);
+                if (eventSet != null) {
+                    for (Event event : eventSet) {
+                        if (event instanceof ClassPrepareEvent) {
+                            requests.addAll(createMutationBreakpoints(((ClassPrepareEvent) event).referenceType()));
+                        } else if (event instanceof BreakpointEvent || event instanceof StepEvent) {
+                            handleStep((LocatableEvent) event);
+                        } else if (event instanceof MethodEntryEvent) {
+                            handleMethodEntry((MethodEntryEvent) event);
+                        }
+                    }
+                    eventSet.resume();
+                } else if (replies.ready()) {
+                    // Every thread that hit an event is suspended until it's handled, so all the events are handled by now
+                    reply("done");
+                    break;
+                }
+            }
+
+        } catch (VMDisconnectedException e) {
+            // VM is disconnected, e.g. a test called System.exit()
+
+        } catch (InterruptedException | AbsentInformationException | IOException e) {
+            if (!timedOut) {
+                throw new RuntimeException("Failed running " + classToDebug + ": " + e.getMessage());
+            }
+            // else: the VM has been killed because it took too long
+
+        } finally {
+            if (kill != null) {
+                kill.cancel(false);
+            }
+            if (isAlive()) {
+                requestManager.deleteEventRequests(requests);
+            }
+        }
+    }
+
+    /**
+     * Stop tracing: the VM keeps running for the next test classes, so only the breakpoints and steps are disabled;
+     * the remaining tests of the current run are run without tracing them.
+     */
+    @Override
+    void stop() {
+        EventRequestManager requestManager = vm.eventRequestManager();
+        requestManager.breakpointRequests().forEach(EventRequest::disable);
+        requestManager.stepRequests().forEach(EventRequest::disable);
+    }
+
+    /**
+     * Close the VM and the socket.
+     */
+    @Override
+    public void close() {
+        super.close();
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // Nothing left to clean up
+        }
+    }
+
+    /**
+     * Get a class from the VM; the runner loads (and initializes) the class if it isn't loaded yet.
+     *
+     * @param className Name of the class, including its package.
+     * @return The class.
+     */
+    private ReferenceType loadClass(String className) {
+        try {
+            if (vm.classesByName(className).isEmpty()) {
+                commands.println("load " + className);
+                reply("loaded");
+            }
+            return vm.classesByName(className).get(0);
+
+        } catch (IOException e) {
+            throw new RuntimeException("Failed loading " + className + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Wait for the reply of the runner.
+     *
+     * @param expected The expected reply.
+     * @return The complete reply.
+     * @throws IOException If the runner replied with something else.
+     */
+    private String reply(String expected) throws IOException {
+        String reply = replies.readLine();
+        if (reply == null) {
+            throw new VMDisconnectedException();
+        } else if (!reply.startsWith(expected)) {
+            throw new IOException(reply);
+        }
+        return reply;
+    }
+
+    /**
+     * Get the directory with the class file of the {@link ResidentRunner}; created the first time it's needed.
+     *
+     * @return The directory.
+     */
+    private static synchronized Path getRunnerDirectory() {
+        if (runnerDirectory == null) {
+            final String classFile = ResidentRunner.class.getName().replace('.', '/') + ".class";
+            try (InputStream inputStream = ResidentRunner.class.getClassLoader().getResourceAsStream(classFile)) {
+                Path directory = Files.createTempDirectory("lumutator-runner");
+                Path target = directory.resolve(classFile);
+                Files.createDirectories(target.getParent());
+                Files.copy(inputStream, target, StandardCopyOption.REPLACE_EXISTING);
+                FileUtils.forceDeleteOnExit(directory.toFile());
+                runnerDirectory = directory;
+            } catch (IOException e) {
+                throw new RuntimeException("Failed extracting the resident runner: " + e.getMessage());
+            }
+        }
+        return runnerDirectory;
+    }
+
+}
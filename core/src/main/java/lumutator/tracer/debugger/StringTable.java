@@ -0,0 +1,62 @@
+package lumutator.tracer.debugger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * StringTable: intern the strings of a {@link Trace} (test files, expressions and string values),
+ * so each distinct string is only stored once and the trace can refer to it with a small number.
+ * <p>
+ * The traces of the mutants use the table of the original trace, so strings can be compared by their id;
+ * the workers trace the mutants at the same time, hence the synchronization.
+ */
+public class StringTable {
+
+    /**
+     * All the strings, the index is the id of the string.
+     */
+    private final List<String> strings = new ArrayList<>();
+
+    /**
+     * The id of each string.
+     */
+    private final Map<String, Integer> ids = new HashMap<>();
+
+    /**
+     * Get the id of a string, the string is added to the table if it isn't in it yet.
+     *
+     * @param string The string.
+     * @return The id of the string.
+     */
+    public synchronized int id(String string) {
+        Integer id = ids.get(string);
+        if (id == null) {
+            id = strings.size();
+            strings.add(string);
+            ids.put(string, id);
+        }
+        return id;
+    }
+
+    /**
+     * Get a string.
+     *
+     * @param id The id of the string.
+     * @return The string.
+     */
+    public synchronized String get(int id) {
+        return strings.get(id);
+    }
+
+    /**
+     * Get the number of strings in the table.
+     *
+     * @return The number of strings.
+     */
+    public synchronized int size() {
+        return strings.size();
+    }
+
+}
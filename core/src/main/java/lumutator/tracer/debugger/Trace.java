@@ -0,0 +1,863 @@
+package lumutator.tracer.debugger;
+
+import lumutator.tracer.agent.Truncated;
+import lumutator.util.Hash;
+import org.json.JSONObject;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Trace: the state at each observed line of each test file (test file => line => expression => value).
+ * <p>
+ * All the strings are interned in a {@link StringTable} and the state at a line is stored in primitive columns
+ * (see {@link Line}), which takes a lot less memory than nested JSON objects with boxed values.
+ * A trace can be stored in a compact binary format with {@link #write(OutputStream)}, in which each line only stores
+ * what changed since the previous line; {@link #toJSON()} is only meant for debugging.
+ */
+public class Trace {
+
+    /**
+     * First bytes of the binary format ("LUTR").
+     */
+    private static final int magic = 0x4C555452;
+
+    /**
+     * Version of the binary format.
+     */
+    private static final int version = 5;
+
+    /**
+     * The strings of the trace.
+     */
+    private final StringTable strings;
+
+    /**
+     * The state at each line for each test file (the canonical path of the test file).
+     */
+    private final Map<String, Map<Integer, Line>> testFiles = new LinkedHashMap<>();
+
+    /**
+     * How long it took to trace each test file, in milliseconds (only if it's known).
+     */
+    private final Map<String, Long> durations = new HashMap<>();
+
+    /**
+     * Create an empty trace.
+     */
+    public Trace() {
+        this(new StringTable());
+    }
+
+    /**
+     * Create an empty trace.
+     *
+     * @param strings The strings of the trace.
+     */
+    public Trace(StringTable strings) {
+        this.strings = strings;
+    }
+
+    /**
+     * Get the strings of the trace.
+     *
+     * @return The strings.
+     */
+    public StringTable getStrings() {
+        return strings;
+    }
+
+    /**
+     * Add the trace of a test file.
+     *
+     * @param testFile The canonical path of the test file.
+     * @param lines    The state at each line, built with the strings of this trace.
+     */
+    public void put(String testFile, Map<Integer, Line> lines) {
+        testFiles.put(strings.get(strings.id(testFile)), lines);
+    }
+
+    /**
+     * Get the trace of a test file.
+     *
+     * @param testFile The canonical path of the test file.
+     * @return The state at each line, {@code null} if the test file isn't traced.
+     */
+    public Map<Integer, Line> get(String testFile) {
+        return testFiles.get(testFile);
+    }
+
+    /**
+     * Set how long it took to trace a test file.
+     *
+     * @param testFile The canonical path of the test file.
+     * @param duration The duration in milliseconds.
+     */
+    public void setDuration(String testFile, long duration) {
+        durations.put(testFile, duration);
+    }
+
+    /**
+     * Get how long it took to trace a test file.
+     *
+     * @param testFile The canonical path of the test file.
+     * @return The duration in milliseconds, -1 if it's unknown.
+     */
+    public long getDuration(String testFile) {
+        return durations.getOrDefault(testFile, -1L);
+    }
+
+    /**
+     * Get all the traced test files.
+     *
+     * @return The canonical paths of the test files.
+     */
+    public Set<String> getTestFiles() {
+        return Collections.unmodifiableSet(testFiles.keySet());
+    }
+
+    /**
+     * Get the number of traced test files.
+     *
+     * @return The number of test files.
+     */
+    public int size() {
+        return testFiles.size();
+    }
+
+    /**
+     * Compute a hash of the trace of a test file; unlike the ids of the strings, it's the same in every run.
+     *
+     * @param testFile The canonical path of the test file.
+     * @return The hash, "missing" if the test file isn't traced.
+     */
+    public String hash(String testFile) {
+        final Map<Integer, Line> lines = testFiles.get(testFile);
+        if (lines == null) {
+            return "missing";
+        }
+
+        StringBuilder contents = new StringBuilder();
+        for (Map.Entry<Integer, Line> line : new TreeMap<>(lines).entrySet()) {
+            final Line state = line.getValue();
+            List<String> values = new ArrayList<>(state.size());
+            for (int i = 0; i < state.size(); i++) {
+                values.add(String.format(
+                        "%s=%d:%s",
+                        strings.get(state.expressions[i]),
+                        state.types[i],
+                        state.hasString(i) ? strings.get((int) state.values[i]) : state.values[i]
+                ));
+            }
+            Collections.sort(values);
+            contents.append(line.getKey()).append(values).append('\n');
+        }
+        return Hash.sha256(contents.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Export the trace to JSON, e.g. for debugging.
+     *
+     * @return The trace in form of a JSON object.
+     */
+    public JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        for (Map.Entry<String, Map<Integer, Line>> testFile : testFiles.entrySet()) {
+            json.put(testFile.getKey(), toJSON(testFile.getValue(), strings));
+        }
+        return json;
+    }
+
+    /**
+     * Export the trace of a single test file to JSON.
+     *
+     * @param lines   The state at each line.
+     * @param strings The strings of the trace.
+     * @return The trace of the test file in form of a JSON object (line => expression => value).
+     */
+    static JSONObject toJSON(Map<Integer, Line> lines, StringTable strings) {
+        JSONObject json = new JSONObject();
+        for (Map.Entry<Integer, Line> line : lines.entrySet()) {
+            json.put(String.valueOf(line.getKey()), line.getValue().toJSON(strings));
+        }
+        return json;
+    }
+
+    /**
+     * Store the trace in the binary format: the string table, followed by the lines and the duration of each test file;
+     * all numbers are variable-length encoded. The lines of a test file are sorted on their line number and only store
+     * the difference with the previous line (see {@link #writeLine(DataOutputStream, Line, Line)}), as most of the
+     * state usually stays the same from one line to the next.
+     *
+     * @param outputStream Where the trace is written to.
+     * @throws IOException If the trace could not be written.
+     */
+    public void write(OutputStream outputStream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+        out.writeInt(magic);
+        writeVarLong(out, version);
+
+        final int stringCount = strings.size();
+        writeVarLong(out, stringCount);
+        for (int i = 0; i < stringCount; i++) {
+            byte[] bytes = strings.get(i).getBytes(StandardCharsets.UTF_8);
+            writeVarLong(out, bytes.length);
+            out.write(bytes);
+        }
+
+        writeVarLong(out, testFiles.size());
+        for (Map.Entry<String, Map<Integer, Line>> testFile : testFiles.entrySet()) {
+            writeVarLong(out, strings.id(testFile.getKey()));
+            writeVarLong(out, testFile.getValue().size());
+            Line previous = Line.EMPTY;
+            for (Map.Entry<Integer, Line> entry : new TreeMap<>(testFile.getValue()).entrySet()) {
+                writeVarLong(out, entry.getKey());
+                writeLine(out, entry.getValue(), previous);
+                previous = entry.getValue();
+            }
+            writeVarLong(out, getDuration(testFile.getKey()));
+        }
+        out.flush();
+    }
+
+    /**
+     * Read a trace in the binary format.
+     *
+     * @param inputStream Where the trace is read from.
+     * @return The trace.
+     * @throws IOException If the trace could not be read or isn't in the binary format.
+     */
+    public static Trace read(InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream));
+        if (in.readInt() != magic || readVarLong(in) != version) {
+            throw new IOException("Not a trace in the binary format (version " + version + ")");
+        }
+
+        Trace trace = new Trace();
+        final long stringCount = readVarLong(in);
+        for (long i = 0; i < stringCount; i++) {
+            byte[] bytes = new byte[(int) readVarLong(in)];
+            in.readFully(bytes);
+            trace.strings.id(new String(bytes, StandardCharsets.UTF_8));
+        }
+
+        final long testFileCount = readVarLong(in);
+        for (long i = 0; i < testFileCount; i++) {
+            final String testFile = trace.strings.get((int) readVarLong(in));
+            final int lineCount = (int) readVarLong(in);
+            Map<Integer, Line> lines = new HashMap<>(lineCount * 2);
+            Line previous = Line.EMPTY;
+            for (int j = 0; j < lineCount; j++) {
+                final int lineNr = (int) readVarLong(in);
+                previous = readLine(in, previous);
+                lines.put(lineNr, previous);
+            }
+            trace.testFiles.put(testFile, lines);
+
+            final long duration = readVarLong(in);
+            if (duration >= 0) {
+                trace.durations.put(testFile, duration);
+            }
+        }
+
+        return trace;
+    }
+
+    /**
+     * Write the state at a line as the difference with the state at the previous line: the number of expressions that
+     * are new or have another value, followed by those expressions and their values, then the number of expressions
+     * that are no longer there, followed by those expressions.
+     *
+     * @param out      Where the state is written to.
+     * @param line     The state at the line.
+     * @param previous The state at the previous line.
+     * @throws IOException If the state could not be written.
+     */
+    private static void writeLine(DataOutputStream out, Line line, Line previous) throws IOException {
+        List<Integer> changed = new ArrayList<>();
+        List<Integer> removed = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < line.size() || j < previous.size()) {
+            if (j == previous.size() || (i < line.size() && line.expressions[i] < previous.expressions[j])) {
+                changed.add(i++);
+            } else if (i == line.size() || line.expressions[i] > previous.expressions[j]) {
+                removed.add(previous.expressions[j++]);
+            } else {
+                if (line.types[i] != previous.types[j] || line.values[i] != previous.values[j]) {
+                    changed.add(i);
+                }
+                i++;
+                j++;
+            }
+        }
+
+        writeVarLong(out, changed.size());
+        for (int index : changed) {
+            writeVarLong(out, line.expressions[index]);
+            out.writeByte(line.types[index]);
+            switch (line.types[index]) {
+                case Line.BOOLEAN:
+                case Line.INT:
+                case Line.CHAR:
+                case Line.LONG:
+                case Line.STRING:
+                case Line.TRUNCATED:
+                    writeVarLong(out, line.values[index]);
+                    break;
+                case Line.FLOAT:
+                    out.writeInt((int) line.values[index]);
+                    break;
+                case Line.DOUBLE:
+                    out.writeLong(line.values[index]);
+                    break;
+                default:
+                    // null => no value
+            }
+        }
+        writeVarLong(out, removed.size());
+        for (int expression : removed) {
+            writeVarLong(out, expression);
+        }
+    }
+
+    /**
+     * Read the state at a line, written with {@link #writeLine(DataOutputStream, Line, Line)}, and reconstruct
+     * the full state from the state at the previous line.
+     *
+     * @param in       Where the state is read from.
+     * @param previous The state at the previous line.
+     * @return The state at the line; the state at the previous line itself if nothing changed.
+     * @throws IOException If the state could not be read.
+     */
+    private static Line readLine(DataInputStream in, Line previous) throws IOException {
+        final int changedCount = (int) readVarLong(in);
+        int[] changedExpressions = new int[changedCount];
+        byte[] changedTypes = new byte[changedCount];
+        long[] changedValues = new long[changedCount];
+        for (int k = 0; k < changedCount; k++) {
+            changedExpressions[k] = (int) readVarLong(in);
+            changedTypes[k] = in.readByte();
+            switch (changedTypes[k]) {
+                case Line.BOOLEAN:
+                case Line.INT:
+                case Line.CHAR:
+                case Line.LONG:
+                case Line.STRING:
+                case Line.TRUNCATED:
+                    changedValues[k] = readVarLong(in);
+                    break;
+                case Line.FLOAT:
+                    changedValues[k] = in.readInt();
+                    break;
+                case Line.DOUBLE:
+                    changedValues[k] = in.readLong();
+                    break;
+                default:
+                    // null => no value
+            }
+        }
+        final int removedCount = (int) readVarLong(in);
+        Set<Integer> removed = new HashSet<>(removedCount * 2);
+        for (int k = 0; k < removedCount; k++) {
+            removed.add((int) readVarLong(in));
+        }
+        if (changedCount == 0 && removedCount == 0) {
+            return previous;
+        }
+
+        // Merge the previous state with the changes, both are sorted on their expressions
+        final int maxSize = previous.size() + changedCount;
+        int[] expressions = new int[maxSize];
+        byte[] types = new byte[maxSize];
+        long[] values = new long[maxSize];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < changedCount || j < previous.size()) {
+            if (j == previous.size() || (i < changedCount && changedExpressions[i] <= previous.expressions[j])) {
+                if (j < previous.size() && changedExpressions[i] == previous.expressions[j]) {
+                    j++;
+                }
+                expressions[size] = changedExpressions[i];
+                types[size] = changedTypes[i];
+                values[size++] = changedValues[i++];
+            } else {
+                if (!removed.contains(previous.expressions[j])) {
+                    expressions[size] = previous.expressions[j];
+                    types[size] = previous.types[j];
+                    values[size++] = previous.values[j];
+                }
+                j++;
+            }
+        }
+        return new Line(Arrays.copyOf(expressions, size), Arrays.copyOf(types, size), Arrays.copyOf(values, size));
+    }
+
+    /**
+     * Write a number in a variable-length (zigzag) encoding: 7 bits per byte, small numbers only take one byte.
+     *
+     * @param out   Where the number is written to.
+     * @param value The number.
+     * @throws IOException If the number could not be written.
+     */
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            out.writeByte((int) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        out.writeByte((int) zigzag);
+    }
+
+    /**
+     * Read a number in the variable-length (zigzag) encoding.
+     *
+     * @param in Where the number is read from.
+     * @return The number.
+     * @throws IOException If the number could not be read.
+     */
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long zigzag = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final byte b = in.readByte();
+            zigzag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw new IOException("Malformed variable-length number");
+    }
+
+    /**
+     * The state at a single line: the value of each expression, stored in primitive columns and sorted on the
+     * id of the expression, so the same line of two traces (with the same strings) can be compared in a single pass.
+     */
+    public static class Line {
+
+        /**
+         * Type of a null value (or void).
+         */
+        static final byte NULL = 0;
+
+        /**
+         * Type of a boolean value.
+         */
+        static final byte BOOLEAN = 1;
+
+        /**
+         * Type of an int value (also byte and short).
+         */
+        static final byte INT = 2;
+
+        /**
+         * Type of a long value.
+         */
+        static final byte LONG = 3;
+
+        /**
+         * Type of a float value, stored as its bits.
+         */
+        static final byte FLOAT = 4;
+
+        /**
+         * Type of a double value, stored as its bits.
+         */
+        static final byte DOUBLE = 5;
+
+        /**
+         * Type of a string value, stored as the id of the string.
+         */
+        static final byte STRING = 6;
+
+        /**
+         * Type of a char value, so it's still a character in the assertions (and not its code).
+         */
+        static final byte CHAR = 7;
+
+        /**
+         * Type of a value that is cut off by the limits, stored as the id of what is left of it (see {@link Truncated}).
+         */
+        static final byte TRUNCATED = 8;
+
+        /**
+         * The state without any expressions.
+         */
+        static final Line EMPTY = new Line(new int[0], new byte[0], new long[0]);
+
+        /**
+         * The id of each expression, sorted.
+         */
+        private final int[] expressions;
+
+        /**
+         * The type of the value of each expression.
+         */
+        private final byte[] types;
+
+        /**
+         * The value of each expression, encoded in a long (see the types).
+         */
+        private final long[] values;
+
+        /**
+         * Constructor.
+         *
+         * @param expressions The id of each expression, sorted.
+         * @param types       The type of the value of each expression.
+         * @param values      The value of each expression.
+         */
+        private Line(int[] expressions, byte[] types, long[] values) {
+            this.expressions = expressions;
+            this.types = types;
+            this.values = values;
+        }
+
+        /**
+         * Get the number of expressions.
+         *
+         * @return The number of expressions.
+         */
+        public int size() {
+            return expressions.length;
+        }
+
+        /**
+         * Get the id of an expression.
+         *
+         * @param index The index of the expression.
+         * @return The id of the expression.
+         */
+        int getExpression(int index) {
+            return expressions[index];
+        }
+
+        /**
+         * Check if the value of an expression is stored as the id of a string.
+         *
+         * @param index The index of the expression.
+         * @return True if it's a string or a truncated value.
+         */
+        boolean hasString(int index) {
+            return types[index] == STRING || types[index] == TRUNCATED;
+        }
+
+        /**
+         * Check if the state is exactly the same as another state: the same expressions, with the same types and values.
+         *
+         * @param other The other state.
+         * @return True if the states are the same.
+         */
+        public boolean sameState(Line other) {
+            return this == other || (Arrays.equals(expressions, other.expressions)
+                    && Arrays.equals(types, other.types) && Arrays.equals(values, other.values));
+        }
+
+        /**
+         * Check if the value of an expression equals the value of an expression of another line,
+         * just like two JSON values are compared: numbers are compared by their value, no matter their type.
+         *
+         * @param index      The index of the expression.
+         * @param other      The other line.
+         * @param otherIndex The index of the expression in the other line.
+         * @return True if the values are equal.
+         */
+        boolean valueEquals(int index, Line other, int otherIndex) {
+            final byte type = types[index];
+            final byte otherType = other.types[otherIndex];
+            if (isNumber(type) && isNumber(otherType) && (type != otherType || type == FLOAT || type == DOUBLE)) {
+                final double value = toDouble(type, values[index]);
+                final double otherValue = toDouble(otherType, other.values[otherIndex]);
+                return value == otherValue || (Double.isNaN(value) && Double.isNaN(otherValue));
+            }
+            return type == otherType && values[index] == other.values[otherIndex];
+        }
+
+        /**
+         * Get the value of an expression as an object, as it would be in a JSON object;
+         * a value that is cut off by the limits is a {@link Truncated} value.
+         *
+         * @param index   The index of the expression.
+         * @param strings The strings of the trace.
+         * @return The value.
+         */
+        Object getValue(int index, StringTable strings) {
+            final long value = values[index];
+            switch (types[index]) {
+                case BOOLEAN:
+                    return value != 0;
+                case INT:
+                    return (int) value;
+                case CHAR:
+                    return (char) value;
+                case LONG:
+                    return value;
+                case FLOAT:
+                    final float floatValue = Float.intBitsToFloat((int) value);
+                    return Float.isFinite(floatValue) ? (Object) floatValue : String.valueOf(floatValue);
+                case DOUBLE:
+                    final double doubleValue = Double.longBitsToDouble(value);
+                    return Double.isFinite(doubleValue) ? (Object) doubleValue : String.valueOf(doubleValue);
+                case STRING:
+                    return strings.get((int) value);
+                case TRUNCATED:
+                    return new Truncated(strings.get((int) value));
+                default:
+                    return JSONObject.NULL;
+            }
+        }
+
+        /**
+         * Export the state to JSON; a truncated value becomes what is left of it.
+         *
+         * @param strings The strings of the trace.
+         * @return The state in form of a JSON object (expression => value).
+         */
+        JSONObject toJSON(StringTable strings) {
+            JSONObject json = new JSONObject();
+            for (int i = 0; i < expressions.length; i++) {
+                final Object value = getValue(i, strings);
+                json.put(strings.get(expressions[i]), value instanceof Truncated ? value.toString() : value);
+            }
+            return json;
+        }
+
+        /**
+         * Check if a type is a number.
+         *
+         * @param type The type.
+         * @return True if it's a number.
+         */
+        private static boolean isNumber(byte type) {
+            return type == INT || type == LONG || type == FLOAT || type == DOUBLE;
+        }
+
+        /**
+         * Get a number as a double.
+         *
+         * @param type  The type of the number.
+         * @param value The encoded number.
+         * @return The number.
+         */
+        private static double toDouble(byte type, long value) {
+            switch (type) {
+                case FLOAT:
+                    return Float.intBitsToFloat((int) value);
+                case DOUBLE:
+                    return Double.longBitsToDouble(value);
+                default:
+                    return value;
+            }
+        }
+
+        /**
+         * Builder for the state at a line; if an expression is added multiple times, only the last value is kept.
+         */
+        public static class Builder {
+
+            /**
+             * The strings of the trace.
+             */
+            private final StringTable strings;
+
+            /**
+             * The index of each expression (id) in the columns.
+             */
+            private final Map<Integer, Integer> indices = new HashMap<>();
+
+            /**
+             * The id of each expression.
+             */
+            private int[] expressions = new int[8];
+
+            /**
+             * The type of the value of each expression.
+             */
+            private byte[] types = new byte[8];
+
+            /**
+             * The value of each expression.
+             */
+            private long[] values = new long[8];
+
+            /**
+             * Constructor.
+             *
+             * @param strings The strings of the trace.
+             */
+            public Builder(StringTable strings) {
+                this.strings = strings;
+            }
+
+            /**
+             * Add a boolean value.
+             *
+             * @param expression The expression.
+             * @param value      The value.
+             * @return This builder.
+             */
+            public Builder put(String expression, boolean value) {
+                return put(expression, BOOLEAN, value ? 1 : 0);
+            }
+
+            /**
+             * Add an int value (also used for byte and short).
+             *
+             * @param expression The expression.
+             * @param value      The value.
+             * @return This builder.
+             */
+            public Builder put(String expression, int value) {
+                return put(expression, INT, value);
+            }
+
+            /**
+             * Add a char value.
+             *
+             * @param expression The expression.
+             * @param value      The value.
+             * @return This builder.
+             */
+            public Builder put(String expression, char value) {
+                return put(expression, CHAR, value);
+            }
+
+            /**
+             * Add a long value.
+             *
+             * @param expression The expression.
+             * @param value      The value.
+             * @return This builder.
+             */
+            public Builder put(String expression, long value) {
+                return put(expression, LONG, value);
+            }
+
+            /**
+             * Add a float value.
+             *
+             * @param expression The expression.
+             * @param value      The value.
+             * @return This builder.
+             */
+            public Builder put(String expression, float value) {
+                return put(expression, FLOAT, Float.floatToIntBits(value));
+            }
+
+            /**
+             * Add a double value.
+             *
+             * @param expression The expression.
+             * @param value      The value.
+             * @return This builder.
+             */
+            public Builder put(String expression, double value) {
+                return put(expression, DOUBLE, Double.doubleToLongBits(value));
+            }
+
+            /**
+             * Add a string value.
+             *
+             * @param expression The expression.
+             * @param value      The value, {@code null} for null.
+             * @return This builder.
+             */
+            public Builder put(String expression, String value) {
+                return value == null ? putNull(expression) : put(expression, STRING, strings.id(value));
+            }
+
+            /**
+             * Add a value that is cut off by the limits (see {@link Truncated}).
+             *
+             * @param expression The expression.
+             * @param value      What is left of the value.
+             * @return This builder.
+             */
+            public Builder putTruncated(String expression, String value) {
+                return put(expression, TRUNCATED, strings.id(value));
+            }
+
+            /**
+             * Add a null (or void) value.
+             *
+             * @param expression The expression.
+             * @return This builder.
+             */
+            public Builder putNull(String expression) {
+                return put(expression, NULL, 0);
+            }
+
+            /**
+             * Get the number of expressions that have been added.
+             *
+             * @return The number of expressions.
+             */
+            public int size() {
+                return indices.size();
+            }
+
+            /**
+             * Check if no value has been added.
+             *
+             * @return True if it's empty.
+             */
+            public boolean isEmpty() {
+                return indices.isEmpty();
+            }
+
+            /**
+             * Build the state at the line.
+             *
+             * @return The state at the line.
+             */
+            public Line build() {
+                final int size = indices.size();
+                Integer[] order = new Integer[size];
+                for (int i = 0; i < size; i++) {
+                    order[i] = i;
+                }
+                Arrays.sort(order, Comparator.comparingInt(i -> expressions[i]));
+
+                int[] sortedExpressions = new int[size];
+                byte[] sortedTypes = new byte[size];
+                long[] sortedValues = new long[size];
+                for (int i = 0; i < size; i++) {
+                    sortedExpressions[i] = expressions[order[i]];
+                    sortedTypes[i] = types[order[i]];
+                    sortedValues[i] = values[order[i]];
+                }
+                return new Line(sortedExpressions, sortedTypes, sortedValues);
+            }
+
+            /**
+             * Add a value.
+             *
+             * @param expression The expression.
+             * @param type       The type of the value.
+             * @param value      The encoded value.
+             * @return This builder.
+             */
+            private Builder put(String expression, byte type, long value) {
+                final int id = strings.id(expression);
+                Integer index = indices.get(id);
+                if (index == null) {
+                    index = indices.size();
+                    if (index == expressions.length) {
+                        expressions = Arrays.copyOf(expressions, index * 2);
+                        types = Arrays.copyOf(types, index * 2);
+                        values = Arrays.copyOf(values, index * 2);
+                    }
+                    indices.put(id, index);
+                    expressions[index] = id;
+                }
+                types[index] = type;
+                values[index] = value;
+                return this;
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,47 @@
+package lumutator.tracer.debugger;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * TraceBuilder: collect the state at each observed line of a test class; used by {@link Observer}.
+ * <p>
+ * Adding the state of a line takes (amortized) constant time, no matter how long the trace already is;
+ * the final trace is only built once it's requested.
+ */
+public class TraceBuilder {
+
+    /**
+     * The state at each line, if a line is visited multiple times, only the last visit is kept.
+     */
+    private final Map<Integer, Trace.Line> lines = new HashMap<>();
+
+    /**
+     * Add the state at a line.
+     *
+     * @param line  The line number.
+     * @param state The state at that line.
+     */
+    public void add(int line, Trace.Line state) {
+        lines.put(line, state);
+    }
+
+    /**
+     * Get the number of lines in the trace.
+     *
+     * @return The number of lines.
+     */
+    public int size() {
+        return lines.size();
+    }
+
+    /**
+     * Build the trace of the test class.
+     *
+     * @return The state at each line (see {@link Trace#put(String, Map)}).
+     */
+    public Map<Integer, Trace.Line> build() {
+        return new HashMap<>(lines);
+    }
+
+}
@@ -0,0 +1,215 @@
+package lumutator.tracer.debugger;
+
+import org.skyscreamer.jsonassert.JSONCompareResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * TraceComparator: compare the trace of a mutant with the original trace while the mutant is being traced;
+ * used by {@link Observer} instead of collecting the whole trace of the mutant.
+ * <p>
+ * The trace only keeps the last visit of each line, so the lines of a traced method can only be compared
+ * once the method is done (a loop might still visit a line again); each traced method only runs once per test class.
+ * The field failures are the same as when the whole traces are compared as JSON objects (LENIENT):
+ * expressions that are only in one of the traces are not compared.
+ * <p>
+ * A state that didn't change from one line to the next is shared by both lines (see {@link Observer} and
+ * {@link Trace#read}), so if both the original and the mutant state of a line are the same as those of the
+ * previously compared line, the differences of that line are reused instead of comparing the states again.
+ */
+public class TraceComparator {
+
+    /**
+     * The trace from the original version of the code.
+     */
+    private final Trace originalTrace;
+
+    /**
+     * The failed comparisons so far.
+     */
+    private final JSONCompareResult comparison = new JSONCompareResult();
+
+    /**
+     * The states of the lines of the current method, that still need to be compared (sorted on the line number,
+     * so consecutive lines that share their states are compared after each other).
+     */
+    private final Map<Integer, Trace.Line> pendingLines = new TreeMap<>();
+
+    /**
+     * The original state of the previously compared line.
+     */
+    private Trace.Line previousOriginalState;
+
+    /**
+     * The mutant state of the previously compared line.
+     */
+    private Trace.Line previousMutantState;
+
+    /**
+     * The differences of the previously compared line: the index of the expression in the original state
+     * and in the mutant state, for each expression with a different value.
+     */
+    private List<int[]> previousDifferences = new ArrayList<>();
+
+    /**
+     * The test file that is being traced.
+     */
+    private String testFile;
+
+    /**
+     * The original trace of the test file that is being traced, {@code null} if there is none.
+     */
+    private Map<Integer, Trace.Line> originalLines;
+
+    /**
+     * Has tracing the mutant been stopped because it took too long?
+     */
+    private boolean timedOut = false;
+
+    /**
+     * Constructor.
+     *
+     * @param originalTrace The trace from the original version of the code.
+     */
+    public TraceComparator(Trace originalTrace) {
+        this.originalTrace = originalTrace;
+    }
+
+    /**
+     * Get the strings of the original trace; the states of the mutant need to be built with these strings.
+     *
+     * @return The strings.
+     */
+    public StringTable getStrings() {
+        return originalTrace.getStrings();
+    }
+
+    /**
+     * Start tracing a (new) test file.
+     *
+     * @param testFile The canonical path of the test file, as used in the original trace.
+     */
+    public void startTestFile(String testFile) {
+        endOfMethod();
+        this.testFile = testFile;
+        this.originalLines = originalTrace.get(testFile);
+    }
+
+    /**
+     * Get how long it took to trace the current test file in the original trace.
+     *
+     * @return The duration in milliseconds, -1 if it's unknown.
+     */
+    public long getOriginalDuration() {
+        return originalTrace.getDuration(testFile);
+    }
+
+    /**
+     * Tracing took too long and has been stopped: the current method is incomplete, so its lines are not compared
+     * (a loop might not have reached its last visit of a line).
+     */
+    public void timeOut() {
+        pendingLines.clear();
+        timedOut = true;
+    }
+
+    /**
+     * Check if tracing has been stopped because it took too long.
+     *
+     * @return True if it timed out.
+     */
+    public boolean hasTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Add the state at a line of the current method.
+     *
+     * @param line  The line number.
+     * @param state The state at that line, built with the strings of the original trace.
+     */
+    public void add(int line, Trace.Line state) {
+        pendingLines.put(line, state);
+    }
+
+    /**
+     * The current method is done: compare its lines with the original trace.
+     *
+     * @return True if the traces differ on at least one field (so far).
+     */
+    public boolean endOfMethod() {
+        if (originalLines != null) {
+            for (Map.Entry<Integer, Trace.Line> entry : pendingLines.entrySet()) {
+                Trace.Line originalState = originalLines.get(entry.getKey());
+                if (originalState != null) {
+                    compare(entry.getKey(), originalState, entry.getValue());
+                }
+            }
+        }
+        pendingLines.clear();
+        return hasDiverged();
+    }
+
+    /**
+     * Check if the traces differ on at least one field (so far).
+     *
+     * @return True if the traces differ.
+     */
+    public boolean hasDiverged() {
+        return comparison.isFailureOnField();
+    }
+
+    /**
+     * Get the comparison, once the mutant is traced.
+     *
+     * @return The comparison if the traces differ on at least one field, otherwise {@code null}.
+     */
+    public JSONCompareResult getComparison() {
+        return endOfMethod() ? comparison : null;
+    }
+
+    /**
+     * Compare the state at a line: both states are sorted on their expressions, so walk through them side by side.
+     *
+     * @param line          The line number.
+     * @param originalState The state in the original trace.
+     * @param mutantState   The state in the trace of the mutant.
+     */
+    private void compare(int line, Trace.Line originalState, Trace.Line mutantState) {
+        if (originalState != previousOriginalState || mutantState != previousMutantState) {
+            previousOriginalState = originalState;
+            previousMutantState = mutantState;
+            previousDifferences = new ArrayList<>();
+            int i = 0;
+            int j = 0;
+            while (i < originalState.size() && j < mutantState.size()) {
+                final int expression = originalState.getExpression(i);
+                final int mutantExpression = mutantState.getExpression(j);
+                if (expression < mutantExpression) {
+                    i++;
+                } else if (expression > mutantExpression) {
+                    j++;
+                } else {
+                    if (!originalState.valueEquals(i, mutantState, j)) {
+                        previousDifferences.add(new int[]{i, j});
+                    }
+                    i++;
+                    j++;
+                }
+            }
+        }
+
+        final StringTable strings = originalTrace.getStrings();
+        for (int[] difference : previousDifferences) {
+            comparison.fail(
+                    String.format("%s.%s.%s", testFile, line, strings.get(originalState.getExpression(difference[0]))),
+                    originalState.getValue(difference[0], strings),
+                    mutantState.getValue(difference[1], strings)
+            );
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+package lumutator.tracer.runner;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * Small test runner server that runs inside the debugged VM and keeps running tests until it is told to stop.
+ * <p>
+ * The runner reads one command per line, either from a local socket (if a port is given) or from stdin:
+ * <ul>
+ * <li>{@code run some.package.TestClass} or {@code run some.package.TestClass#testMethod}:
+ * run a test class or a single test method; replies {@code done <run count> <failure count>}</li>
+ * <li>{@code load some.package.Class}: load (and initialize) a class; replies {@code loaded}</li>
+ * <li>{@code exit}: stop the runner</li>
+ * </ul>
+ * If a command fails, the runner replies {@code error <message>}.
+ * <p>
+ * This class is added to the classpath of the VM, so it only depends on the JDK and JUnit (through reflection).
+ */
+public class ResidentRunner {
+
+    /**
+     * Keep running commands until the runner is told to stop.
+     *
+     * @param args Optionally the port of the local socket to connect to; if absent, the commands are read from stdin.
+     * @throws Exception If JUnit could not be found or the connection failed.
+     */
+    public static void main(String[] args) throws Exception {
+        final BufferedReader in;
+        final PrintStream out;
+        if (args.length > 0) {
+            Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(args[0]));
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            out = new PrintStream(socket.getOutputStream(), true);
+        } else {
+            in = new BufferedReader(new InputStreamReader(System.in));
+            out = System.out;
+        }
+
+        Class<?> junitCore = Class.forName("org.junit.runner.JUnitCore");
+        Class<?> request = Class.forName("org.junit.runner.Request");
+        Class<?> result = Class.forName("org.junit.runner.Result");
+        Object junit = junitCore.getConstructor().newInstance();
+        Method run = junitCore.getMethod("run", request);
+        Method aClass = request.getMethod("aClass", Class.class);
+        Method method = request.getMethod("method", Class.class, String.class);
+        Method getRunCount = result.getMethod("getRunCount");
+        Method getFailureCount = result.getMethod("getFailureCount");
+
+        String command;
+        while ((command = in.readLine()) != null && !command.equals("exit")) {
+            try {
+                if (command.startsWith("run ")) {
+                    String[] test = command.substring(4).split("#", 2);
+                    Class<?> testClass = Class.forName(test[0]);
+                    Object testResult = run.invoke(
+                            junit, test.length > 1 ? method.invoke(null, testClass, test[1]) : aClass.invoke(null, testClass)
+                    );
+                    out.println("done " + getRunCount.invoke(testResult) + " " + getFailureCount.invoke(testResult));
+
+                } else if (command.startsWith("load ")) {
+                    Class.forName(command.substring(5));
+                    out.println("loaded");
+
+                } else {
+                    out.println("error unknown command: " + command);
+                }
+
+            } catch (ClassNotFoundException | LinkageError | InvocationTargetException e) {
+                out.println("error " + e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,44 @@
+package lumutator.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Some utilities functions to create hashes (e.g. to check if a file has changed).
+ */
+public class Hash {
+
+    /**
+     * Get the SHA-256 hash of some bytes.
+     *
+     * @param data The bytes.
+     * @return The hash as a hexadecimal string.
+     */
+    public static String sha256(byte[] data) {
+        try {
+            StringBuilder hash = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(data)) {
+                hash.append(String.format("%02x", b));
+            }
+            return hash.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Should not be possible, every Java platform supports SHA-256
+            throw new RuntimeException("Failed creating a hash: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Get the SHA-256 hash of the contents of a file.
+     *
+     * @param file The file.
+     * @return The hash as a hexadecimal string.
+     * @throws IOException If the file could not be read.
+     */
+    public static String sha256(File file) throws IOException {
+        return sha256(Files.readAllBytes(file.toPath()));
+    }
+
+}
@@ -0,0 +1,144 @@
+package lumutator.tracer;
+
+import lumutator.Configuration;
+import lumutator.TestEnvironment;
+import lumutator.tracer.debugger.Coverage;
+import lumutator.tracer.debugger.Trace;
+import org.apache.commons.io.FileUtils;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the {@link OriginalTraceCache}.
+ * Testing on a simple Bank application (see /src/test/resources/bank).
+ */
+public class OriginalTraceCacheTest extends TestEnvironment {
+
+    /**
+     * The configuration file of the bank application.
+     */
+    private final String configFile = OriginalTraceCacheTest.class.getClassLoader().getResource("bank_config.xml").getFile();
+
+    /**
+     * Temporary cache directory.
+     */
+    private File cacheDir;
+
+    /**
+     * Use a temporary cache directory.
+     *
+     * @throws Exception If the cache directory could not be created.
+     */
+    @Before
+    public void setUp() throws Exception {
+        cacheDir = Files.createTempDirectory("lumutator-cache").toFile();
+        Configuration.getInstance().set("cacheDir", cacheDir.getPath());
+    }
+
+    /**
+     * Remove the temporary cache directory and don't use it in the other tests.
+     *
+     * @throws Exception If the cache directory could not be removed.
+     */
+    @After
+    public void tearDown() throws Exception {
+        Configuration.getInstance().set("cacheDir", "");
+        FileUtils.deleteDirectory(cacheDir);
+    }
+
+    /**
+     * Test if the original trace, the inspector methods and the coverage are restored from the cache.
+     *
+     * @throws Exception If the key could not be computed.
+     */
+    @Test
+    public void testStoreAndLoad() throws Exception {
+        Trace trace = createTrace();
+        Coverage coverage = new Coverage(Configuration.getInstance().get("classFiles"));
+        coverage.record("bank.Customer", "getName", "bank.CustomerTest", "testValidCustomers");
+        coverage.record("bank.Bank", "<init>", "bank.BankTest", null);
+
+        // Nothing cached yet
+        assertFalse(new OriginalTraceCache(configFile).load(false));
+
+        new OriginalTraceCache(configFile).store(inspectorMethods, trace, coverage);
+
+        OriginalTraceCache cache = new OriginalTraceCache(configFile);
+        assertTrue(cache.load(true));
+        assertEquals(inspectorMethods, cache.getInspectorMethods());
+        JSONAssert.assertEquals(trace.toJSON(), cache.getTrace().toJSON(), true);
+        JSONAssert.assertEquals(coverage.toJSON(), cache.getCoverage().toJSON(), true);
+        assertEquals(
+                Collections.singletonMap("bank.CustomerTest", Collections.singleton("testValidCustomers")),
+                cache.getCoverage().getTests("bank.Customer", "getName")
+        );
+        assertTrue(cache.getCoverage().getTests("bank.Bank", "<init>").containsKey("bank.BankTest"));
+        assertNull(cache.getCoverage().getTests("bank.Bank", "<init>").get("bank.BankTest"));
+    }
+
+    /**
+     * Test if the cache without coverage is only used when the coverage isn't needed.
+     *
+     * @throws Exception If the key could not be computed.
+     */
+    @Test
+    public void testLoadWithoutCoverage() throws Exception {
+        new OriginalTraceCache(configFile).store(inspectorMethods, createTrace(), null);
+
+        assertFalse(new OriginalTraceCache(configFile).load(true));
+        OriginalTraceCache cache = new OriginalTraceCache(configFile);
+        assertTrue(cache.load(false));
+        assertNull(cache.getCoverage());
+    }
+
+    /**
+     * Test if the cache is invalidated when the class files change.
+     *
+     * @throws Exception If the class files could not be changed.
+     */
+    @Test
+    public void testInvalidation() throws Exception {
+        new OriginalTraceCache(configFile).store(inspectorMethods, createTrace(), null);
+
+        File newClassFile = new File(Configuration.getInstance().get("classFiles"), "bank/Changed.class");
+        try {
+            FileUtils.writeStringToFile(newClassFile, "changed", "UTF-8");
+            assertFalse(new OriginalTraceCache(configFile).load(false));
+        } finally {
+            FileUtils.forceDelete(newClassFile);
+        }
+
+        assertTrue(new OriginalTraceCache(configFile).load(false));
+    }
+
+    /**
+     * Create a small trace.
+     *
+     * @return The trace.
+     */
+    private static Trace createTrace() {
+        Trace trace = new Trace();
+        Map<Integer, Trace.Line> lines = new HashMap<>();
+        lines.put(12, new Trace.Line.Builder(trace.getStrings())
+                .put("customer.getName()", "Jan")
+                .put("customer.getBalance()", 100)
+                .putNull("bank.getLastAddedCustomer()")
+                .build()
+        );
+        lines.put(14, new Trace.Line.Builder(trace.getStrings()).put("customer.getBalance()", 42.5).build());
+        trace.put("/bank/CustomerTest.java", lines);
+        return trace;
+    }
+
+}
@@ -0,0 +1,99 @@
+package lumutator.tracer;
+
+import lumutator.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the {@link TestInventory}.
+ * Testing on a simple Bank application (see /src/test/resources/bank).
+ */
+public class TestInventoryTest {
+
+    /**
+     * Directory that contains the test files of the bank application.
+     */
+    private static final String testDir = "target/test-classes/bank/src/test/java";
+
+    /**
+     * Initialize the configuration.
+     *
+     * @throws Exception If the configuration could not be read.
+     */
+    @Before
+    public void setUp() throws Exception {
+        ClassLoader classLoader = TestInventoryTest.class.getClassLoader();
+        Configuration.getInstance().initialize(classLoader.getResource("bank_config.xml").getFile());
+    }
+
+    /**
+     * Don't use the cache directory in the other tests.
+     */
+    @After
+    public void tearDown() {
+        Configuration.getInstance().set("cacheDir", "");
+    }
+
+    /**
+     * Test if all the test files are found, with their breakpoints and tests.
+     */
+    @Test
+    public void testScan() {
+        Map<String, TestInventory.TestFile> testFiles = byClassName(TestInventory.scan(testDir));
+
+        assertEquals(new HashSet<>(Arrays.asList("bank.BankTest", "bank.BasicTest", "bank.CustomerTest", "bank.LoopTest")), testFiles.keySet());
+
+        TestInventory.TestFile bankTest = testFiles.get("bank.BankTest");
+        assertTrue(bankTest.getPath().endsWith("BankTest.java"));
+        assertEquals(Arrays.asList("setUp", "testAddingCustomers", "testTransfer"), bankTest.getBreakpoints());
+        assertEquals(new HashSet<>(Arrays.asList("testAddingCustomers", "testTransfer")), bankTest.getTests());
+
+        assertEquals(Collections.singleton(30), testFiles.get("bank.CustomerTest").getAssertionLines());
+    }
+
+    /**
+     * Test if the inventory is stored in the cache directory and restored from it.
+     *
+     * @throws Exception If the cache directory could not be created.
+     */
+    @Test
+    public void testScanWithCache() throws Exception {
+        File cacheDir = Files.createTempDirectory("lumutator-cache").toFile();
+        cacheDir.deleteOnExit();
+        Configuration.getInstance().set("cacheDir", cacheDir.getPath());
+
+        Map<String, TestInventory.TestFile> parsed = byClassName(TestInventory.scan(testDir));
+        File cacheFile = new File(cacheDir, "test-inventory.json");
+        assertTrue(cacheFile.exists());
+        cacheFile.deleteOnExit();
+
+        Map<String, TestInventory.TestFile> cached = byClassName(TestInventory.scan(testDir));
+        assertEquals(parsed.keySet(), cached.keySet());
+        for (String className : parsed.keySet()) {
+            assertEquals(parsed.get(className).getPath(), cached.get(className).getPath());
+            assertEquals(parsed.get(className).getBreakpoints(), cached.get(className).getBreakpoints());
+            assertEquals(parsed.get(className).getTests(), cached.get(className).getTests());
+            assertEquals(parsed.get(className).getAssertionLines(), cached.get(className).getAssertionLines());
+        }
+    }
+
+    /**
+     * Index the test files of an inventory by their test class.
+     *
+     * @param inventory The inventory.
+     * @return The test files by their test class.
+     */
+    private static Map<String, TestInventory.TestFile> byClassName(TestInventory inventory) {
+        Map<String, TestInventory.TestFile> testFiles = new HashMap<>();
+        inventory.getTestFiles().forEach(testFile -> testFiles.put(testFile.getClassName(), testFile));
+        return testFiles;
+    }
+
+}
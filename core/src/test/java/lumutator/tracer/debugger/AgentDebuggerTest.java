@@ -0,0 +1,168 @@
+package lumutator.tracer.debugger;
+
+import lumutator.Configuration;
+import lumutator.TestEnvironment;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the {@link AgentDebugger}, compared with the {@link Debugger}.
+ * Testing on a simple Bank application (see /src/test/resources/bank).
+ */
+public class AgentDebuggerTest extends TestEnvironment {
+
+    /**
+     * Test if the tracing agent creates the same traces as JDI.
+     *
+     * @throws Exception If the traces could not be compared.
+     */
+    @Test
+    public void testSameTraceAsDebugger() throws Exception {
+        assertSameTrace("bank.BasicTest", Arrays.asList("testPrimitiveTypes", "testComplexTypes"));
+        assertSameTrace("bank.CustomerTest", Arrays.asList("testValidCustomers"));
+        assertSameTrace("bank.BankTest", Arrays.asList("setUp", "testAddingCustomers", "testTransfer"));
+    }
+
+    /**
+     * Test if the tracing agent truncates the states and skips the visits of a line in a loop in the same way as JDI.
+     *
+     * @throws Exception If the traces could not be compared.
+     */
+    @Test
+    public void testSameTraceWithLimits() throws Exception {
+        Configuration config = Configuration.getInstance();
+        try {
+            config.set("maxArrayElements", "2");
+            config.set("maxStringLength", "5");
+            config.set("maxTraceDepth", "1");
+            config.set("maxExpressionsPerLine", "4");
+            config.set("visitInterval", "4");
+            assertSameTrace("bank.BasicTest", Arrays.asList("testComplexTypes"));
+            assertSameTrace("bank.LoopTest", Arrays.asList("testLoop"));
+            assertSameTrace("bank.BankTest", Arrays.asList("testAddingCustomers"));
+        } finally {
+            config.set("maxArrayElements", "0");
+            config.set("maxStringLength", "0");
+            config.set("maxTraceDepth", "0");
+            config.set("maxExpressionsPerLine", "0");
+            config.set("visitInterval", "0");
+        }
+    }
+
+    /**
+     * Test if an inspector method is only evaluated without arguments, and not an overload with arguments
+     * (or another method with the same name).
+     *
+     * @throws Exception If the traces could not be compared.
+     */
+    @Test
+    public void testInspectorMethodsWithArguments() throws Exception {
+        Set<String> methods = new HashSet<>(inspectorMethods);
+        methods.add("bank.Customer.setBalance");
+        JSONObject trace = assertSameTrace("bank.CustomerTest", Arrays.asList("testValidCustomers"), methods);
+        assertFalse(trace.toString().contains("setBalance"));
+        assertTrue(trace.toString().contains("getBalance"));
+    }
+
+    /**
+     * Test if ASM is relocated into the package of the agent, so it doesn't conflict with ASM on the classpath.
+     *
+     * @throws IOException If the JAR could not be read.
+     */
+    @Test
+    public void testRelocatedAsm() throws IOException {
+        try (JarFile jar = new JarFile(AgentDebugger.getAgentJar().toFile())) {
+            List<String> names = Collections.list(jar.entries()).stream().map(JarEntry::getName).collect(Collectors.toList());
+            assertTrue(names.contains("lumutator/tracer/agent/asm/ClassReader.class"));
+            assertTrue(names.stream().noneMatch(name -> name.startsWith("org/")));
+
+            // No references to the original package are left either
+            for (String name : names) {
+                if (name.endsWith(".class")) {
+                    final String classFile = new String(jar.getInputStream(jar.getEntry(name)).readAllBytes(), StandardCharsets.ISO_8859_1);
+                    assertFalse(name, classFile.contains("org/objectweb/asm/"));
+                }
+            }
+        }
+    }
+
+    /**
+     * Test if the VM is killed when it takes too long.
+     */
+    @Test
+    public void testTimeout() {
+        Observer observer = new Observer(inspectorMethods);
+        AgentDebugger debugger = new AgentDebugger("bank.CustomerTest", observer, getClassPath());
+        debugger.addBreakpoint("testValidCustomers");
+        debugger.setTimeout(1);
+
+        debugger.run();
+        debugger.close();
+        assertTrue(debugger.hasTimedOut());
+    }
+
+    /**
+     * Trace a test class with both JDI and the tracing agent, and check if the traces are the same.
+     *
+     * @param classToDebug The test class.
+     * @param breakpoints  The methods to trace.
+     * @throws Exception If the traces could not be compared.
+     */
+    private static void assertSameTrace(String classToDebug, List<String> breakpoints) throws Exception {
+        assertSameTrace(classToDebug, breakpoints, inspectorMethods);
+    }
+
+    /**
+     * Trace a test class with both JDI and the tracing agent with the given inspector methods, and check if the traces
+     * are the same.
+     *
+     * @param classToDebug     The test class.
+     * @param breakpoints      The methods to trace.
+     * @param inspectorMethods The inspector methods.
+     * @return The trace.
+     * @throws Exception If the traces could not be compared.
+     */
+    private static JSONObject assertSameTrace(String classToDebug, List<String> breakpoints, Set<String> inspectorMethods)
+            throws Exception {
+        Observer expectedObserver = new Observer(inspectorMethods);
+        Debugger debugger = new Debugger(classToDebug, expectedObserver);
+        breakpoints.forEach(debugger::addBreakpoint);
+        debugger.run();
+        debugger.close();
+
+        Observer observer = new Observer(inspectorMethods);
+        AgentDebugger agentDebugger = new AgentDebugger(classToDebug, observer, getClassPath());
+        breakpoints.forEach(agentDebugger::addBreakpoint);
+        agentDebugger.run();
+        agentDebugger.close();
+
+        assertFalse(agentDebugger.hasTimedOut());
+        assertFalse(observer.getLines().isEmpty());
+        JSONAssert.assertEquals(expectedObserver.getTrace().toString(), observer.getTrace().toString(), true);
+        return observer.getTrace();
+    }
+
+    /**
+     * Get the classpath of the bank application.
+     *
+     * @return The classpath.
+     */
+    private static String getClassPath() {
+        return lumutator.Configuration.getInstance().get("classPath");
+    }
+
+}
@@ -0,0 +1,53 @@
+package lumutator.tracer.debugger;
+
+import lumutator.Configuration;
+import lumutator.TestEnvironment;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the {@link Coverage}, recorded by the {@link Debugger}.
+ * Testing on a simple Bank application (see /src/test/resources/bank).
+ */
+public class CoverageTest extends TestEnvironment {
+
+    /**
+     * Test if the methods reached by a test are recorded, including the inspector methods invoked by the {@link Observer}.
+     */
+    @Test
+    public void testRecordCoverage() {
+        // Set up
+        Coverage coverage = new Coverage(Configuration.getInstance().get("classFiles"));
+        Debugger debugger = new Debugger("bank.CustomerTest", new Observer(inspectorMethods));
+        debugger.setCoverage(coverage);
+
+        // Start the debugger
+        debugger.addBreakpoint("testValidCustomers");
+        debugger.run();
+        debugger.close();
+
+        // Check the coverage
+        assertTrue(coverage.isSourceClass("bank.Customer"));
+        assertFalse(coverage.isSourceClass("bank.CustomerTest"));
+        assertEquals(
+                Collections.singletonMap("bank.CustomerTest", Collections.singleton("testValidCustomers")),
+                coverage.getTests("bank.Customer", "<init>")
+        );
+        assertEquals(
+                Collections.singletonMap("bank.CustomerTest", Collections.singleton("testValidCustomers")),
+                coverage.getTests("bank.Customer", "getName")
+        );
+        assertTrue(coverage.getTests("bank.Bank", "addCustomer").isEmpty());
+
+        // A static initializer is attributed to the whole test class
+        Map<String, Set<String>> tests = coverage.getTests("bank.Customer", "<clinit>");
+        assertTrue(tests.containsKey("bank.CustomerTest"));
+        assertNull(tests.get("bank.CustomerTest"));
+    }
+
+}
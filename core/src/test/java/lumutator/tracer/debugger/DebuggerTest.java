@@ -0,0 +1,145 @@
+package lumutator.tracer.debugger;
+
+import lumutator.Mutant;
+import lumutator.TestEnvironment;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the {@link Debugger}.
+ * Testing on a simple Bank application (see /src/test/resources/bank).
+ */
+public class DebuggerTest extends TestEnvironment {
+
+    /**
+     * Test if the VM is killed when it takes too long.
+     */
+    @Test
+    public void testTimeout() {
+        Observer observer = new Observer(inspectorMethods);
+        Debugger debugger = new Debugger("bank.CustomerTest", observer);
+        debugger.addBreakpoint("testValidCustomers");
+        debugger.setTimeout(1);
+
+        debugger.run();
+        debugger.close();
+        assertTrue(debugger.hasTimedOut());
+    }
+
+    /**
+     * Test if the VM isn't killed when it's done in time.
+     */
+    @Test
+    public void testNoTimeout() {
+        Observer observer = new Observer(inspectorMethods);
+        Debugger debugger = new Debugger("bank.CustomerTest", observer);
+        debugger.addBreakpoint("testValidCustomers");
+        debugger.setTimeout(60000);
+
+        debugger.run();
+        debugger.close();
+        assertFalse(debugger.hasTimedOut());
+        assertFalse(observer.getLines().isEmpty());
+    }
+
+    /**
+     * Test if only the observation lines and the end of the method are observed, with the same states as when
+     * every line is observed.
+     *
+     * @throws Exception If the traces could not be compared.
+     */
+    @Test
+    public void testObservationLines() throws Exception {
+        Observer fullObserver = new Observer(inspectorMethods);
+        Debugger fullDebugger = new Debugger("bank.CustomerTest", fullObserver);
+        fullDebugger.addBreakpoint("testValidCustomers");
+        fullDebugger.run();
+        fullDebugger.close();
+
+        Observer observer = new Observer(inspectorMethods);
+        Debugger debugger = new Debugger("bank.CustomerTest", observer);
+        debugger.addBreakpoint("testValidCustomers");
+        debugger.setObservationLines(Collections.singleton(30));   // assertFalse(exceptionThrown);
+        debugger.run();
+        debugger.close();
+
+        // The assertion and the end of the method
+        Set<Integer> expectedLines = new HashSet<>();
+        expectedLines.add(30);
+        expectedLines.add(31);
+        assertEquals(expectedLines, observer.getLines().keySet());
+
+        JSONObject fullTrace = fullObserver.getTrace();
+        JSONObject trace = observer.getTrace();
+        for (Integer line : expectedLines) {
+            JSONAssert.assertEquals(fullTrace.getJSONObject(line.toString()), trace.getJSONObject(line.toString()), true);
+        }
+
+        // this.balance = balance; in setBalance, never reached by the test => nothing is observed
+        Mutant unreachedMutant = new Mutant(null, null, "bank.Customer", "setBalance", "(I)V", 88, "", "");
+        Observer unreachedObserver = new Observer(inspectorMethods);
+        Debugger unreachedDebugger = new Debugger("bank.CustomerTest", unreachedObserver);
+        unreachedDebugger.addBreakpoint("testValidCustomers");
+        unreachedDebugger.setMutant(unreachedMutant);
+        unreachedDebugger.run();
+        unreachedDebugger.close();
+        assertTrue(unreachedObserver.getLines().isEmpty());
+    }
+
+    /**
+     * Test if a traced method is only observed from the mutated line on, with the same states as when every line
+     * is observed from the start.
+     *
+     * @throws Exception If the traces could not be compared.
+     */
+    @Test
+    public void testPrefixElision() throws Exception {
+        Observer fullObserver = new Observer(inspectorMethods);
+        Debugger fullDebugger = new Debugger("bank.CustomerTest", fullObserver);
+        fullDebugger.addBreakpoint("testValidCustomers");
+        fullDebugger.run();
+        fullDebugger.close();
+
+        // this.name = name; (reached from line 23 of the test)
+        Mutant mutant = new Mutant(null, null, "bank.Customer", "<init>",
+                "(Ljava/lang/String;Ljava/lang/String;I)V", 47, "", "");
+        Observer observer = new Observer(inspectorMethods);
+        Debugger debugger = new Debugger("bank.CustomerTest", observer);
+        debugger.addBreakpoint("testValidCustomers");
+        debugger.setMutant(mutant);
+        debugger.run();
+        debugger.close();
+
+        // The lines after the line that reached the mutated line
+        Set<Integer> expectedLines = fullObserver.getLines().keySet().stream()
+                .filter(line -> line > 23)
+                .collect(Collectors.toSet());
+        assertFalse(expectedLines.isEmpty());
+        assertEquals(expectedLines, observer.getLines().keySet());
+
+        JSONObject fullTrace = fullObserver.getTrace();
+        JSONObject trace = observer.getTrace();
+        for (Integer line : expectedLines) {
+            JSONAssert.assertEquals(fullTrace.getJSONObject(line.toString()), trace.getJSONObject(line.toString()), true);
+        }
+
+        // this.balance = balance; in setBalance, never reached by the test => nothing is observed
+        Mutant unreachedMutant = new Mutant(null, null, "bank.Customer", "setBalance", "(I)V", 88, "", "");
+        Observer unreachedObserver = new Observer(inspectorMethods);
+        Debugger unreachedDebugger = new Debugger("bank.CustomerTest", unreachedObserver);
+        unreachedDebugger.addBreakpoint("testValidCustomers");
+        unreachedDebugger.setMutant(unreachedMutant);
+        unreachedDebugger.run();
+        unreachedDebugger.close();
+        assertTrue(unreachedObserver.getLines().isEmpty());
+    }
+
+}
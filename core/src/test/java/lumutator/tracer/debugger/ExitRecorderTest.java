@@ -0,0 +1,90 @@
+package lumutator.tracer.debugger;
+
+import lumutator.Configuration;
+import lumutator.TestEnvironment;
+import org.apache.commons.io.FileUtils;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the {@link ExitRecorder}.
+ * Testing on a simple Bank application (see /src/test/resources/bank).
+ */
+public class ExitRecorderTest extends TestEnvironment {
+
+    /**
+     * Test if the state at each exit of a constructor is recorded: the fields of the receiver and the arguments.
+     */
+    @Test
+    public void testRecordExits() {
+        StringTable strings = new StringTable();
+        ExitRecorder recorder = new ExitRecorder(
+                "bank.CustomerTest", strings, Configuration.getInstance().get("classPath"),
+                "bank.Customer", "<init>", "(Ljava/lang/String;Ljava/lang/String;I)V"
+        );
+        recorder.run();
+        recorder.close();
+
+        List<Trace.Line> exits = recorder.getExits();
+        assertEquals(2, exits.size());
+
+        JSONObject first = exits.get(0).toJSON(strings);
+        assertEquals("bank.Customer", first.get("this"));
+        assertEquals("Jan Janssen", first.get("this.name"));
+        assertEquals(100, first.get("this.balance"));
+        assertEquals("091-0342401-48", first.get("arg1"));
+        assertEquals("return", first.get("exit"));
+        assertEquals(JSONObject.NULL, first.get("return"));
+
+        JSONObject second = exits.get(1).toJSON(strings);
+        assertEquals("Peter Selie", second.get("this.name"));
+        assertFalse(exits.get(0).sameState(exits.get(1)));
+    }
+
+    /**
+     * Test if an exit with an exception is recorded as such, with a mutant that throws in the constructor
+     * (the check of the balance is negated).
+     *
+     * @throws IOException If the mutant could not be installed.
+     */
+    @Test
+    public void testRecordExceptionExits() throws IOException {
+        Path classFiles = Files.createTempDirectory("lumutator-mutant");
+        try {
+            ClassLoader classLoader = ExitRecorderTest.class.getClassLoader();
+            Path classFile = classFiles.resolve("bank/Customer.class");
+            Files.createDirectories(classFile.getParent());
+            Files.copy(Paths.get(classLoader.getResource("bank/pit-reports/export/bank/Customer/mutants/1/bank.Customer.class").getPath()), classFile);
+
+            StringTable strings = new StringTable();
+            ExitRecorder recorder = new ExitRecorder(
+                    "bank.CustomerTest", strings,
+                    classFiles + File.pathSeparator + Configuration.getInstance().get("classPath"),
+                    "bank.Customer", "<init>", "(Ljava/lang/String;Ljava/lang/String;I)V"
+            );
+            recorder.run();
+            recorder.close();
+
+            // The test catches the exception of the first customer, so the second one is never created
+            List<Trace.Line> exits = recorder.getExits();
+            assertEquals(1, exits.size());
+            JSONObject exit = exits.get(0).toJSON(strings);
+            assertEquals("java.lang.IllegalArgumentException", exit.get("exit"));
+            assertFalse(exit.has("return"));
+            assertEquals(100, exit.get("arg2"));
+
+        } finally {
+            FileUtils.deleteDirectory(classFiles.toFile());
+        }
+    }
+
+}
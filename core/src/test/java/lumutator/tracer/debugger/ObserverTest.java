@@ -1,10 +1,18 @@
 package lumutator.tracer.debugger;
 
+import lumutator.Configuration;
 import lumutator.TestEnvironment;
+import lumutator.tracer.agent.TraceLimits;
+import lumutator.tracer.agent.Truncated;
 import org.json.JSONObject;
 import org.junit.Test;
 import org.skyscreamer.jsonassert.JSONAssert;
 
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
 /**
  * Tests for both the {@link Debugger} and {@link Observer}.
  * Testing on a simple Bank application (see /src/test/resources/bank).
@@ -27,7 +35,7 @@ public class ObserverTest extends TestEnvironment {
         // Check the traces
         JSONObject trace = observer.getTrace();
         JSONObject expectedTrace = new JSONObject(
-                "{22:{character:98,aInt:42,bool:true,aFloat:1.1,aDouble:12.345,aByte:10},23:{character:98,aInt:42,bool:true,aLong:11111111,aFloat:1.1,aDouble:12.345,aByte:10},24:{character:98,aShort:2,aInt:42,bool:true,aLong:11111111,aFloat:1.1,aDouble:12.345,aByte:10},17:{bool:true},18:{bool:true,aByte:10},19:{character:98,bool:true,aByte:10},20:{character:98,bool:true,aDouble:12.345,aByte:10},21:{character:98,bool:true,aFloat:1.1,aDouble:12.345,aByte:10}}"
+                "{22:{character:'b',aInt:42,bool:true,aFloat:1.1,aDouble:12.345,aByte:10},23:{character:'b',aInt:42,bool:true,aLong:11111111,aFloat:1.1,aDouble:12.345,aByte:10},24:{character:'b',aShort:2,aInt:42,bool:true,aLong:11111111,aFloat:1.1,aDouble:12.345,aByte:10},17:{bool:true},18:{bool:true,aByte:10},19:{character:'b',bool:true,aByte:10},20:{character:'b',bool:true,aDouble:12.345,aByte:10},21:{character:'b',bool:true,aFloat:1.1,aDouble:12.345,aByte:10}}"
         );
         JSONAssert.assertEquals(expectedTrace.toString(), trace.toString(), true);
 
@@ -105,4 +113,116 @@ public class ObserverTest extends TestEnvironment {
         debugger.close();
     }
 
+    /**
+     * Test if the long arrays and strings, the deep objects and the lines with too many expressions are truncated,
+     * and if that is recorded in the trace (as truncated values, apart from the real values).
+     */
+    @Test
+    public void testLimits() {
+        Configuration config = Configuration.getInstance();
+        try {
+            config.set("maxArrayElements", "2");
+            config.set("maxStringLength", "5");
+            config.set("maxTraceDepth", "1");
+
+            Observer observer = new Observer(inspectorMethods);
+            Debugger debugger = new Debugger("bank.BasicTest", observer);
+            debugger.addBreakpoint("testComplexTypes");
+            debugger.run();
+            debugger.close();
+
+            // The first and last element of the array, and its length
+            JSONObject expectedLine = new JSONObject()
+                    .put("intArray.length", 4).put("intArray[0]", 3).put("intArray[3]", 0)
+                    .put("aString", String.format("Hello...(12 chars, #%08x)", "Hello World!".hashCode()))
+                    .put("nullObject", JSONObject.NULL);
+            JSONAssert.assertEquals(expectedLine, observer.getTrace().getJSONObject("34"), true);
+
+            StringTable strings = new StringTable();
+            observer = new Observer(inspectorMethods, strings);
+            debugger = new Debugger("bank.BankTest", observer);
+            debugger.addBreakpoint("testAddingCustomers");
+            debugger.run();
+            debugger.close();
+
+            // The customer returned by the bank is too deep to follow
+            JSONObject line = observer.getTrace().getJSONObject("45");
+            final String name = "Jan J...(11 chars, #" + String.format("%08x", "Jan Janssen".hashCode()) + ")";
+            assertEquals(TraceLimits.TRUNCATED, line.get("bank.getLastAddedCustomer()"));
+            assertEquals(name, line.get("customer1.getName()"));
+
+            // Those are truncated values in the trace itself, not strings
+            Trace.Line state = observer.getLines().get(45);
+            Map<String, Object> values = new HashMap<>();
+            for (int i = 0; i < state.size(); i++) {
+                values.put(strings.get(state.getExpression(i)), state.getValue(i, strings));
+            }
+            assertEquals(new Truncated(TraceLimits.TRUNCATED), values.get("bank.getLastAddedCustomer()"));
+            assertEquals(new Truncated(name), values.get("customer1.getName()"));
+
+            config.set("maxExpressionsPerLine", "3");
+            observer = new Observer(inspectorMethods);
+            debugger = new Debugger("bank.BankTest", observer);
+            debugger.addBreakpoint("testAddingCustomers");
+            debugger.run();
+            debugger.close();
+
+            // Three expressions and the mark
+            line = observer.getTrace().getJSONObject("45");
+            assertEquals(4, line.length());
+            assertEquals(TraceLimits.TRUNCATED, line.get(TraceLimits.TRUNCATED));
+
+        } finally {
+            config.set("maxArrayElements", "0");
+            config.set("maxStringLength", "0");
+            config.set("maxTraceDepth", "0");
+            config.set("maxExpressionsPerLine", "0");
+        }
+    }
+
+    /**
+     * Test if a line in a loop is only observed at its first visit and every k-th visit,
+     * unless the prefix of the traced methods is skipped.
+     */
+    @Test
+    public void testVisitInterval() {
+        // The last visit: sum += i;
+        JSONObject line = traceLoop().getJSONObject("18");
+        assertEquals(9, line.getInt("i"));
+        assertEquals(36, line.getInt("sum"));
+
+        Configuration config = Configuration.getInstance();
+        try {
+            config.set("visitInterval", "4");
+
+            // The 1st, 4th and 8th visit are observed, the last one of those is in the trace
+            line = traceLoop().getJSONObject("18");
+            assertEquals(7, line.getInt("i"));
+            assertEquals(21, line.getInt("sum"));
+
+            // The visits before the mutated line aren't counted with prefix elision => every visit is observed
+            config.set("prefixElision", "true");
+            line = traceLoop().getJSONObject("18");
+            assertEquals(9, line.getInt("i"));
+            assertEquals(36, line.getInt("sum"));
+        } finally {
+            config.set("visitInterval", "0");
+            config.set("prefixElision", "false");
+        }
+    }
+
+    /**
+     * Trace the test with a loop.
+     *
+     * @return The trace.
+     */
+    private JSONObject traceLoop() {
+        Observer observer = new Observer(inspectorMethods);
+        Debugger debugger = new Debugger("bank.LoopTest", observer);
+        debugger.addBreakpoint("testLoop");
+        debugger.run();
+        debugger.close();
+        return observer.getTrace();
+    }
+
 }
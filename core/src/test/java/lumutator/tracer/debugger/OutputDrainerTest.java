@@ -0,0 +1,118 @@
+package lumutator.tracer.debugger;
+
+import lumutator.Configuration;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the {@link OutputDrainer}.
+ */
+public class OutputDrainerTest {
+
+    /**
+     * Temporary directory for the log files.
+     */
+    private File logDir;
+
+    /**
+     * Initialize the configuration.
+     *
+     * @throws Exception If the configuration could not be read.
+     */
+    @Before
+    public void setUp() throws Exception {
+        ClassLoader classLoader = OutputDrainerTest.class.getClassLoader();
+        Configuration.getInstance().initialize(classLoader.getResource("bank_config.xml").getFile());
+        logDir = Files.createTempDirectory("lumutator-logs").toFile();
+    }
+
+    /**
+     * Remove the log files and don't log the output in the other tests.
+     *
+     * @throws Exception If the log files could not be removed.
+     */
+    @After
+    public void tearDown() throws Exception {
+        Configuration.getInstance().set("outputLogDir", "");
+        FileUtils.deleteDirectory(logDir);
+    }
+
+    /**
+     * Test if a process with more output than fits in the pipe buffer doesn't block,
+     * and only the last part of the output is kept.
+     *
+     * @throws Exception If the process could not be started.
+     */
+    @Test
+    public void testDrain() throws Exception {
+        Process process = startChattyProcess();
+        OutputDrainer drainer = new OutputDrainer(process, "chatty");
+
+        assertTrue(process.waitFor(30, TimeUnit.SECONDS));
+        final String output = waitForOutput(drainer, "end\n");
+        assertEquals(OutputDrainer.capacity, output.length());
+        assertTrue(output.startsWith("xxx"));
+    }
+
+    /**
+     * Test if all the output is written to a log file, if a log directory is set.
+     *
+     * @throws Exception If the process could not be started.
+     */
+    @Test
+    public void testLogFile() throws Exception {
+        Configuration.getInstance().set("outputLogDir", logDir.getPath());
+        Process process = startChattyProcess();
+        OutputDrainer drainer = new OutputDrainer(process, "chatty");
+
+        assertTrue(process.waitFor(30, TimeUnit.SECONDS));
+        waitForOutput(drainer, "end\n");
+        Collection<File> logFiles = FileUtils.listFiles(logDir, null, false);
+        assertEquals(1, logFiles.size());
+        File logFile = logFiles.iterator().next();
+        assertEquals(String.format("chatty.%d.log", process.pid()), logFile.getName());
+
+        // The log file is closed as soon as the process closed its output
+        for (int i = 0; i < 100 && logFile.length() < 300004; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(300004, logFile.length());
+    }
+
+    /**
+     * Start a process that writes 300 kB to stdout (more than the pipe buffer of the OS), followed by "end".
+     *
+     * @return The process.
+     * @throws Exception If the process could not be started.
+     */
+    private static Process startChattyProcess() throws Exception {
+        return new ProcessBuilder("sh", "-c", "head -c 300000 /dev/zero | tr '\\0' 'x'; echo end").start();
+    }
+
+    /**
+     * Wait until the output ends with some text (the output is read in the background).
+     *
+     * @param drainer The drainer.
+     * @param end     The expected end of the output.
+     * @return The output.
+     * @throws Exception If interrupted.
+     */
+    private static String waitForOutput(OutputDrainer drainer, String end) throws Exception {
+        for (int i = 0; i < 100 && !drainer.getOutput().endsWith(end); i++) {
+            Thread.sleep(50);
+        }
+        final String output = drainer.getOutput();
+        assertTrue(output.endsWith(end));
+        return output;
+    }
+
+}
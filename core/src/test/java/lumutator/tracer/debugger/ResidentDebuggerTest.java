@@ -0,0 +1,69 @@
+package lumutator.tracer.debugger;
+
+import lumutator.Configuration;
+import lumutator.TestEnvironment;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the {@link ResidentDebugger}.
+ * Testing on a simple Bank application (see /src/test/resources/bank).
+ */
+public class ResidentDebuggerTest extends TestEnvironment {
+
+    /**
+     * Test if single test methods can be traced repeatedly in the same VM, with the same result as a new VM.
+     */
+    @Test
+    public void testRunTestMethods() {
+        // Set up
+        ResidentDebugger debugger = new ResidentDebugger(Configuration.getInstance().get("classPath"));
+        debugger.start();
+
+        try {
+            JSONObject expectedTrace = new JSONObject(
+                    "{22:{character:'b',aInt:42,bool:true,aFloat:1.1,aDouble:12.345,aByte:10},23:{character:'b',aInt:42,bool:true,aLong:11111111,aFloat:1.1,aDouble:12.345,aByte:10},24:{character:'b',aShort:2,aInt:42,bool:true,aLong:11111111,aFloat:1.1,aDouble:12.345,aByte:10},17:{bool:true},18:{bool:true,aByte:10},19:{character:'b',bool:true,aByte:10},20:{character:'b',bool:true,aDouble:12.345,aByte:10},21:{character:'b',bool:true,aFloat:1.1,aDouble:12.345,aByte:10}}"
+            );
+            for (int i = 0; i < 2; i++) {
+                Observer observer = new Observer(inspectorMethods);
+                debugger.run("bank.BasicTest", "testPrimitiveTypes", Collections.singletonList("testPrimitiveTypes"), observer);
+                JSONAssert.assertEquals(expectedTrace.toString(), observer.getTrace().toString(), true);
+            }
+
+            // Only the selected test method should run
+            Observer observer = new Observer(inspectorMethods);
+            debugger.run("bank.BasicTest", "testComplexTypes", Arrays.asList("testPrimitiveTypes", "testComplexTypes"), observer);
+            JSONAssert.assertEquals(
+                    "{33:{aString:Hello World!,nullObject:null},34:{\"intArray[3]\":0,\"intArray[2]\":1,aString:Hello World!,\"intArray[1]\":2,\"intArray[0]\":3,nullObject:null},32:{aString:Hello World!}}",
+                    observer.getTrace().toString(), true
+            );
+
+        } finally {
+            debugger.close();
+        }
+    }
+
+    /**
+     * Test if the classes with static state are recognized, so the VM can be restarted after a mutant of such a class.
+     */
+    @Test
+    public void testHasStaticState() {
+        ResidentDebugger debugger = new ResidentDebugger(Configuration.getInstance().get("classPath"));
+        debugger.start();
+
+        try {
+            assertFalse(debugger.hasStaticState("bank.Customer"));
+            assertTrue(debugger.hasStaticState("java.util.Locale"));
+        } finally {
+            debugger.close();
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+package lumutator.tracer.debugger;
+
+import org.json.JSONObject;
+
+/**
+ * Benchmark for the {@link TraceBuilder}: simulate tracing a test method with thousands of steps,
+ * where each step is a different line with a couple of variables.
+ * <p>
+ * Compares the {@link TraceBuilder} with the former way of collecting the trace, which serialized the whole trace
+ * at each step; the time per step of the {@link TraceBuilder} should stay (roughly) the same when the number of steps grows.
+ * <p>
+ * Run with: {@code mvn test-compile exec:java -Dexec.mainClass=lumutator.tracer.debugger.TraceBuilderBenchmark -Dexec.classpathScope=test}
+ */
+public class TraceBuilderBenchmark {
+
+    /**
+     * Number of variables that are observed at each step.
+     */
+    private static final int variables = 10;
+
+    /**
+     * Largest number of steps for the former way, which takes minutes beyond this.
+     */
+    private static final int maxSerializationSteps = 4000;
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args Not used.
+     */
+    public static void main(String[] args) {
+        // Warm up
+        traceWithBuilder(2000);
+        traceWithSerialization(1000);
+
+        System.out.println(String.format("%8s %16s %16s", "steps", "builder (us)", "serialize (us)"));
+        for (int steps = 1000; steps <= 64000; steps *= 2) {
+            System.out.println(String.format(
+                    "%8d %16d %16s", steps, traceWithBuilder(steps) / 1000,
+                    steps <= maxSerializationSteps ? String.valueOf(traceWithSerialization(steps) / 1000) : "-"
+            ));
+        }
+    }
+
+    /**
+     * Collect a trace with the {@link TraceBuilder}.
+     *
+     * @param steps The number of steps.
+     * @return The elapsed time in nanoseconds.
+     */
+    private static long traceWithBuilder(int steps) {
+        final long start = System.nanoTime();
+        StringTable strings = new StringTable();
+        TraceBuilder traceBuilder = new TraceBuilder();
+        for (int step = 0; step < steps; step++) {
+            Trace.Line.Builder state = new Trace.Line.Builder(strings);
+            for (int i = 0; i < variables; i++) {
+                state.put("variable" + i, step + i);
+            }
+            traceBuilder.add(step, state.build());
+        }
+        traceBuilder.build();
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Collect a trace the former way: serialize the whole trace at each step.
+     *
+     * @param steps The number of steps.
+     * @return The elapsed time in nanoseconds.
+     */
+    private static long traceWithSerialization(int steps) {
+        final long start = System.nanoTime();
+        JSONObject json = new JSONObject();
+        for (int step = 0; step < steps; step++) {
+            JSONObject state = state(step);
+            json.toString();
+            json.put(String.valueOf(step), state);
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Create the state at a step, as a JSON object (the former way).
+     *
+     * @param step The step.
+     * @return The state (expression => value).
+     */
+    private static JSONObject state(int step) {
+        JSONObject state = new JSONObject();
+        for (int i = 0; i < variables; i++) {
+            state.put("variable" + i, step + i);
+        }
+        return state;
+    }
+
+}
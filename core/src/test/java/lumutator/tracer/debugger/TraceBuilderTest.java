@@ -0,0 +1,38 @@
+package lumutator.tracer.debugger;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the {@link TraceBuilder}.
+ */
+public class TraceBuilderTest {
+
+    /**
+     * Test if the trace contains the state of each line, where only the last visit of a line is kept.
+     */
+    @Test
+    public void testBuild() {
+        StringTable strings = new StringTable();
+        TraceBuilder traceBuilder = new TraceBuilder();
+        assertTrue(traceBuilder.build().isEmpty());
+
+        traceBuilder.add(10, new Trace.Line.Builder(strings).put("i", 0).build());
+        traceBuilder.add(11, new Trace.Line.Builder(strings).put("i", 0).put("sum", 0).build());
+        traceBuilder.add(10, new Trace.Line.Builder(strings).put("i", 1).build());
+        assertEquals(2, traceBuilder.size());
+
+        Map<Integer, Trace.Line> trace = traceBuilder.build();
+        assertEquals(1, Trace.toJSON(trace, strings).getJSONObject("10").getInt("i"));
+        assertEquals(0, Trace.toJSON(trace, strings).getJSONObject("11").getInt("sum"));
+
+        // Adding a line after building the trace doesn't change the built trace
+        traceBuilder.add(12, new Trace.Line.Builder(strings).put("sum", 1).build());
+        assertEquals(2, trace.size());
+        assertEquals(3, traceBuilder.build().size());
+    }
+
+}
@@ -0,0 +1,115 @@
+package lumutator.tracer.debugger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.skyscreamer.jsonassert.FieldComparisonFailure;
+import org.skyscreamer.jsonassert.JSONCompareResult;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the {@link TraceComparator}.
+ */
+public class TraceComparatorTest {
+
+    /**
+     * The original trace of a single test file.
+     */
+    private Trace originalTrace;
+
+    /**
+     * Set up the original trace.
+     */
+    @Before
+    public void setUp() {
+        originalTrace = new Trace();
+        Map<Integer, Trace.Line> lines = new HashMap<>();
+        lines.put(10, line().put("i", 2).build());
+        lines.put(11, line().put("i", 2).put("bank.getName()", "Bank").put("rate", 1.5).build());
+        originalTrace.put("/tmp/BankTest.java", lines);
+    }
+
+    /**
+     * Test if only the last visit of a line within a method is compared.
+     */
+    @Test
+    public void testNoDivergence() {
+        TraceComparator comparator = new TraceComparator(originalTrace);
+        comparator.startTestFile("/tmp/BankTest.java");
+
+        for (int i = 0; i <= 2; i++) {
+            comparator.add(10, line().put("i", i).build());
+            assertFalse(comparator.hasDiverged());
+        }
+        // Numbers are compared by their value, expressions that aren't in the original trace are not compared
+        comparator.add(11, line().put("extra", 1).put("i", 2L).put("bank.getName()", "Bank").put("rate", 1.5f).build());
+        comparator.add(12, line().put("i", 3).build());     // Not in the original trace
+
+        assertFalse(comparator.endOfMethod());
+        assertNull(comparator.getComparison());
+    }
+
+    /**
+     * Test if a divergence is found at the end of the method, with the same field as a comparison of the whole traces.
+     */
+    @Test
+    public void testDivergence() {
+        TraceComparator comparator = new TraceComparator(originalTrace);
+        comparator.startTestFile("/tmp/BankTest.java");
+
+        comparator.add(11, line().put("i", 2).put("bank.getName()", "Mutant").build());
+        assertFalse(comparator.hasDiverged());
+        assertTrue(comparator.endOfMethod());
+
+        JSONCompareResult comparison = comparator.getComparison();
+        assertNotNull(comparison);
+        assertEquals(1, comparison.getFieldFailures().size());
+        FieldComparisonFailure failure = comparison.getFieldFailures().get(0);
+        assertEquals("/tmp/BankTest.java.11.bank.getName()", failure.getField());
+        assertEquals("Bank", failure.getExpected());
+        assertEquals("Mutant", failure.getActual());
+    }
+
+    /**
+     * Test if a value of another (non-number) type is a divergence.
+     */
+    @Test
+    public void testDivergenceOnType() {
+        TraceComparator comparator = new TraceComparator(originalTrace);
+        comparator.startTestFile("/tmp/BankTest.java");
+
+        comparator.add(11, line().putNull("bank.getName()").build());
+        assertTrue(comparator.endOfMethod());
+        assertEquals("Bank", comparator.getComparison().getFieldFailures().get(0).getExpected());
+    }
+
+    /**
+     * Test if the pending lines are compared when a new test file starts, and test files without original trace are skipped.
+     */
+    @Test
+    public void testStartTestFile() {
+        TraceComparator comparator = new TraceComparator(originalTrace);
+        comparator.startTestFile("/tmp/BankTest.java");
+        comparator.add(10, line().put("i", 1).build());
+
+        comparator.startTestFile("/tmp/OtherTest.java");
+        assertTrue(comparator.hasDiverged());
+
+        comparator.add(10, line().put("i", 5).build());
+        assertNotNull(comparator.getComparison());
+        assertEquals(1, comparator.getComparison().getFieldFailures().size());
+    }
+
+    /**
+     * Create a builder for the state at a line, with the strings of the original trace.
+     *
+     * @return The builder.
+     */
+    private Trace.Line.Builder line() {
+        return new Trace.Line.Builder(originalTrace.getStrings());
+    }
+
+}
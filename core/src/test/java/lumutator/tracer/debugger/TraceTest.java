@@ -0,0 +1,123 @@
+package lumutator.tracer.debugger;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the {@link Trace}.
+ */
+public class TraceTest {
+
+    /**
+     * Create a trace with a value of each type.
+     *
+     * @return The trace.
+     */
+    private static Trace createTrace() {
+        Trace trace = new Trace();
+        Map<Integer, Trace.Line> lines = new HashMap<>();
+        lines.put(12, new Trace.Line.Builder(trace.getStrings())
+                .put("b", true)
+                .put("i", -42)
+                .put("l", Long.MAX_VALUE)
+                .put("f", 1.5f)
+                .put("d", -0.25)
+                .put("s", "Jan Janssen")
+                .put("c", 'a')
+                .putTruncated("t", "Jan J...")
+                .putNull("n")
+                .put("i", 7)      // Only the last value is kept
+                .build()
+        );
+        lines.put(300, new Trace.Line.Builder(trace.getStrings()).put("s", "Jan Janssen").build());
+        trace.put("/tmp/BankTest.java", lines);
+        trace.put("/tmp/EmptyTest.java", new HashMap<>());
+        trace.setDuration("/tmp/BankTest.java", 1234);
+        return trace;
+    }
+
+    /**
+     * Test the {@link Trace#toJSON()} method.
+     *
+     * @throws Exception If the JSON objects could not be compared.
+     */
+    @Test
+    public void testToJSON() throws Exception {
+        JSONObject expected = new JSONObject()
+                .put("/tmp/BankTest.java", new JSONObject()
+                        .put("12", new JSONObject()
+                                .put("b", true).put("i", 7).put("l", Long.MAX_VALUE).put("f", 1.5f).put("d", -0.25)
+                                .put("s", "Jan Janssen").put("c", (Object) 'a').put("t", "Jan J...").put("n", JSONObject.NULL))
+                        .put("300", new JSONObject().put("s", "Jan Janssen")))
+                .put("/tmp/EmptyTest.java", new JSONObject());
+
+        JSONAssert.assertEquals(expected, createTrace().toJSON(), true);
+        assertEquals(Float.class, createTrace().toJSON().getJSONObject("/tmp/BankTest.java").getJSONObject("12").get("f").getClass());
+        assertEquals(Character.class, createTrace().toJSON().getJSONObject("/tmp/BankTest.java").getJSONObject("12").get("c").getClass());
+    }
+
+    /**
+     * Test if a trace is the same after writing and reading it in the binary format.
+     *
+     * @throws Exception If the trace could not be written or read.
+     */
+    @Test
+    public void testWriteAndRead() throws Exception {
+        Trace trace = createTrace();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        trace.write(out);
+
+        Trace readTrace = Trace.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(2, readTrace.size());
+        assertEquals(trace.getTestFiles(), readTrace.getTestFiles());
+        JSONAssert.assertEquals(trace.toJSON(), readTrace.toJSON(), true);
+        assertTrue(trace.get("/tmp/BankTest.java").get(12).sameState(readTrace.get("/tmp/BankTest.java").get(12)));
+        assertEquals(1234, readTrace.getDuration("/tmp/BankTest.java"));
+        assertEquals(-1, readTrace.getDuration("/tmp/EmptyTest.java"));
+
+        // More compact than JSON
+        assertTrue(out.size() < trace.toJSON().toString().length());
+    }
+
+    /**
+     * Test if the lines are reconstructed from what changed since the previous line, and if a line that didn't change
+     * shares the state of the previous line.
+     *
+     * @throws Exception If the trace could not be written or read.
+     */
+    @Test
+    public void testWriteAndReadChanges() throws Exception {
+        Trace trace = new Trace();
+        Map<Integer, Trace.Line> lines = new HashMap<>();
+        lines.put(10, new Trace.Line.Builder(trace.getStrings()).put("a", 1).put("b", "x").put("c", 2.5).build());
+        lines.put(11, new Trace.Line.Builder(trace.getStrings()).put("a", 1).put("b", "x").put("c", 2.5).build());
+        lines.put(12, new Trace.Line.Builder(trace.getStrings()).put("a", 2).put("c", 2.5).put("d", true).build());
+        lines.put(13, new Trace.Line.Builder(trace.getStrings()).putNull("b").build());
+        trace.put("/tmp/BankTest.java", lines);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        trace.write(out);
+
+        Trace readTrace = Trace.read(new ByteArrayInputStream(out.toByteArray()));
+        JSONAssert.assertEquals(trace.toJSON(), readTrace.toJSON(), true);
+        assertSame(readTrace.get("/tmp/BankTest.java").get(10), readTrace.get("/tmp/BankTest.java").get(11));
+        assertNotSame(readTrace.get("/tmp/BankTest.java").get(11), readTrace.get("/tmp/BankTest.java").get(12));
+    }
+
+    /**
+     * Test if reading something else than a trace fails.
+     */
+    @Test(expected = IOException.class)
+    public void testReadInvalid() throws IOException {
+        Trace.read(new ByteArrayInputStream("{\"not\": \"a trace\"}".getBytes()));
+    }
+
+}
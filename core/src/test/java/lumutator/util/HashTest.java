@@ -0,0 +1,31 @@
+package lumutator.util;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Tests for {@link Hash}.
+ */
+public class HashTest {
+
+    /**
+     * Test the {@link Hash#sha256(byte[])} method.
+     */
+    @Test
+    public void testSha256() {
+        assertEquals(
+                "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855",
+                Hash.sha256(new byte[0])
+        );
+        assertEquals(
+                "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+                Hash.sha256("abc".getBytes(StandardCharsets.UTF_8))
+        );
+        assertFalse(Hash.sha256("abc".getBytes(StandardCharsets.UTF_8)).equals(Hash.sha256("abd".getBytes(StandardCharsets.UTF_8))));
+    }
+
+}
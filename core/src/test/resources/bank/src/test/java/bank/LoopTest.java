@@ -0,0 +1,21 @@
+package bank;
+
+import org.junit.Test;
+
+/**
+ * Tests with a loop, i.e. with lines that are visited repeatedly.
+ * This is in fact used by another test (ObserverTest in the LuMutator project).
+ */
+public class LoopTest {
+
+    /**
+     * Test a loop.
+     */
+    @Test
+    public void testLoop() {
+        int sum = 0;
+        for (int i = 0; i < 10; i++) {
+            sum += i;
+        }
+    }
+}
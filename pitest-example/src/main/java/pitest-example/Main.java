@@ -28,6 +28,9 @@ public class Main {
             options.addOption(
                     new Option("a", false, "Auto mode, automatically insert all new assertions in the original test files without asking first")
             );
+            options.addOption(
+                    new Option("r", "resume", false, "Resume an interrupted run, without tracing the mutants that were already traced (needs a cache directory)")
+            );
 
             CommandLineParser parser = new DefaultParser();
             HelpFormatter formatter = new HelpFormatter();
@@ -56,7 +59,7 @@ public class Main {
             );
 
             // Call LuMutator
-            LuMutator.main(cmd.getOptionValue("config"), survivedMutants, !cmd.hasOption('a'));
+            LuMutator.main(cmd.getOptionValue("config"), survivedMutants, !cmd.hasOption('a'), cmd.hasOption("resume"));
 
         } catch (Exception e) {
             System.out.println("LuMutator caught an exception: " + e.getMessage());
@@ -16,10 +16,7 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -80,6 +77,9 @@ public abstract class Parser {
 
         // Retrieve the necessary information of a mutant (including the corresponding class file)
         if (survivedMutantsFromResults != null) {
+            Map<Mutant, Mutant> results = new HashMap<>();
+            survivedMutantsFromResults.forEach(result -> results.put(result, result));
+
             Constructor<?> constructor = null;
             try {
                 constructor = mutantClass.getDeclaredConstructor(
@@ -124,8 +124,9 @@ public abstract class Parser {
                                 notes,
 
                         });
-                        if (survivedMutantsFromResults.contains(m)) {
+                        if (results.containsKey(m)) {
                             m.setSurvived(true);
+                            m.setCoveringTests(results.get(m).getCoveringTests());
                             mutants.add(m);
                         } else if (!survivedOnly) {
                             m.setSurvived(false);
@@ -207,7 +208,7 @@ public abstract class Parser {
                     String notes = mutation.getElementsByTagName("description").item(0).getTextContent();
 
                     try {
-                        survivedMutants.add((Mutant) constructor.newInstance(new Object[]{
+                        Mutant m = (Mutant) constructor.newInstance(new Object[]{
                                 new File(originalFile),
                                 new File(""),
                                 mutatedClass,
@@ -217,7 +218,9 @@ public abstract class Parser {
                                 mutator,
                                 notes,
 
-                        }));
+                        });
+                        m.setCoveringTests(getCoveringTests(mutation));
+                        survivedMutants.add(m);
                     } catch (Exception e) {
                         // Should not be possible
                     }
@@ -228,6 +231,43 @@ public abstract class Parser {
         return survivedMutants;
     }
 
+    /**
+     * Get the tests that cover a mutation from the results file (`mutations.xml`).
+     * PITest only stores all the covering tests with the full mutation matrix (`succeedingTests`),
+     * otherwise they're only known if no test covers the mutation.
+     *
+     * @param mutation The mutation in the results file.
+     * @return The test classes with their test methods, {@code null} if unknown.
+     */
+    static private Map<String, Set<String>> getCoveringTests(Element mutation) {
+        Map<String, Set<String>> coveringTests = new HashMap<>();
+        if (mutation.getAttribute("status").equals("NO_COVERAGE")) {
+            return coveringTests;
+        }
+        if (mutation.getElementsByTagName("succeedingTests").getLength() == 0
+                && mutation.getElementsByTagName("coveringTests").getLength() == 0) {
+            return null;
+        }
+
+        for (String tag : new String[]{"killingTest", "killingTests", "succeedingTests", "coveringTests"}) {
+            NodeList nodes = mutation.getElementsByTagName(tag);
+            if (nodes.getLength() == 0 || nodes.item(0).getTextContent().trim().isEmpty()) {
+                continue;
+            }
+            for (String test : nodes.item(0).getTextContent().split("\\|")) {
+                // e.g. some.package.ClassTest.testMethod(some.package.ClassTest)
+                Matcher matcher = Pattern.compile("^(.*)\\.([^.(]+)\\((.*)\\)$").matcher(test.trim());
+                if (!matcher.find()) {
+                    return null;    // Unknown format (e.g. JUnit 5)
+                }
+                final String testClass = matcher.group(3).isEmpty() ? matcher.group(1) : matcher.group(3);
+                coveringTests.computeIfAbsent(testClass, k -> new HashSet<>()).add(matcher.group(2));
+            }
+        }
+
+        return coveringTests;
+    }
+
     /**
      * Get a certain attribute from the `details.txt` file for a mutant.
      *
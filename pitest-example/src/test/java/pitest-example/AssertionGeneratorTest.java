@@ -3,6 +3,9 @@ package pitest;
 import lumutator.Mutant;
 import lumutator.generator.AssertionGenerator;
 import lumutator.tracer.Tracer;
+import lumutator.tracer.agent.TraceLimits;
+import lumutator.tracer.agent.Truncated;
+import lumutator.tracer.debugger.Trace;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.json.JSONObject;
 import org.junit.After;
@@ -18,6 +21,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static org.junit.Assert.*;
@@ -39,7 +43,7 @@ public class AssertionGeneratorTest extends pitest.TestEnvironment {
     public static void setUp() {
         try {
             ClassLoader classLoader = AssertionGeneratorTest.class.getClassLoader();
-            JSONObject originalTrace = Tracer.trace(classLoader.getResource("bank/src/test").getPath(), inspectorMethods);
+            Trace originalTrace = Tracer.trace(classLoader.getResource("bank/src/test").getPath(), inspectorMethods);
             List<Mutant> survivedMutants = pitest.Parser.getMutants(classLoader.getResource("bank/pit-reports").getPath(), true);
 
             failedComparisons = Tracer.traceAndCompareMutants(survivedMutants, originalTrace, inspectorMethods);
@@ -143,4 +147,41 @@ public class AssertionGeneratorTest extends pitest.TestEnvironment {
             fail();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Test that no assertions are generated from truncated values (see {@link TraceLimits}), e.g. of a mutant that
+     * only changes the tail of a long string, but from the other differences of the mutant.
+     */
+    @Test
+    public void testGenerateAssertionsWithTruncatedValues() {
+        try {
+            ClassLoader classLoader = AssertionGeneratorTest.class.getClassLoader();
+            Path originalFile = Paths.get(classLoader.getResource("bank/src/test/java/bank/BankTest.java").getPath());
+            final String testFile = originalFile.toFile().getCanonicalPath();
+            final List<String> originalLines = Files.readAllLines(originalFile);
+            final Mutant mutant = failedComparisons.get(0).getValue();
+
+            // Only the tail of a long string differs, an object that is too deep to follow or the marker of a full line
+            TraceLimits limits = new TraceLimits(0, 0, 20, 0, 0);
+            final String name = String.join(" ", Collections.nCopies(10, "Jan Janssen"));
+            JSONCompareResult truncated = new JSONCompareResult();
+            truncated.fail(testFile + ".46.customer1.getName()",
+                    new Truncated(limits.truncate(name + "!")), new Truncated(limits.truncate(name + "?")));
+            truncated.fail(testFile + ".46.bank.getLastAddedCustomer()", new Truncated(TraceLimits.TRUNCATED), JSONObject.NULL);
+            truncated.fail(testFile + ".46." + TraceLimits.TRUNCATED, new Truncated(TraceLimits.TRUNCATED), JSONObject.NULL);
+            AssertionGenerator.generateAssertions(Collections.singletonList(new ImmutablePair<>(truncated, mutant)));
+            assertEquals(originalLines, Files.readAllLines(originalFile));
+
+            // The next difference that isn't truncated is used instead
+            truncated.fail(testFile + ".46.customer1.getBalance()", 100, 0);
+            AssertionGenerator.generateAssertions(Collections.singletonList(new ImmutablePair<>(truncated, mutant)));
+            List<String> lines = Files.readAllLines(originalFile);
+            assertEquals(originalLines.size() + 1, lines.size());
+            assertEquals("assertEquals(100, customer1.getBalance());", lines.get(45).trim());
+
+        } catch (IOException e) {
+            // Should not be possible
+            fail();
+        }
+    }
+}
@@ -9,8 +9,7 @@ import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 
 import static org.junit.Assert.*;
 
@@ -82,6 +81,44 @@ public class ParserTest {
         }
     }
 
+    /**
+     * Test if the covering tests of the mutants are parsed from the full mutation matrix.
+     */
+    @Test
+    public void testGetCoveringTests() {
+        ClassLoader classLoader = getClass().getClassLoader();
+
+        try {
+            Method method = pitest.Parser.class.getDeclaredMethod("getSurvivedMutantsFromFile", File.class);
+            method.setAccessible(true);
+            Set<Mutant> survivedMutants = (Set<Mutant>) method.invoke(null, new File(classLoader.getResource("full-mutation-matrix/mutations.xml").getFile()));
+
+            assertEquals(2, survivedMutants.size());
+            for (Mutant mutant : survivedMutants) {
+                if (mutant.equals(m)) {
+                    Map<String, Set<String>> expected = new HashMap<>();
+                    expected.put("some.package.ClassTest", new HashSet<>(Arrays.asList("testA", "testB")));
+                    expected.put("some.package.OtherClassTest", Collections.singleton("test"));
+                    assertEquals(expected, mutant.getCoveringTests());
+                } else {
+                    // No coverage
+                    assertEquals(m2, mutant);
+                    assertTrue(mutant.getCoveringTests().isEmpty());
+                }
+            }
+
+            // Without the full mutation matrix, the covering tests of a survived mutant are unknown
+            survivedMutants = (Set<Mutant>) method.invoke(null, new File(classLoader.getResource("pit-reports/201908271440/mutations.xml").getFile()));
+            for (Mutant mutant : survivedMutants) {
+                assertTrue(mutant.getCoveringTests().isEmpty());    // Both are not covered
+            }
+
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            // Should not be possible
+            fail();
+        }
+    }
+
     /**
      * Test the {@link pitest.Parser#getMutants(String, boolean)} method for survived mutants.
      */
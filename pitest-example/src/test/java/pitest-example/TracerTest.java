@@ -1,15 +1,32 @@
 package pitest;
 
+import lumutator.Configuration;
 import lumutator.Mutant;
 import lumutator.tracer.Tracer;
+import lumutator.tracer.debugger.Coverage;
+import lumutator.tracer.debugger.Trace;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.skyscreamer.jsonassert.FieldComparisonFailure;
+import org.skyscreamer.jsonassert.JSONAssert;
 import org.skyscreamer.jsonassert.JSONCompareResult;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static org.junit.Assert.*;
@@ -23,7 +40,13 @@ public class TracerTest extends pitest.TestEnvironment {
     /**
      * Trace of the tests of the original bank application.
      */
-    private static JSONObject originalTrace;
+    private static Trace originalTrace;
+
+    /**
+     * The comparisons of the mutants without any of the optional filters (class file of the mutant => comparison),
+     * only traced once (see {@link #getFullComparisons()}).
+     */
+    private static Map<String, JSONCompareResult> fullComparisons;
 
     /**
      * Set up the trace.
@@ -41,11 +64,49 @@ public class TracerTest extends pitest.TestEnvironment {
     public void testTrace() {
         // No need to check the contents of the trace, this is already done at lower level, see ObserverTest,
         // just make sure there is a trace for each test file.
-        assertEquals(3, originalTrace.length());
+        assertEquals(4, originalTrace.size());
+    }
+
+    /**
+     * Test the {@link Tracer#trace(String, Set)} method with all the test classes in one resident VM.
+     */
+    @Test
+    public void testTraceWithResidentRunner() {
+        Configuration config = Configuration.getInstance();
+        try {
+            config.set("residentRunner", "true");
+            ClassLoader classLoader = TracerTest.class.getClassLoader();
+            Trace trace = Tracer.trace(classLoader.getResource("bank/src/test").getPath(), inspectorMethods);
+
+            // Same result as launching a new VM for each test class
+            JSONAssert.assertEquals(originalTrace.toJSON(), trace.toJSON(), true);
+
+        } finally {
+            config.set("residentRunner", "false");
+        }
+    }
+
+    /**
+     * Test the {@link Tracer#trace(String, Set)} method with the tracing agent instead of JDI.
+     */
+    @Test
+    public void testTraceWithAgent() {
+        Configuration config = Configuration.getInstance();
+        try {
+            config.set("tracer", "agent");
+            ClassLoader classLoader = TracerTest.class.getClassLoader();
+            Trace trace = Tracer.trace(classLoader.getResource("bank/src/test").getPath(), inspectorMethods);
+
+            // Same result as tracing with JDI
+            JSONAssert.assertEquals(originalTrace.toJSON(), trace.toJSON(), true);
+
+        } finally {
+            config.set("tracer", "jdi");
+        }
     }
 
     /**
-     * Test the {@link Tracer#traceAndCompareMutants(List, JSONObject, Set)} method.
+     * Test the {@link Tracer#traceAndCompareMutants(List, Trace, Set)} method.
      */
     @Test
     public void testTraceAndCompareMutants() {
@@ -68,4 +129,519 @@ public class TracerTest extends pitest.TestEnvironment {
         }
     }
 
+    /**
+     * Test the {@link Tracer#traceAndCompareMutants(List, Trace, Set, Coverage)} method,
+     * which only traces the tests that reach each mutant.
+     */
+    @Test
+    public void testTraceAndCompareMutantsWithCoverage() {
+        try {
+            ClassLoader classLoader = TracerTest.class.getClassLoader();
+            List<Mutant> survivedMutants = pitest.Parser.getMutants(classLoader.getResource("bank/pit-reports").getPath(), true);
+
+            // The coverage is recorded while tracing the original version, without changing the trace
+            Coverage coverage = new Coverage(Configuration.getInstance().get("classFiles"));
+            Trace trace = Tracer.trace(classLoader.getResource("bank/src/test").getPath(), inspectorMethods, coverage);
+            JSONAssert.assertEquals(originalTrace.toJSON(), trace.toJSON(), true);
+
+            // Same result as tracing all the tests
+            List<ImmutablePair<JSONCompareResult, Mutant>> failedComparisons =
+                    Tracer.traceAndCompareMutants(survivedMutants, originalTrace, inspectorMethods, coverage);
+            assertEquals(5, failedComparisons.size());
+
+        } catch (IOException e) {
+            // Should not be possible
+            fail();
+        }
+    }
+
+    /**
+     * Test if the covering tests of the mutants (from PITest) are used to select the tests,
+     * except for the mutants in inspector methods.
+     */
+    @Test
+    public void testTraceAndCompareMutantsWithCoveringTests() {
+        try {
+            ClassLoader classLoader = TracerTest.class.getClassLoader();
+            List<Mutant> survivedMutants = pitest.Parser.getMutants(classLoader.getResource("bank/pit-reports").getPath(), true);
+
+            // Pretend that no test covers the mutants
+            survivedMutants.forEach(mutant -> mutant.setCoveringTests(new HashMap<>()));
+
+            List<ImmutablePair<JSONCompareResult, Mutant>> failedComparisons =
+                    Tracer.traceAndCompareMutants(survivedMutants, originalTrace, inspectorMethods);
+
+            // Only the mutants in the inspector methods are traced
+            // (Customer.getName is not even covered according to PITest, but its result is in the trace)
+            assertEquals(2, failedComparisons.size());
+            for (ImmutablePair<JSONCompareResult, Mutant> comparison : failedComparisons) {
+                Mutant mutant = comparison.getValue();
+                assertTrue(inspectorMethods.contains(mutant.getMutatedClass() + "." + mutant.getMutatedMethod()));
+            }
+
+        } catch (IOException e) {
+            // Should not be possible
+            fail();
+        }
+    }
+
+    /**
+     * Test the {@link Tracer#traceAndCompareMutants(List, Trace, Set)} method with multiple workers.
+     */
+    @Test
+    public void testTraceAndCompareMutantsInParallel() {
+        Configuration config = Configuration.getInstance();
+        try {
+            ClassLoader classLoader = TracerTest.class.getClassLoader();
+            List<Mutant> survivedMutants = pitest.Parser.getMutants(classLoader.getResource("bank/pit-reports").getPath(), true);
+            config.set("workers", "3");
+
+            List<ImmutablePair<JSONCompareResult, Mutant>> failedComparisons =
+                    Tracer.traceAndCompareMutants(survivedMutants, originalTrace, inspectorMethods);
+
+            // Same result as tracing the mutants one by one, in the same order
+            assertEquals(5, failedComparisons.size());
+            for (int i = 1; i < failedComparisons.size(); i++) {
+                assertTrue(survivedMutants.indexOf(failedComparisons.get(i - 1).getValue())
+                        < survivedMutants.indexOf(failedComparisons.get(i).getValue()));
+            }
+
+        } catch (IOException e) {
+            // Should not be possible
+            fail();
+        } finally {
+            config.set("workers", "1");
+        }
+    }
+
+    /**
+     * Test the {@link Tracer#traceAndCompareMutants(List, Trace, Set)} method with the mutants hot-swapped
+     * into a resident VM.
+     */
+    @Test
+    public void testTraceAndCompareMutantsWithHotSwap() {
+        Configuration config = Configuration.getInstance();
+        try {
+            ClassLoader classLoader = TracerTest.class.getClassLoader();
+            List<Mutant> survivedMutants = pitest.Parser.getMutants(classLoader.getResource("bank/pit-reports").getPath(), true);
+            config.set("hotSwap", "true");
+
+            List<ImmutablePair<JSONCompareResult, Mutant>> failedComparisons =
+                    Tracer.traceAndCompareMutants(survivedMutants, originalTrace, inspectorMethods);
+
+            // Same result as launching a new VM for each test class
+            assertEquals(5, failedComparisons.size());
+
+        } catch (IOException e) {
+            // Should not be possible
+            fail();
+        } finally {
+            config.set("hotSwap", "false");
+        }
+    }
+
+    /**
+     * Test the {@link Tracer#traceAndCompareMutants(List, Trace, Set)} method with the tracing agent instead of JDI.
+     */
+    @Test
+    public void testTraceAndCompareMutantsWithAgent() {
+        Configuration config = Configuration.getInstance();
+        try {
+            ClassLoader classLoader = TracerTest.class.getClassLoader();
+            List<Mutant> survivedMutants = pitest.Parser.getMutants(classLoader.getResource("bank/pit-reports").getPath(), true);
+            config.set("tracer", "agent");
+
+            List<ImmutablePair<JSONCompareResult, Mutant>> failedComparisons =
+                    Tracer.traceAndCompareMutants(survivedMutants, originalTrace, inspectorMethods);
+
+            // Same result as tracing with JDI
+            assertEquals(5, failedComparisons.size());
+
+        } catch (IOException e) {
+            // Should not be possible
+            fail();
+        } finally {
+            config.set("tracer", "jdi");
+        }
+    }
+
+    /**
+     * Test the {@link Tracer#traceAndCompareMutants(List, Trace, Set)} method when only the assertions are observed.
+     */
+    @Test
+    public void testTraceAndCompareMutantsObservingAssertions() {
+        Configuration config = Configuration.getInstance();
+        try {
+            ClassLoader classLoader = TracerTest.class.getClassLoader();
+            List<Mutant> survivedMutants = pitest.Parser.getMutants(classLoader.getResource("bank/pit-reports").getPath(), true);
+            config.set("observation", "assertions");
+
+            List<ImmutablePair<JSONCompareResult, Mutant>> failedComparisons =
+                    Tracer.traceAndCompareMutants(survivedMutants, originalTrace, inspectorMethods);
+
+            // The differences are still found at the assertions or at the end of the tests
+            assertEquals(5, failedComparisons.size());
+
+        } catch (IOException e) {
+            // Should not be possible
+            fail();
+        } finally {
+            config.set("observation", "lines");
+        }
+    }
+
+    /**
+     * Test the {@link Tracer#traceAndCompareMutants(List, Trace, Set)} method with the weak-mutation prefilter.
+     */
+    @Test
+    public void testTraceAndCompareMutantsWithWeakMutationFilter() {
+        Configuration config = Configuration.getInstance();
+        try {
+            ClassLoader classLoader = TracerTest.class.getClassLoader();
+            List<Mutant> survivedMutants = pitest.Parser.getMutants(classLoader.getResource("bank/pit-reports").getPath(), true);
+            List<Mutant> mutants = new ArrayList<>(survivedMutants);
+            Map<Mutant, Mutant> copies = new IdentityHashMap<>();
+            for (Mutant mutant : survivedMutants) {
+                final Mutant copy = copy(mutant, mutant.getClassFile());
+                copies.put(mutant, copy);
+                mutants.add(copy);
+            }
+            config.set("weakMutationFilter", "true");
+
+            List<ImmutablePair<JSONCompareResult, Mutant>> failedComparisons =
+                    Tracer.traceAndCompareMutants(mutants, originalTrace, inspectorMethods);
+
+            // Some mutants are filtered out, but none that changes the trace
+            Map<String, JSONCompareResult> fullComparisons = getFullComparisons();
+            assertTrue(survivedMutants.stream().anyMatch(Mutant::isSkipped));
+            for (Mutant mutant : survivedMutants) {
+                if (mutant.isSkipped()) {
+                    assertFalse(fullComparisons.containsKey(mutant.getClassFile().getPath()));
+                }
+            }
+            assertEquals(fullComparisons.keySet(), byClassFile(failedComparisons).keySet());
+
+            // A copy of a mutant is skipped exactly when the mutant itself is
+            for (Map.Entry<Mutant, Mutant> copy : copies.entrySet()) {
+                assertEquals(copy.getKey().isSkipped(), copy.getValue().isSkipped());
+            }
+
+        } catch (IOException e) {
+            // Should not be possible
+            fail();
+        } finally {
+            config.set("weakMutationFilter", "false");
+        }
+    }
+
+    /**
+     * Test the {@link Tracer#traceAndCompareMutants(List, Trace, Set)} method when the mutants are only observed
+     * from the mutated line on.
+     */
+    @Test
+    public void testTraceAndCompareMutantsWithPrefixElision() {
+        Configuration config = Configuration.getInstance();
+        try {
+            ClassLoader classLoader = TracerTest.class.getClassLoader();
+            List<Mutant> survivedMutants = pitest.Parser.getMutants(classLoader.getResource("bank/pit-reports").getPath(), true);
+            config.set("prefixElision", "true");
+
+            List<ImmutablePair<JSONCompareResult, Mutant>> failedComparisons =
+                    Tracer.traceAndCompareMutants(survivedMutants, originalTrace, inspectorMethods);
+
+            // The lines before the mutated line are the same as in the original trace => the same differences
+            assertSameComparisons(getFullComparisons(), byClassFile(failedComparisons));
+
+        } catch (IOException e) {
+            // Should not be possible
+            fail();
+        } finally {
+            config.set("prefixElision", "false");
+        }
+    }
+
+    /**
+     * Test the {@link Tracer#traceAndCompareMutants(List, Trace, Set)} method when only some visits of a line in a loop
+     * are observed and the mutants are only observed from the mutated line on: every visit is observed then,
+     * so the mutants and the original code still observe the same visits.
+     */
+    @Test
+    public void testTraceAndCompareMutantsWithVisitIntervalAndPrefixElision() {
+        Configuration config = Configuration.getInstance();
+        try {
+            ClassLoader classLoader = TracerTest.class.getClassLoader();
+            List<Mutant> survivedMutants = pitest.Parser.getMutants(classLoader.getResource("bank/pit-reports").getPath(), true);
+            final Map<String, JSONCompareResult> fullComparisons = getFullComparisons();
+            config.set("visitInterval", "4");
+            config.set("prefixElision", "true");
+
+            Trace trace = Tracer.trace(classLoader.getResource("bank/src/test").getPath(), inspectorMethods);
+            JSONAssert.assertEquals(originalTrace.toJSON(), trace.toJSON(), true);
+            Map<String, JSONCompareResult> comparisons =
+                    byClassFile(Tracer.traceAndCompareMutants(survivedMutants, trace, inspectorMethods));
+
+            // The same differences as without either of them
+            assertSameComparisons(fullComparisons, comparisons);
+
+        } catch (IOException e) {
+            // Should not be possible
+            fail();
+        } finally {
+            config.set("visitInterval", "0");
+            config.set("prefixElision", "false");
+        }
+    }
+
+    /**
+     * Test if a mutant with the same bytes as the original class isn't traced, and if mutants with the same bytes
+     * as each other share the comparison.
+     */
+    @Test
+    public void testTraceAndCompareMutantsWithSameBytes() {
+        try {
+            ClassLoader classLoader = TracerTest.class.getClassLoader();
+            List<Mutant> survivedMutants = pitest.Parser.getMutants(classLoader.getResource("bank/pit-reports").getPath(), true);
+            List<Mutant> mutants = new ArrayList<>(survivedMutants);
+            Map<Mutant, Mutant> copies = new IdentityHashMap<>();
+            for (Mutant mutant : survivedMutants) {
+                final Mutant copy = copy(mutant, mutant.getClassFile());
+                copies.put(mutant, copy);
+                mutants.add(copy);
+            }
+            final Mutant mutant = survivedMutants.get(0);
+            final File originalClassFile = new File(Configuration.getInstance().get("classFiles") + "/"
+                    + mutant.getMutatedClass().replace(".", "/") + ".class");
+            Mutant equivalentMutant = copy(mutant, originalClassFile);
+            mutants.add(equivalentMutant);
+            Collections.reverse(mutants);   // The copies are found before the mutants they're a copy of
+
+            List<ImmutablePair<JSONCompareResult, Mutant>> failedComparisons =
+                    Tracer.traceAndCompareMutants(mutants, originalTrace, inspectorMethods);
+            Map<Mutant, JSONCompareResult> comparisons = new IdentityHashMap<>();
+            for (ImmutablePair<JSONCompareResult, Mutant> comparison : failedComparisons) {
+                comparisons.put(comparison.getValue(), comparison.getKey());
+            }
+
+            // The mutant with the same bytes as the original class isn't traced
+            assertTrue(equivalentMutant.isSkipped());
+            assertFalse(comparisons.containsKey(equivalentMutant));
+
+            // Each mutant shares the comparison of its copy, the same mutants are killed as without the copies
+            assertEquals(getFullComparisons().keySet(), byClassFile(failedComparisons).keySet());
+            for (Map.Entry<Mutant, Mutant> copy : copies.entrySet()) {
+                assertFalse(copy.getKey().isSkipped());
+                assertSame(comparisons.get(copy.getKey()), comparisons.get(copy.getValue()));
+            }
+            assertEquals(2 * getFullComparisons().size(), failedComparisons.size());
+
+        } catch (IOException e) {
+            // Should not be possible
+            fail();
+        }
+    }
+
+    /**
+     * Get the comparisons of the mutants without any of the optional filters, to compare the other runs with.
+     *
+     * @return The comparison of each mutant whose trace differs, by the class file of the mutant.
+     * @throws IOException If the mutants could not be parsed.
+     */
+    private static Map<String, JSONCompareResult> getFullComparisons() throws IOException {
+        if (fullComparisons == null) {
+            ClassLoader classLoader = TracerTest.class.getClassLoader();
+            List<Mutant> survivedMutants = pitest.Parser.getMutants(classLoader.getResource("bank/pit-reports").getPath(), true);
+            fullComparisons = byClassFile(Tracer.traceAndCompareMutants(survivedMutants, originalTrace, inspectorMethods));
+        }
+        return fullComparisons;
+    }
+
+    /**
+     * Get the failed comparisons by the class file of their mutant, which is the same every time the mutants are parsed.
+     *
+     * @param failedComparisons The failed comparisons.
+     * @return The comparison of each mutant, by the class file of the mutant.
+     */
+    private static Map<String, JSONCompareResult> byClassFile(List<ImmutablePair<JSONCompareResult, Mutant>> failedComparisons) {
+        Map<String, JSONCompareResult> comparisons = new HashMap<>();
+        for (ImmutablePair<JSONCompareResult, Mutant> comparison : failedComparisons) {
+            comparisons.put(comparison.getValue().getClassFile().getPath(), comparison.getKey());
+        }
+        return comparisons;
+    }
+
+    /**
+     * Check if the same mutants are killed, with the same differences (the fields, expected and actual values).
+     *
+     * @param expected The expected comparisons, by the class file of their mutant.
+     * @param actual   The actual comparisons, by the class file of their mutant.
+     */
+    private static void assertSameComparisons(Map<String, JSONCompareResult> expected, Map<String, JSONCompareResult> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<String, JSONCompareResult> comparison : actual.entrySet()) {
+            List<FieldComparisonFailure> expectedFailures = expected.get(comparison.getKey()).getFieldFailures();
+            List<FieldComparisonFailure> failures = comparison.getValue().getFieldFailures();
+            assertEquals(expectedFailures.size(), failures.size());
+            for (int i = 0; i < failures.size(); i++) {
+                assertEquals(expectedFailures.get(i).getField(), failures.get(i).getField());
+                assertEquals(expectedFailures.get(i).getExpected(), failures.get(i).getExpected());
+                assertEquals(expectedFailures.get(i).getActual(), failures.get(i).getActual());
+            }
+        }
+    }
+
+    /**
+     * Create a copy of a mutant with another class file.
+     *
+     * @param mutant    The mutant.
+     * @param classFile The class file of the copy.
+     * @return The copy.
+     */
+    private static Mutant copy(Mutant mutant, File classFile) {
+        Mutant copy = new Mutant(mutant.getOriginalFile(), classFile, mutant.getMutatedClass(), mutant.getMutatedMethod(),
+                mutant.getMutatedMethodDescr(), mutant.getLineNr(), mutant.getMutator(), mutant.getNotes());
+        copy.setCoveringTests(mutant.getCoveringTests());
+        return copy;
+    }
+
+    /**
+     * Test if the comparisons of the mutants are reused in a next run, if a cache directory is set.
+     */
+    @Test
+    public void testTraceAndCompareMutantsIncrementally() {
+        Configuration config = Configuration.getInstance();
+        File cacheDir = null;
+        try {
+            ClassLoader classLoader = TracerTest.class.getClassLoader();
+            List<Mutant> survivedMutants = pitest.Parser.getMutants(classLoader.getResource("bank/pit-reports").getPath(), true);
+            cacheDir = Files.createTempDirectory("lumutator-cache").toFile();
+            config.set("cacheDir", cacheDir.getPath());
+
+            List<ImmutablePair<JSONCompareResult, Mutant>> failedComparisons =
+                    Tracer.traceAndCompareMutants(survivedMutants, originalTrace, inspectorMethods);
+            assertEquals(5, failedComparisons.size());
+
+            // Same comparisons (including the types of the values) in the next run
+            List<ImmutablePair<JSONCompareResult, Mutant>> cachedComparisons =
+                    Tracer.traceAndCompareMutants(survivedMutants, originalTrace, inspectorMethods);
+            assertEquals(failedComparisons.size(), cachedComparisons.size());
+            for (int i = 0; i < failedComparisons.size(); i++) {
+                assertSame(failedComparisons.get(i).getValue(), cachedComparisons.get(i).getValue());
+                FieldComparisonFailure failure = failedComparisons.get(i).getKey().getFieldFailures().get(0);
+                FieldComparisonFailure cachedFailure = cachedComparisons.get(i).getKey().getFieldFailures().get(0);
+                assertEquals(failure.getField(), cachedFailure.getField());
+                assertEquals(failure.getExpected(), cachedFailure.getExpected());
+                assertEquals(failure.getActual(), cachedFailure.getActual());
+            }
+
+            // The mutants are not traced again: pretend that none of the traces differed
+            File results = new File(cacheDir, "mutant-results.json");
+            JSONObject json = new JSONObject(FileUtils.readFileToString(results, StandardCharsets.UTF_8));
+            json.keySet().forEach(key -> json.put(key, new JSONArray()));
+            FileUtils.writeStringToFile(results, json.toString(), StandardCharsets.UTF_8);
+            assertTrue(Tracer.traceAndCompareMutants(survivedMutants, originalTrace, inspectorMethods).isEmpty());
+
+        } catch (IOException e) {
+            // Should not be possible
+            fail();
+        } finally {
+            config.set("cacheDir", "");
+            FileUtils.deleteQuietly(cacheDir);
+        }
+    }
+
+    /**
+     * Test if an interrupted run is resumed: the mutants in the journal are not traced again,
+     * and the original class file that was still replaced by a mutant is restored.
+     */
+    @Test
+    public void testTraceAndCompareMutantsResume() {
+        Configuration config = Configuration.getInstance();
+        File cacheDir = null;
+        try {
+            ClassLoader classLoader = TracerTest.class.getClassLoader();
+            List<Mutant> survivedMutants = pitest.Parser.getMutants(classLoader.getResource("bank/pit-reports").getPath(), true);
+
+            cacheDir = Files.createTempDirectory("lumutator-cache").toFile();
+            config.set("cacheDir", cacheDir.getPath());
+
+            // A .tmp file that wasn't left by LuMutator is not restored
+            Mutant mutant = survivedMutants.get(0);
+            Path classFile = Paths.get(config.get("classFiles"), mutant.getMutatedClass().replace(".", "/") + ".class");
+            Path tempFile = Paths.get(classFile.toString().replace(".class", ".tmp"));
+            final byte[] original = Files.readAllBytes(classFile);
+            Files.copy(mutant.getClassFile().toPath(), tempFile);
+            Tracer.restoreClassFiles();
+            assertArrayEquals(original, Files.readAllBytes(classFile));
+            assertTrue(tempFile.toFile().exists());
+            Files.delete(tempFile);
+
+            // Interrupted while the first mutant was swapped into the class files
+            File marker = new File(cacheDir, "swapped-class");
+            FileUtils.writeStringToFile(marker, classFile.toString(), StandardCharsets.UTF_8);
+            Files.move(classFile, tempFile);
+            Files.copy(mutant.getClassFile().toPath(), classFile);
+            Tracer.restoreClassFiles();
+            assertArrayEquals(original, Files.readAllBytes(classFile));
+            assertFalse(tempFile.toFile().exists());
+            assertFalse(marker.exists());
+
+            // Journal of the interrupted run: pretend that none of the traces differed, the last line is incomplete
+            Tracer.traceAndCompareMutants(survivedMutants, originalTrace, inspectorMethods);
+            File results = new File(cacheDir, "mutant-results.json");
+            File journal = new File(cacheDir, "mutant-journal.jsonl");
+            assertFalse(journal.exists());
+            assertFalse(marker.exists());
+            StringBuilder lines = new StringBuilder();
+            for (String key : new JSONObject(FileUtils.readFileToString(results, StandardCharsets.UTF_8)).keySet()) {
+                lines.append(new JSONObject().put("key", key).put("failures", new JSONArray())).append('\n');
+            }
+            lines.append("{\"key\": \"");
+            FileUtils.writeStringToFile(journal, lines.toString(), StandardCharsets.UTF_8);
+            assertTrue(results.delete());
+
+            config.set("resume", "true");
+            assertTrue(Tracer.traceAndCompareMutants(survivedMutants, originalTrace, inspectorMethods).isEmpty());
+            assertFalse(journal.exists());
+
+        } catch (IOException e) {
+            // Should not be possible
+            fail();
+        } finally {
+            config.set("resume", "false");
+            config.set("cacheDir", "");
+            FileUtils.deleteQuietly(cacheDir);
+        }
+    }
+
+    /**
+     * Test if the mutants are marked as timed out when they take too long to trace.
+     */
+    @Test
+    public void testTraceAndCompareMutantsWithTimeout() {
+        Configuration config = Configuration.getInstance();
+        try {
+            ClassLoader classLoader = TracerTest.class.getClassLoader();
+            List<Mutant> survivedMutants = pitest.Parser.getMutants(classLoader.getResource("bank/pit-reports").getPath(), true);
+            survivedMutants.forEach(mutant -> mutant.setCoveringTests(null));     // Trace all the mutants
+            config.set("timeoutFactor", "0");
+            config.set("timeoutConstant", "1");
+
+            List<ImmutablePair<JSONCompareResult, Mutant>> failedComparisons =
+                    Tracer.traceAndCompareMutants(survivedMutants, originalTrace, inspectorMethods);
+
+            // Killed before anything could be compared
+            assertTrue(failedComparisons.isEmpty());
+            for (Mutant mutant : survivedMutants) {
+                assertTrue(mutant.hasTimedOut());
+            }
+
+        } catch (IOException e) {
+            // Should not be possible
+            fail();
+        } finally {
+            config.set("timeoutFactor", "");
+            config.set("timeoutConstant", "");
+        }
+    }
+
 }